@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the startup time of a JVM that loads and instantiates the supported HTTP clients, see
+ * {@link StartupTarget}, with and without the agent
+ *
+ * <p>The agent jar is looked up in <code>target/agent.jar</code>, where the build copies it, and can be
+ * overridden using the <code>agent.jar</code> system property.</p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final String NO_AGENT = "none";
+
+    @Param({NO_AGENT, "javassist", "asm"})
+    public String agent;
+
+    private List<String> command;
+
+    @Setup
+    public void prepareCommand() {
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (!NO_AGENT.equals(agent)) {
+            Path agentJar = Paths.get(System.getProperty("agent.jar", "target/agent.jar"));
+            if (!Files.isRegularFile(agentJar))
+                throw new IllegalStateException(
+                        "Agent jar not found at " + agentJar.toAbsolutePath() + ", set the agent.jar system property");
+            command.add("-javaagent:" + agentJar + "=1000,1000,,engine=" + agent);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StartupTarget.class.getName());
+    }
+
+    @Benchmark
+    public int startup() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(new File(devNull())))
+                .start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) throw new IllegalStateException("Command " + command + " exited with code " + exitCode);
+        return exitCode;
+    }
+
+    private static String devNull() {
+        return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+    }
+}
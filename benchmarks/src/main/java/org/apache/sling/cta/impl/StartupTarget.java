@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+
+import okhttp3.OkHttpClient;
+import org.apache.commons.httpclient.params.DefaultHttpParamsFactory;
+import org.apache.http.client.config.RequestConfig;
+
+/**
+ * Entry point of the JVM started by the {@link StartupBenchmark}
+ *
+ * <p>Loads all classes handled by the agent without performing any network access, so that the measured startup
+ * time includes the transformations.</p>
+ */
+public class StartupTarget {
+
+    public static void main(String[] args) throws Exception {
+        // openConnection does not connect, but loads the HttpURLConnection implementation
+        ((HttpURLConnection) new URL("http://localhost/").openConnection()).disconnect();
+        new DefaultHttpParamsFactory().getDefaultParams();
+        RequestConfig.custom().build();
+        new OkHttpClient.Builder().build();
+        HttpClient.newBuilder().build();
+        HttpRequest.newBuilder(URI.create("http://localhost/")).build();
+    }
+}
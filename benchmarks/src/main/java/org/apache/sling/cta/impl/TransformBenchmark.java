@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of transforming the classes handled by the agent, using the class definitions found on the
+ * class path
+ *
+ * <p>The <code>transformMatching</code> benchmark runs the full transformation of a handled class with the
+ * selected engine, the same work that is done once per class loader at runtime. The <code>dispatch*</code>
+ * benchmarks measure the cost paid for every other class loaded by the JVM, which is what dominates the startup
+ * overhead.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformBenchmark {
+
+    private static final long CONNECT_TIMEOUT = 1000;
+    private static final long READ_TIMEOUT = 1000;
+
+    @Param({
+        "sun/net/www/protocol/http/HttpURLConnection",
+        "org/apache/commons/httpclient/params/DefaultHttpParamsFactory",
+        "org/apache/http/client/config/RequestConfig$Builder",
+        "okhttp3/OkHttpClient$Builder",
+        "jdk/internal/net/http/HttpClientBuilderImpl",
+        "jdk/internal/net/http/HttpRequestBuilderImpl",
+        "java/net/Socket"
+    })
+    public String className;
+
+    @Param({"javassist", "asm"})
+    public String engineName;
+
+    private TransformationEngine engine;
+    private byte[] classfileBuffer;
+    private byte[] nonMatchingClassfileBuffer;
+    private MBeanAwareTimeoutTransformer transformer;
+    private DispatchingTransformer dispatcher;
+
+    @Setup(Level.Trial)
+    public void loadClassDefinitions() throws IOException {
+        Log.configure("");
+        engine = TransformationEngine.fromString(engineName);
+        classfileBuffer = readClass(className);
+        nonMatchingClassfileBuffer = readClass("java/lang/String");
+    }
+
+    /**
+     * Creates new transformers for each iteration, as each transformation is recorded in the {@link AgentInfo}
+     */
+    @Setup(Level.Iteration)
+    public void createTransformers() {
+        AgentInfo agentInfo = new AgentInfo(CONNECT_TIMEOUT, READ_TIMEOUT);
+        List<MBeanAwareTimeoutTransformer> transformers = Arrays.asList(
+                new JavaNetTimeoutTransformer(agentInfo),
+                new HttpClient3TimeoutTransformer(agentInfo),
+                new HttpClient4TimeoutTransformer(agentInfo),
+                new OkHttpTimeoutTransformer(agentInfo),
+                new JdkHttpClientBuilderTimeoutTransformer(agentInfo),
+                new JdkHttpRequestBuilderTimeoutTransformer(agentInfo),
+                new SocketTimeoutTransformer(agentInfo));
+
+        dispatcher = new DispatchingTransformer(agentInfo, transformers, engine, null);
+        transformer = transformers.stream()
+                .filter(t -> t.getClassesToTransform().contains(className))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No transformer found for " + className));
+    }
+
+    @Benchmark
+    public byte[] transformMatching() {
+        return transformer.transformClass(
+                getClass().getClassLoader(), className, classfileBuffer, engine, TimeoutSource.RUNTIME);
+    }
+
+    @Benchmark
+    public byte[] transformNonMatching() {
+        return transformer.transform(
+                getClass().getClassLoader(), "java/lang/String", null, null, nonMatchingClassfileBuffer);
+    }
+
+    @Benchmark
+    public byte[] dispatchMatching() {
+        return dispatcher.transform(getClass().getClassLoader(), className, null, null, classfileBuffer);
+    }
+
+    @Benchmark
+    public byte[] dispatchNonMatching() {
+        return dispatcher.transform(
+                getClass().getClassLoader(), "java/lang/String", null, null, nonMatchingClassfileBuffer);
+    }
+
+    @Benchmark
+    public byte[] dispatchNonMatchingWithCandidatePrefix() {
+        return dispatcher.transform(
+                getClass().getClassLoader(),
+                "org/apache/http/client/config/RequestConfig",
+                null,
+                null,
+                nonMatchingClassfileBuffer);
+    }
+
+    private static byte[] readClass(String internalName) throws IOException {
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(internalName + ".class")) {
+            if (in == null) throw new IllegalArgumentException("No class definition found for " + internalName);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost added to HTTP calls by tracking their deadlines
+ *
+ * <p>Each benchmark starts and ends one call, while <code>inFlight</code> other calls are waiting for their deadline,
+ * so the results show whether the cost depends on the number of calls in progress. The <code>*Contended</code>
+ * variant starts and ends calls from several threads.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeadlinesBenchmark {
+
+    @Param({"0", "50000"})
+    private int inFlight;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        Deadlines.setDeadlineMillis(TimeUnit.HOURS.toMillis(1));
+
+        // each call is bound to its thread, so the calls in flight are started on short-lived threads
+        for (int i = 0; i < inFlight; i++) {
+            Thread thread = new Thread(Deadlines::begin);
+            thread.start();
+            thread.join();
+        }
+    }
+
+    @Benchmark
+    public void call() {
+        Deadlines.begin();
+        Deadlines.end();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void callContended() {
+        Deadlines.begin();
+        Deadlines.end();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost added to socket calls by recording the latencies
+ *
+ * <p>Each benchmark invokes the entry points called by a transformed socket for one connect or one request, so the
+ * results are the overhead per call. The <code>*Contended</code> variants record from several threads into the
+ * histograms of the same host.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LatencyRecorderBenchmark {
+
+    private ServerSocket server;
+    private Socket socket;
+    private InetSocketAddress endpoint;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        endpoint = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        socket = new Socket();
+        socket.connect(endpoint);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        socket.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void connect() {
+        LatencyRecorder.connectStarted();
+        LatencyRecorder.connectCompleted(endpoint);
+    }
+
+    @Benchmark
+    public void firstByte() {
+        LatencyRecorder.written();
+        LatencyRecorder.read(socket);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void firstByteContended() {
+        LatencyRecorder.written();
+        LatencyRecorder.read(socket);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.cta.runtime.AdaptiveTimeouts;
+import org.apache.sling.cta.runtime.LatencyHistogram;
+import org.apache.sling.cta.runtime.LatencyRecorder;
+
+/**
+ * Periodically computes the timeouts of each host from the latencies recorded since the previous computation
+ *
+ * <p>The connect timeout is derived from the connect duration and the read timeout from the time to first byte,
+ * which is the longest wait between bytes for most requests. Each is the {@value #PERCENTILE}th percentile
+ * multiplied by the configured multiplier. Hosts with less than {@value #MIN_SAMPLES} new durations keep their
+ * timeouts, and the durations are carried over to the next computation.</p>
+ *
+ * <p>The learned timeouts are saved to the state file after each change and when the JVM exits.</p>
+ */
+final class AdaptiveTimeoutUpdater implements Runnable {
+
+    static final long INTERVAL_SECONDS = 30;
+    static final int MIN_SAMPLES = 20;
+    static final double PERCENTILE = 99;
+
+    private final double multiplier;
+    private final Path stateFile;
+
+    // only accessed by the updater thread, keyed by identity as the histograms are replaced on reset
+    private Map<LatencyHistogram, long[]> baselines = new IdentityHashMap<>();
+
+    /**
+     * Creates a new instance
+     *
+     * @param multiplier the multiplier applied to the observed percentile
+     * @param stateFile the file the learned timeouts are saved to, may be <code>null</code>
+     */
+    AdaptiveTimeoutUpdater(double multiplier, Path stateFile) {
+        this.multiplier = multiplier;
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * Restores the saved timeouts and starts the periodic computation on a daemon thread
+     */
+    void start() {
+        if (stateFile != null) {
+            int hosts = AdaptiveTimeoutsFile.read(stateFile);
+            Log.get().log("Restored learned timeouts of %d hosts from %s", hosts, stateFile);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::save, "connection-timeout-agent-adaptive-save"));
+        }
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-timeout-agent-adaptive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (update() && stateFile != null) save();
+        } catch (RuntimeException e) {
+            // keep the schedule running
+            Log.get().log("Failed updating the learned timeouts: %s", e);
+        }
+    }
+
+    /**
+     * Computes the timeouts of each host
+     *
+     * @return <code>true</code> if any timeout changed
+     */
+    boolean update() {
+        Map<LatencyHistogram, long[]> next = new IdentityHashMap<>();
+        boolean changed = false;
+
+        for (LatencyRecorder.HostLatencies latencies : LatencyRecorder.getLatencies()) {
+            String host = latencies.getHost();
+            if (LatencyRecorder.OTHER_HOSTS.equals(host)) continue;
+
+            AdaptiveTimeouts.Learned previous = AdaptiveTimeouts.getLearned(host);
+            long connect = learn(latencies.getConnect(), next);
+            long read = learn(latencies.getFirstByte(), next);
+            if (connect == AdaptiveTimeouts.UNKNOWN && previous != null) connect = previous.getConnectTimeoutMillis();
+            if (read == AdaptiveTimeouts.UNKNOWN && previous != null) read = previous.getReadTimeoutMillis();
+            if (connect == AdaptiveTimeouts.UNKNOWN && read == AdaptiveTimeouts.UNKNOWN) continue;
+
+            if (previous == null
+                    || previous.getConnectTimeoutMillis() != connect
+                    || previous.getReadTimeoutMillis() != read) {
+                AdaptiveTimeouts.setLearned(host, connect, read);
+                Log.get().trace("Learned timeouts for %s - connectTimeout: %d, readTimeout: %d", host, connect, read);
+                changed = true;
+            }
+        }
+
+        baselines = next;
+        return changed;
+    }
+
+    private long learn(LatencyHistogram histogram, Map<LatencyHistogram, long[]> next) {
+        long[] total = histogram.getBucketCounts();
+        long[] counts = total.clone();
+        long[] baseline = baselines.get(histogram);
+
+        long samples = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (baseline != null) counts[i] -= baseline[i];
+            samples += counts[i];
+        }
+
+        if (samples < MIN_SAMPLES) {
+            // carry the durations over to the next computation
+            next.put(histogram, baseline != null ? baseline : new long[counts.length]);
+            return AdaptiveTimeouts.UNKNOWN;
+        }
+
+        next.put(histogram, total);
+        double micros = LatencyHistogram.getValueAtPercentile(counts, PERCENTILE) * multiplier;
+        return (long) Math.min(Integer.MAX_VALUE, Math.max(1, Math.ceil(micros / 1000)));
+    }
+
+    private void save() {
+        try {
+            AdaptiveTimeoutsFile.write(stateFile);
+        } catch (IOException | RuntimeException e) {
+            Log.get().log("Failed saving the learned timeouts to %s: %s", stateFile, e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.apache.sling.cta.runtime.AdaptiveTimeouts;
+
+/**
+ * Saves and restores the learned timeouts, so that a restarted JVM does not start learning from scratch
+ *
+ * <p>Each line contains a host, the learned connect timeout and the learned read timeout, in milliseconds,
+ * separated by whitespace, with <code>-1</code> for timeouts that were not learned yet. This is the format of the
+ * {@link TimeoutPolicyFile}, with host names instead of host patterns.</p>
+ *
+ * <p>The file only serves as a cache, so invalid lines are skipped instead of failing the agent.</p>
+ */
+final class AdaptiveTimeoutsFile {
+
+    /**
+     * Restores the learned timeouts, if the file exists
+     *
+     * @param path the path to the file
+     * @return the number of restored hosts
+     */
+    static int read(Path path) {
+        if (!Files.exists(path)) return 0;
+
+        int hosts = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.split("\\s+");
+                try {
+                    if (parts.length != 3)
+                        throw new IllegalArgumentException("expected <host> <connect-timeout> <read-timeout>");
+                    AdaptiveTimeouts.setLearned(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                    hosts++;
+                } catch (IllegalArgumentException e) {
+                    Log.get().log("Skipping invalid learned timeouts at %s:%d: %s", path, lineNumber, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            Log.get().log("Unable to read the learned timeouts from %s: %s", path, e.getMessage());
+        }
+        return hosts;
+    }
+
+    /**
+     * Saves the learned timeouts, replacing the file atomically when supported by the file system
+     *
+     * @param path the path to the file
+     * @throws IOException in case the file cannot be written
+     */
+    static void write(Path path) throws IOException {
+        List<AdaptiveTimeouts.Learned> learned = AdaptiveTimeouts.getLearned();
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write("# <host> <connect-timeout> <read-timeout>, written by the connection timeout agent");
+                writer.newLine();
+                for (AdaptiveTimeouts.Learned timeouts : learned) {
+                    writer.write(timeouts.getHost() + " " + timeouts.getConnectTimeoutMillis() + " "
+                            + timeouts.getReadTimeoutMillis());
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // prevent instantiation
+    private AdaptiveTimeoutsFile() {}
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.sling.cta.runtime.AdaptiveTimeouts;
+
+/**
+ * Converts the {@link AdaptiveTimeouts} to open data
+ */
+final class AdaptiveTimeoutsTable {
+
+    static final TabularType TABULAR_TYPE;
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final String[] ITEM_NAMES = {
+        "host", "learnedConnectTimeoutMillis", "learnedReadTimeoutMillis", "connectTimeoutMillis", "readTimeoutMillis"
+    };
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType(
+                    "AdaptiveTimeout",
+                    "The timeouts learned for a host",
+                    ITEM_NAMES,
+                    new String[] {
+                        "The host",
+                        "The learned connect timeout, in milliseconds, " + AdaptiveTimeouts.UNKNOWN + " if unknown",
+                        "The learned read timeout, in milliseconds, " + AdaptiveTimeouts.UNKNOWN + " if unknown",
+                        "The connect timeout applied to sockets of agent-configured clients, in milliseconds",
+                        "The read timeout applied to sockets of agent-configured clients, in milliseconds"
+                    },
+                    new OpenType<?>[] {
+                        SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG
+                    });
+            TABULAR_TYPE = new TabularType(
+                    "AdaptiveTimeouts", "The timeouts learned for each host", ROW_TYPE, new String[] {"host"});
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private AdaptiveTimeoutsTable() {}
+
+    /**
+     * Returns the current learned timeouts
+     *
+     * @return the learned timeouts, of type {@link #TABULAR_TYPE}
+     * @throws OpenDataException in case the timeouts cannot be converted
+     */
+    static TabularData toTabularData() throws OpenDataException {
+        TabularData data = new TabularDataSupport(TABULAR_TYPE);
+        for (AdaptiveTimeouts.Learned learned : AdaptiveTimeouts.getLearned()) {
+            data.put(new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] {
+                learned.getHost(),
+                learned.getConnectTimeoutMillis(),
+                learned.getReadTimeoutMillis(),
+                learned.getEffectiveConnectTimeoutMillis(),
+                learned.getEffectiveReadTimeoutMillis()
+            }));
+        }
+        return data;
+    }
+}
@@ -22,16 +22,70 @@ import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
 import javax.management.NotCompliantMBeanException;
 
-import java.lang.instrument.ClassFileTransformer;
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
 import java.lang.management.ManagementFactory;
-import java.util.ArrayList;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.sling.cta.runtime.AdaptiveTimeouts;
+import org.apache.sling.cta.runtime.Deadlines;
+import org.apache.sling.cta.runtime.HostPolicies;
+import org.apache.sling.cta.runtime.SocketDefaults;
 
 public class Agent {
 
+    static final String OPTION_ENGINE = "engine";
+    static final String OPTION_POLICIES = "policies";
+    static final String OPTION_LOG_FILE = "logFile";
+    static final String OPTION_LOG_FORMAT = "logFormat";
+    static final String OPTION_ADAPTIVE = "adaptive";
+    static final String OPTION_ADAPTIVE_MULTIPLIER = "adaptiveMultiplier";
+    static final String OPTION_ADAPTIVE_FLOOR = "adaptiveFloorMillis";
+    static final String OPTION_ADAPTIVE_STATE_FILE = "adaptiveStateFile";
+    static final String OPTION_DEADLINE = "deadlineMillis";
+    static final String OPTION_STUCK_CALL = "stuckCall";
+    static final String OPTION_STUCK_CALL_THRESHOLD = "stuckCallThresholdMillis";
+    static final String OPTION_STUCK_CALL_SAMPLING = "stuckCallSamplingMillis";
+    static final String OPTION_SOCKET_DEFAULTS = "socketDefaults";
+    static final String OPTION_SOCKET_DEFAULTS_EXCLUDED_HOSTS = "socketDefaultsExcludedHosts";
+
+    private static final double DEFAULT_ADAPTIVE_MULTIPLIER = 3;
+    private static final long DEFAULT_ADAPTIVE_FLOOR_MILLIS = 100;
+    private static final long DEFAULT_STUCK_CALL_SAMPLING_MILLIS = 5000;
+    private static final long MIN_STUCK_CALL_SAMPLING_MILLIS = 100;
+
+    // guarded by Agent.class
+    private static AgentInfo installedAgentInfo;
+
     public static void premain(String args, Instrumentation inst) {
+        install(args, inst);
+    }
+
+    /**
+     * Entry point used when the agent is loaded into a running JVM
+     *
+     * <p>The handled classes that are already loaded are retransformed. Attaching the agent again, or attaching it
+     * to a JVM started with the agent, does not install the transformers a second time. Instead, the timeouts and
+     * policies are replaced with the ones from the new arguments.</p>
+     *
+     * @param args the agent arguments
+     * @param inst the instrumentation instance
+     */
+    public static void agentmain(String args, Instrumentation inst) {
+        install(args, inst);
+    }
+
+    private static synchronized void install(String args, Instrumentation inst) {
+
+        long start = System.nanoTime();
 
         String[] parsedArgs = args != null ? args.split(",") : new String[0];
         long connectTimeout = TimeUnit.MINUTES.toMillis(1);
@@ -40,8 +94,35 @@ public class Agent {
         if (parsedArgs.length > 0) connectTimeout = Long.parseLong(parsedArgs[0]);
         if (parsedArgs.length > 1) readTimeout = Long.parseLong(parsedArgs[1]);
         if (parsedArgs.length > 2) logSpec = parsedArgs[2];
+        Map<String, String> options = parseOptions(parsedArgs, 3);
+
+        configureLog(logSpec, options);
 
-        Log.configure(logSpec);
+        if (installedAgentInfo != null) {
+            Log.get()
+                    .log(
+                            "Agent already installed, updating configured timeouts - connectTimeout : %d, readTimeout: %d",
+                            connectTimeout, readTimeout);
+            installedAgentInfo.setConnectTimeoutMillis(connectTimeout);
+            installedAgentInfo.setReadTimeoutMillis(readTimeout);
+            configurePolicies(options);
+            configureDeadline(options);
+            configureSocketDefaults(options);
+            for (String option : options.keySet()) {
+                if (option.equals(OPTION_ENGINE)
+                        || option.startsWith(OPTION_ADAPTIVE)
+                        || option.startsWith(OPTION_STUCK_CALL))
+                    Log.get().log("Ignoring the %s option, the transformers are already installed", option);
+            }
+            return;
+        }
+
+        // must happen before any runtime class is loaded
+        try {
+            RuntimeClasses.appendToBootstrapClassLoaderSearch(inst);
+        } catch (IOException e) {
+            Log.get().fatal("Failed making the runtime classes visible, timeouts will not be adjustable", e);
+        }
 
         Log.get()
                 .log(
@@ -50,14 +131,35 @@ public class Agent {
 
         AgentInfo agentInfoMBean = new AgentInfo(connectTimeout, readTimeout);
 
-        ClassFileTransformer[] transformers = new ClassFileTransformer[] {
-            new JavaNetTimeoutTransformer(connectTimeout, readTimeout, agentInfoMBean),
-            new HttpClient3TimeoutTransformer(connectTimeout, readTimeout, agentInfoMBean),
-            new HttpClient4TimeoutTransformer(connectTimeout, readTimeout, agentInfoMBean),
-            new OkHttpTimeoutTransformer(connectTimeout, readTimeout, agentInfoMBean),
-            new JdkHttpClientBuilderTimeoutTransformer(connectTimeout, agentInfoMBean),
-            new JdkHttpRequestBuilderTimeoutTransformer(readTimeout, agentInfoMBean)
-        };
+        configurePolicies(options);
+        configureAdaptiveTimeouts(options);
+        configureDeadline(options);
+        configureSocketDefaults(options);
+        configureStuckCallSampler(options, agentInfoMBean);
+
+        List<MBeanAwareTimeoutTransformer> transformers = Arrays.asList(
+                new JavaNetTimeoutTransformer(agentInfoMBean),
+                new HttpClient3TimeoutTransformer(agentInfoMBean),
+                new HttpClient4TimeoutTransformer(agentInfoMBean),
+                new HttpAsyncClient4TimeoutTransformer(agentInfoMBean),
+                new HttpClient5TimeoutTransformer(agentInfoMBean),
+                new OkHttpTimeoutTransformer(agentInfoMBean),
+                new JettyHttpClientTimeoutTransformer(agentInfoMBean),
+                new JettyHttpRequestTimeoutTransformer(agentInfoMBean),
+                new NettyBootstrapTimeoutTransformer(agentInfoMBean),
+                new JdkHttpClientBuilderTimeoutTransformer(agentInfoMBean),
+                new JdkHttpRequestBuilderTimeoutTransformer(agentInfoMBean),
+                new JdkHttpRequestTimeoutTransformer(agentInfoMBean),
+                new JdkWebSocketBuilderTimeoutTransformer(agentInfoMBean),
+                new SocketTimeoutTransformer(agentInfoMBean),
+                new SocketInputStreamTimeoutTransformer(agentInfoMBean),
+                new SocketOutputStreamTimeoutTransformer(agentInfoMBean),
+                new SocketChannelTimeoutTransformer(agentInfoMBean),
+                new AsynchronousSocketChannelTimeoutTransformer(agentInfoMBean),
+                new LdapContextTimeoutTransformer(agentInfoMBean),
+                new OkHttpCallTimeoutTransformer(agentInfoMBean),
+                new HttpClientDeadlineTransformer(agentInfoMBean),
+                new JdkHttpClientTimeoutTransformer(agentInfoMBean));
 
         try {
             ManagementFactory.getPlatformMBeanServer().registerMBean(agentInfoMBean, AgentInfo.NAME);
@@ -65,13 +167,163 @@ public class Agent {
             Log.get().log("Failed registering MBean: %s", e.getMessage());
         }
 
-        List<String> transformerNames = new ArrayList<>();
-        for (ClassFileTransformer transformer : transformers) {
-            inst.addTransformer(transformer, true);
-            transformerNames.add(transformer.getClass().getName());
+        TransformationEngine engine = TransformationEngine.fromString(options.get(OPTION_ENGINE));
+
+        // a single transformer is registered, so that the JVM does not invoke each of them for every loaded class
+        DispatchingTransformer dispatcher = new DispatchingTransformer(agentInfoMBean, transformers, engine, inst);
+        inst.addTransformer(dispatcher, true);
+
+        retransformLoadedClasses(inst, dispatcher);
+
+        installedAgentInfo = agentInfoMBean;
+        agentInfoMBean.registerInstallTime(System.nanoTime() - start);
+
+        Log.get().log("All transformers installed in %d microseconds", agentInfoMBean.getInstallTimeNanos() / 1000);
+    }
+
+    private static void configureLog(String logSpec, Map<String, String> options) {
+        String logFile = options.get(OPTION_LOG_FILE);
+        String logFormat = options.getOrDefault(OPTION_LOG_FORMAT, "text");
+        if (!"text".equals(logFormat) && !"json".equals(logFormat))
+            throw new IllegalArgumentException(
+                    "Invalid " + OPTION_LOG_FORMAT + " '" + logFormat + "', expected text or json");
+
+        Log.configure(logSpec, logFile != null ? Paths.get(logFile) : null, "json".equals(logFormat));
+    }
+
+    private static void configurePolicies(Map<String, String> options) {
+        String policiesFile = options.get(OPTION_POLICIES);
+        if (policiesFile == null) {
+            HostPolicies.setPolicies(Collections.emptyList());
+            return;
         }
 
-        Log.get().log("All transformers installed");
+        HostPolicies.setPolicies(TimeoutPolicyFile.read(Paths.get(policiesFile)));
+        Log.get().log("Loaded timeout policies from %s: %s", policiesFile, HostPolicies.getPolicies());
+    }
+
+    private static void configureAdaptiveTimeouts(Map<String, String> options) {
+        if (!Boolean.parseBoolean(options.get(OPTION_ADAPTIVE))) return;
+
+        double multiplier = DEFAULT_ADAPTIVE_MULTIPLIER;
+        long floorMillis = DEFAULT_ADAPTIVE_FLOOR_MILLIS;
+        try {
+            if (options.containsKey(OPTION_ADAPTIVE_MULTIPLIER))
+                multiplier = Double.parseDouble(options.get(OPTION_ADAPTIVE_MULTIPLIER));
+            if (options.containsKey(OPTION_ADAPTIVE_FLOOR))
+                floorMillis = Long.parseLong(options.get(OPTION_ADAPTIVE_FLOOR));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid adaptive timeouts option: " + e.getMessage(), e);
+        }
+        if (!(multiplier >= 1))
+            throw new IllegalArgumentException(
+                    "Invalid " + OPTION_ADAPTIVE_MULTIPLIER + " " + multiplier + ", expected a value of at least 1");
+
+        AdaptiveTimeouts.configure(true, floorMillis);
+        String stateFile = options.get(OPTION_ADAPTIVE_STATE_FILE);
+        new AdaptiveTimeoutUpdater(multiplier, stateFile != null ? Paths.get(stateFile) : null).start();
+
+        Log.get()
+                .log(
+                        "Enabled adaptive timeouts - multiplier: %s, floor: %d, state file: %s",
+                        multiplier, floorMillis, stateFile);
+    }
+
+    private static void configureDeadline(Map<String, String> options) {
+        long deadlineMillis;
+        try {
+            deadlineMillis = Long.parseLong(options.getOrDefault(OPTION_DEADLINE, "0"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + OPTION_DEADLINE + " option: " + e.getMessage(), e);
+        }
+
+        Deadlines.setDeadlineMillis(deadlineMillis);
+        if (deadlineMillis > 0) Log.get().log("Enabled call deadlines - deadline: %d", deadlineMillis);
+    }
+
+    private static void configureSocketDefaults(Map<String, String> options) {
+        boolean enabled = Boolean.parseBoolean(options.get(OPTION_SOCKET_DEFAULTS));
+        // the agent arguments are separated by commas, so the hosts are separated by semicolons
+        List<String> excludedHosts = Arrays.stream(
+                        options.getOrDefault(OPTION_SOCKET_DEFAULTS_EXCLUDED_HOSTS, SocketDefaults.LOOPBACK)
+                                .split(";"))
+                .map(String::trim)
+                .filter(h -> !h.isEmpty())
+                .collect(Collectors.toList());
+
+        SocketDefaults.configure(enabled, excludedHosts);
+        if (enabled) Log.get().log("Enabled socket defaults - excluded hosts: %s", excludedHosts);
+    }
+
+    private static void configureStuckCallSampler(Map<String, String> options, AgentInfo agentInfo) {
+        long thresholdMillis;
+        long samplingMillis;
+        try {
+            thresholdMillis = Long.parseLong(options.getOrDefault(OPTION_STUCK_CALL_THRESHOLD, "0"));
+            samplingMillis = Long.parseLong(options.getOrDefault(
+                    OPTION_STUCK_CALL_SAMPLING, String.valueOf(DEFAULT_STUCK_CALL_SAMPLING_MILLIS)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid stuck call option: " + e.getMessage(), e);
+        }
+        if (thresholdMillis < 0)
+            throw new IllegalArgumentException(
+                    "Invalid " + OPTION_STUCK_CALL_THRESHOLD + " " + thresholdMillis + ", expected a positive value");
+        if (samplingMillis < MIN_STUCK_CALL_SAMPLING_MILLIS)
+            throw new IllegalArgumentException("Invalid " + OPTION_STUCK_CALL_SAMPLING + " " + samplingMillis
+                    + ", expected a value of at least " + MIN_STUCK_CALL_SAMPLING_MILLIS);
+        if (thresholdMillis == 0) return;
+
+        StuckCallSampler sampler = new StuckCallSampler(thresholdMillis, samplingMillis);
+        agentInfo.registerStuckCallSampler(sampler);
+        sampler.start();
+
+        Log.get()
+                .log(
+                        "Enabled stuck call detection - threshold: %d, sampling interval: %d",
+                        thresholdMillis, samplingMillis);
+    }
+
+    /**
+     * Retransforms the handled classes that were loaded before the transformer was registered, e.g.
+     * <code>java.net.Socket</code> or any class when the agent is attached to a running JVM
+     *
+     * @param inst the instrumentation instance
+     * @param dispatcher the registered transformer
+     */
+    static void retransformLoadedClasses(Instrumentation inst, DispatchingTransformer dispatcher) {
+        Class<?>[] loaded = Arrays.stream(inst.getAllLoadedClasses())
+                .filter(c -> dispatcher.handles(c.getName().replace('.', '/')))
+                .filter(inst::isModifiableClass)
+                .toArray(Class<?>[]::new);
+        if (loaded.length == 0) return;
+
+        Log.get().log("Retransforming already loaded classes %s", Arrays.toString(loaded));
+        try {
+            inst.retransformClasses(loaded);
+        } catch (UnmodifiableClassException | RuntimeException e) {
+            Log.get().fatal("Failed retransforming already loaded classes", e);
+        }
+    }
+
+    /**
+     * Parses the optional <code>key=value</code> arguments
+     *
+     * @param parsedArgs all the agent arguments
+     * @param offset the position of the first optional argument
+     * @return the options, keyed by name
+     */
+    static Map<String, String> parseOptions(String[] parsedArgs, int offset) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = offset; i < parsedArgs.length; i++) {
+            int separator = parsedArgs[i].indexOf('=');
+            if (separator == -1)
+                throw new IllegalArgumentException(
+                        "Invalid option '" + parsedArgs[i] + "', expected format is <key>=<value>");
+            options.put(
+                    parsedArgs[i].substring(0, separator).trim(),
+                    parsedArgs[i].substring(separator + 1).trim());
+        }
+        return options;
     }
 
     // prevent instantiation
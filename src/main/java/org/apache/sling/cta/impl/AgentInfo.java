@@ -20,59 +20,283 @@ package org.apache.sling.cta.impl;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
 
 import java.lang.instrument.ClassFileTransformer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.cta.runtime.Deadlines;
+import org.apache.sling.cta.runtime.HostPolicies;
+import org.apache.sling.cta.runtime.LatencyRecorder;
+import org.apache.sling.cta.runtime.SocketDefaults;
+import org.apache.sling.cta.runtime.TimeoutDefaults;
+import org.apache.sling.cta.runtime.TimeoutPolicy;
 
 public class AgentInfo implements AgentInfoMBean {
 
     static final ObjectName NAME;
 
+    private static final int MAX_TRANSFORMED_CLASSES = 1024;
+
+    private static final CompositeType SNAPSHOT_TYPE;
+
+    private static final String[] SNAPSHOT_ITEM_NAMES = {
+        "connectTimeoutMillis",
+        "readTimeoutMillis",
+        "deadlineMillis",
+        "exceededDeadlineCount",
+        "timeoutPolicies",
+        "socketDefaults",
+        "socketDefaultsExcludedHosts",
+        "transformers",
+        "transformedClasses",
+        "inspectedClassCount",
+        "installTimeNanos",
+        "transformerStats",
+        "timeoutCounts",
+        "latencies",
+        "adaptiveTimeouts",
+        "stuckCalls",
+        "nettyChannels",
+        "ldapContexts"
+    };
+
     static {
         try {
             NAME = new ObjectName(AgentInfo.class.getPackage().getName().replace(".impl", "") + ":type=Agent");
-        } catch (MalformedObjectNameException e) {
+            SNAPSHOT_TYPE = new CompositeType(
+                    "AgentSnapshot",
+                    "The state of the agent",
+                    SNAPSHOT_ITEM_NAMES,
+                    new String[] {
+                        "The connect timeout, in milliseconds",
+                        "The read timeout, in milliseconds",
+                        "The deadline of HTTP calls, in milliseconds",
+                        "The number of HTTP calls aborted because their deadline passed",
+                        "The host timeout policies",
+                        "Whether plain sockets without timeouts get the default ones",
+                        "The hosts for which plain sockets keep having no timeouts",
+                        "The active transformers",
+                        "The transformed classes",
+                        "The number of classes inspected by the agent",
+                        "The time spent installing the agent, in nanoseconds",
+                        "The transformations done by each transformer",
+                        "The number of timeouts fired for each client type and host",
+                        "The latency distributions for each host",
+                        "The timeouts learned for each host",
+                        "The threads blocked in a socket for longer than the threshold",
+                        "The Netty client channels connected to each host",
+                        "The LDAP contexts created for each directory server host"
+                    },
+                    new OpenType<?>[] {
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        ArrayType.getArrayType(SimpleType.STRING),
+                        SimpleType.BOOLEAN,
+                        ArrayType.getArrayType(SimpleType.STRING),
+                        ArrayType.getArrayType(SimpleType.STRING),
+                        TransformedClassRegistry.TABULAR_TYPE,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        TransformerStats.TABULAR_TYPE,
+                        TimeoutCountsTable.TABULAR_TYPE,
+                        LatencyTable.TABULAR_TYPE,
+                        AdaptiveTimeoutsTable.TABULAR_TYPE,
+                        StuckCallsTable.TABULAR_TYPE,
+                        NettyChannelsTable.TABULAR_TYPE,
+                        LdapContextsTable.TABULAR_TYPE
+                    });
+        } catch (MalformedObjectNameException | OpenDataException e) {
             throw new ExceptionInInitializerError(e);
         }
     }
 
-    private final long connectTimeoutMillis;
+    private final Map<String, TransformerStats> transformers = new ConcurrentSkipListMap<>();
+
+    private final TransformedClassRegistry transformedClasses = new TransformedClassRegistry(MAX_TRANSFORMED_CLASSES);
 
-    private final long readTimeoutMillis;
+    private final LongAdder inspectedClasses = new LongAdder();
 
-    private List<String> transformers = new ArrayList<>();
+    private volatile long installTimeNanos;
 
-    private List<String> transformedClasses = new ArrayList<>();
+    private volatile StuckCallSampler stuckCallSampler;
 
     public AgentInfo(long connectTimeoutMillis, long readTimeoutMillis) {
-        this.connectTimeoutMillis = connectTimeoutMillis;
-        this.readTimeoutMillis = readTimeoutMillis;
+        TimeoutDefaults.setConnectTimeoutMillis(connectTimeoutMillis);
+        TimeoutDefaults.setReadTimeoutMillis(readTimeoutMillis);
     }
 
     @Override
     public long getConnectTimeoutMillis() {
-        return connectTimeoutMillis;
+        return TimeoutDefaults.getConnectTimeoutMillis();
+    }
+
+    @Override
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        long previous = TimeoutDefaults.getConnectTimeoutMillis();
+        TimeoutDefaults.setConnectTimeoutMillis(connectTimeoutMillis);
+        Log.get().log("Connect timeout changed from %d to %d", previous, connectTimeoutMillis);
     }
 
     @Override
     public long getReadTimeoutMillis() {
-        return readTimeoutMillis;
+        return TimeoutDefaults.getReadTimeoutMillis();
+    }
+
+    @Override
+    public void setReadTimeoutMillis(long readTimeoutMillis) {
+        long previous = TimeoutDefaults.getReadTimeoutMillis();
+        TimeoutDefaults.setReadTimeoutMillis(readTimeoutMillis);
+        Log.get().log("Read timeout changed from %d to %d", previous, readTimeoutMillis);
+    }
+
+    @Override
+    public long getDeadlineMillis() {
+        return Deadlines.getDeadlineMillis();
+    }
+
+    @Override
+    public void setDeadlineMillis(long deadlineMillis) {
+        long previous = Deadlines.getDeadlineMillis();
+        Deadlines.setDeadlineMillis(deadlineMillis);
+        Log.get().log("Deadline changed from %d to %d", previous, deadlineMillis);
+    }
+
+    @Override
+    public long getExceededDeadlineCount() {
+        return Deadlines.getExceededCount();
+    }
+
+    @Override
+    public String[] getTimeoutPolicies() {
+        return HostPolicies.getPolicies().stream().map(TimeoutPolicy::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public boolean isSocketDefaults() {
+        return SocketDefaults.isEnabled();
+    }
+
+    @Override
+    public String[] getSocketDefaultsExcludedHosts() {
+        return SocketDefaults.getExcludedHosts().toArray(new String[0]);
     }
 
     public String[] getTransformers() {
-        return transformers.toArray(new String[0]);
+        return transformers.keySet().toArray(new String[0]);
     }
 
     public String[] getTransformedClasses() {
-        return transformedClasses.toArray(new String[0]);
+        return transformedClasses.getClassNames();
+    }
+
+    @Override
+    public CompositeData snapshot() throws OpenDataException {
+        return new CompositeDataSupport(SNAPSHOT_TYPE, SNAPSHOT_ITEM_NAMES, new Object[] {
+            getConnectTimeoutMillis(),
+            getReadTimeoutMillis(),
+            getDeadlineMillis(),
+            getExceededDeadlineCount(),
+            getTimeoutPolicies(),
+            isSocketDefaults(),
+            getSocketDefaultsExcludedHosts(),
+            getTransformers(),
+            transformedClasses.toTabularData(),
+            getInspectedClassCount(),
+            getInstallTimeNanos(),
+            getTransformerStats(),
+            getTimeoutCounts(),
+            getLatencies(),
+            getAdaptiveTimeouts(),
+            getStuckCalls(),
+            getNettyChannels(),
+            getLdapContexts()
+        });
+    }
+
+    @Override
+    public long getInspectedClassCount() {
+        return inspectedClasses.sum();
+    }
+
+    @Override
+    public long getInstallTimeNanos() {
+        return installTimeNanos;
+    }
+
+    @Override
+    public TabularData getTransformerStats() throws OpenDataException {
+        TabularData data = new TabularDataSupport(TransformerStats.TABULAR_TYPE);
+        for (TransformerStats stats : transformers.values()) data.put(stats.toCompositeData());
+        return data;
+    }
+
+    @Override
+    public TabularData getTimeoutCounts() throws OpenDataException {
+        return TimeoutCountsTable.toTabularData();
+    }
+
+    @Override
+    public TabularData getLatencies() throws OpenDataException {
+        return LatencyTable.toTabularData();
+    }
+
+    @Override
+    public void resetLatencies() {
+        LatencyRecorder.reset();
+    }
+
+    @Override
+    public TabularData getAdaptiveTimeouts() throws OpenDataException {
+        return AdaptiveTimeoutsTable.toTabularData();
+    }
+
+    @Override
+    public TabularData getStuckCalls() throws OpenDataException {
+        StuckCallSampler sampler = stuckCallSampler;
+        return StuckCallsTable.toTabularData(sampler != null ? sampler.getStuckCalls() : Collections.emptyList());
+    }
+
+    @Override
+    public TabularData getNettyChannels() throws OpenDataException {
+        return NettyChannelsTable.toTabularData();
+    }
+
+    @Override
+    public TabularData getLdapContexts() throws OpenDataException {
+        return LdapContextsTable.toTabularData();
+    }
+
+    public void registerInspectedClass() {
+        inspectedClasses.increment();
+    }
+
+    public void registerInstallTime(long nanos) {
+        installTimeNanos = nanos;
+    }
+
+    void registerStuckCallSampler(StuckCallSampler sampler) {
+        stuckCallSampler = sampler;
     }
 
-    public void registerTransformedClass(String transformedClassName) {
-        transformedClasses.add(transformedClassName);
+    public void registerTransformedClass(String transformedClassName, ClassLoader loader) {
+        transformedClasses.register(transformedClassName, loader);
     }
 
-    public void registerTransformer(Class<? extends ClassFileTransformer> transformerClass) {
-        transformers.add(transformerClass.getName());
+    public TransformerStats registerTransformer(Class<? extends ClassFileTransformer> transformerClass) {
+        return transformers.computeIfAbsent(transformerClass.getName(), TransformerStats::new);
     }
 }
@@ -18,6 +18,10 @@
  */
 package org.apache.sling.cta.impl;
 
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
 /**
  * Exposes runtime information about the agent using <code>JMX</code>.
  *
@@ -31,6 +35,14 @@ public interface AgentInfoMBean {
      */
     long getConnectTimeoutMillis();
 
+    /**
+     * Sets the connect timeout, applied from now on without retransforming any class
+     *
+     * @param connectTimeoutMillis the connect timeout, in milliseconds
+     * @throws IllegalArgumentException if the timeout is negative or larger than {@link Integer#MAX_VALUE}
+     */
+    void setConnectTimeoutMillis(long connectTimeoutMillis);
+
     /**
      * Returns the read timeout
      *
@@ -38,6 +50,61 @@ public interface AgentInfoMBean {
      */
     long getReadTimeoutMillis();
 
+    /**
+     * Sets the read timeout, applied from now on without retransforming any class
+     *
+     * @param readTimeoutMillis the read timeout, in milliseconds
+     * @throws IllegalArgumentException if the timeout is negative or larger than {@link Integer#MAX_VALUE}
+     */
+    void setReadTimeoutMillis(long readTimeoutMillis);
+
+    /**
+     * Returns the deadline of HTTP calls
+     *
+     * @return the deadline, in milliseconds, 0 if calls have no deadline
+     */
+    long getDeadlineMillis();
+
+    /**
+     * Sets the deadline of HTTP calls, applied to the calls started from now on
+     *
+     * <p>Calls still in progress when the deadline passes are aborted by closing their socket. The deadline covers
+     * connecting, sending the request, following redirects and receiving the response headers, but not reading the
+     * response body.</p>
+     *
+     * @param deadlineMillis the deadline, in milliseconds, 0 for no deadline
+     * @throws IllegalArgumentException if the deadline is negative or larger than {@link Integer#MAX_VALUE}
+     */
+    void setDeadlineMillis(long deadlineMillis);
+
+    /**
+     * Returns the number of HTTP calls aborted because their deadline passed
+     *
+     * @return the number of aborted calls
+     */
+    long getExceededDeadlineCount();
+
+    /**
+     * Returns the host timeout policies, in the order in which they are evaluated
+     *
+     * @return the policies, formatted as <code>&lt;host-pattern&gt; &lt;connect-timeout&gt; &lt;read-timeout&gt;</code>
+     */
+    String[] getTimeoutPolicies();
+
+    /**
+     * Returns whether plain sockets without timeouts get the default ones, see the <code>socketDefaults</code> option
+     *
+     * @return <code>true</code> if the socket defaults are enabled
+     */
+    boolean isSocketDefaults();
+
+    /**
+     * Returns the hosts excluded from the socket defaults
+     *
+     * @return the host patterns, or <code>loopback</code> for the loopback addresses
+     */
+    String[] getSocketDefaultsExcludedHosts();
+
     /**
      * Returns the active transformers
      *
@@ -46,9 +113,116 @@ public interface AgentInfoMBean {
     String[] getTransformers();
 
     /**
-     * Returns the classes that were transformed to enforce global timeout defaults
+     * Returns the classes that were transformed to enforce global timeout defaults, without duplicates
      *
      * @return the classes that were transformed
      */
     String[] getTransformedClasses();
+
+    /**
+     * Returns the number of classes inspected by the agent, i.e. all classes loaded or retransformed since the agent
+     * was installed
+     *
+     * @return the number of inspected classes
+     */
+    long getInspectedClassCount();
+
+    /**
+     * Returns the time spent installing the agent, from the start of <code>premain</code> or <code>agentmain</code>
+     * until all transformers are registered and the already loaded classes are retransformed
+     *
+     * @return the install time, in nanoseconds
+     */
+    long getInstallTimeNanos();
+
+    /**
+     * Returns the number of classes matched, transformed, failed and skipped by each transformer, and the total and
+     * maximum time spent transforming them
+     *
+     * @return the transformer stats, one row for each transformer
+     * @throws OpenDataException in case the stats cannot be converted
+     */
+    TabularData getTransformerStats() throws OpenDataException;
+
+    /**
+     * Returns the number of connect and read timeouts fired, for each client type and host
+     *
+     * <p>The number of hosts is bounded, the timeouts of further hosts are counted together.</p>
+     *
+     * @return the timeout counts, one row for each client type and host
+     * @throws OpenDataException in case the counts cannot be converted
+     */
+    TabularData getTimeoutCounts() throws OpenDataException;
+
+    /**
+     * Returns the distribution of the connect duration and the time to first byte, for each host
+     *
+     * <p>The percentiles are approximated with a relative error of at most 12.5%. The number of hosts is bounded, the
+     * durations of further hosts are recorded together.</p>
+     *
+     * @return the latencies, one row for each host and latency
+     * @throws OpenDataException in case the latencies cannot be converted
+     */
+    TabularData getLatencies() throws OpenDataException;
+
+    /**
+     * Discards the recorded latencies
+     */
+    void resetLatencies();
+
+    /**
+     * Returns the timeouts learned for each host from the observed latencies, when adaptive timeouts are enabled
+     *
+     * <p>The learned timeouts are clamped between the configured floor and the agent timeouts before being applied.
+     * Hosts with a timeout policy do not use the learned timeouts.</p>
+     *
+     * @return the learned timeouts, one row for each host
+     * @throws OpenDataException in case the timeouts cannot be converted
+     */
+    TabularData getAdaptiveTimeouts() throws OpenDataException;
+
+    /**
+     * Returns the threads found blocked in a socket connect or read for longer than the threshold, when stuck call
+     * detection is enabled
+     *
+     * <p>The threads are found by periodically sampling the stack traces of all threads, so they include calls made by
+     * clients the agent does not transform.</p>
+     *
+     * @return the stuck calls, one row for each thread
+     * @throws OpenDataException in case the calls cannot be converted
+     */
+    TabularData getStuckCalls() throws OpenDataException;
+
+    /**
+     * Returns the number of Netty client channels connected, for each host, and how many of them use the agent
+     * connect timeout
+     *
+     * <p>The number of hosts is bounded, the channels to further hosts are counted together.</p>
+     *
+     * @return the channel counts, one row for each host
+     * @throws OpenDataException in case the counts cannot be converted
+     */
+    TabularData getNettyChannels() throws OpenDataException;
+
+    /**
+     * Returns the number of LDAP contexts created, for each directory server host, and how many of them got an agent
+     * timeout because their environment did not set one
+     *
+     * <p>The number of hosts is bounded, the contexts for further hosts are counted together.</p>
+     *
+     * @return the context counts, one row for each host
+     * @throws OpenDataException in case the counts cannot be converted
+     */
+    TabularData getLdapContexts() throws OpenDataException;
+
+    /**
+     * Returns the state of the agent, so that it can be retrieved in a single call
+     *
+     * <p>The snapshot holds all attributes, with the transformed classes listed together with their class loader,
+     * transformation times and count.</p>
+     *
+     * @return the snapshot
+     * @throws OpenDataException in case the snapshot cannot be created
+     */
+    CompositeData snapshot() throws OpenDataException;
 }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.SocketAddress;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import org.apache.sling.cta.runtime.ChannelDeadlines;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Enforces the default timeouts on <code>java.nio.channels.AsynchronousSocketChannel</code> connects and reads
+ * returning a future
+ *
+ * <p>Hooks into <code>sun.nio.ch.AsynchronousSocketChannelImpl</code>, the base class of all asynchronous socket
+ * channels: the future returned by <code>connect(SocketAddress)</code> is replaced, and reads without a completion
+ * handler and without a timeout get one, see {@link ChannelDeadlines}. All reads go through a private method taking
+ * the timeout, which is the one transformed.</p>
+ */
+class AsynchronousSocketChannelTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String CHANNEL_IMPL_CLASS_NAME = "sun/nio/ch/AsynchronousSocketChannelImpl";
+    private static final String CHANNEL_DESCRIPTOR = Type.getDescriptor(AsynchronousSocketChannel.class);
+    private static final String SOCKET_ADDRESS_DESCRIPTOR = Type.getDescriptor(SocketAddress.class);
+    private static final String FUTURE_DESCRIPTOR = Type.getDescriptor(Future.class);
+    private static final String TIME_UNIT_DESCRIPTOR = Type.getDescriptor(TimeUnit.class);
+    private static final String COMPLETION_HANDLER_DESCRIPTOR = Type.getDescriptor(CompletionHandler.class);
+    private static final String READ_METHOD_DESCRIPTOR = "(ZLjava/nio/ByteBuffer;[Ljava/nio/ByteBuffer;J"
+            + TIME_UNIT_DESCRIPTOR + "Ljava/lang/Object;" + COMPLETION_HANDLER_DESCRIPTOR + ")" + FUTURE_DESCRIPTOR;
+    private static final String CHANNEL_DEADLINES_CLASS_NAME = Type.getInternalName(ChannelDeadlines.class);
+
+    public AsynchronousSocketChannelTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(CHANNEL_IMPL_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        ClassPool pool = cc.getClassPool();
+        String channelDeadlines = ChannelDeadlines.class.getName();
+
+        CtMethod connect = cc.getDeclaredMethod("connect", new CtClass[] {pool.get(SocketAddress.class.getName())});
+        connect.insertAfter("$_ = " + channelDeadlines + ".connectFuture($_, this, $1);");
+
+        CtMethod read = cc.getMethod("read", READ_METHOD_DESCRIPTOR);
+        read.insertBefore("$4 = " + channelDeadlines + ".readFutureTimeout(this, $4, $5, $7);");
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        ClassVisitor read = new MethodTransformingClassVisitor(next, "read", READ_METHOD_DESCRIPTOR) {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // timeout = ChannelDeadlines.readFutureTimeout(this, timeout, unit, handler);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.LLOAD, 4);
+                mv.visitVarInsn(Opcodes.ALOAD, 6);
+                mv.visitVarInsn(Opcodes.ALOAD, 8);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        CHANNEL_DEADLINES_CLASS_NAME,
+                        "readFutureTimeout",
+                        "(" + CHANNEL_DESCRIPTOR + "J" + TIME_UNIT_DESCRIPTOR + COMPLETION_HANDLER_DESCRIPTOR + ")J",
+                        false);
+                mv.visitVarInsn(Opcodes.LSTORE, 4);
+            }
+        };
+
+        return new MethodTransformingClassVisitor(
+                read, "connect", "(" + SOCKET_ADDRESS_DESCRIPTOR + ")" + FUTURE_DESCRIPTOR) {
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                // future = ChannelDeadlines.connectFuture(future, this, remote);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        CHANNEL_DEADLINES_CLASS_NAME,
+                        "connectFuture",
+                        "(" + FUTURE_DESCRIPTOR + CHANNEL_DESCRIPTOR + SOCKET_ADDRESS_DESCRIPTOR + ")"
+                                + FUTURE_DESCRIPTOR,
+                        false);
+            }
+        };
+    }
+}
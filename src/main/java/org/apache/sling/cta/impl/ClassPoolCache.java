@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+
+import org.apache.sling.cta.runtime.TimeoutDefaults;
+
+/**
+ * Caches javassist {@link ClassPool class pools}, one for each class loader that defines a transformed class
+ *
+ * <p>Class loaders are weakly referenced, so that the entries are evicted once a class loader is garbage
+ * collected, e.g. after an OSGi bundle is refreshed. The class pools only hold weak references to their class
+ * loaders as well, see {@link LoaderClassPath}. The number of entries is additionally bounded, evicting an
+ * arbitrary entry when the limit is reached.</p>
+ *
+ * <p>Class pools are not thread-safe, callers must synchronize on the returned instance while using it.</p>
+ */
+class ClassPoolCache {
+
+    private final int maxSize;
+    private final Map<ClassLoader, ClassPool> pools = new WeakHashMap<>();
+
+    ClassPoolCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the class pool for the specified class loader, creating it if needed
+     *
+     * @param loader the class loader, <code>null</code> for the bootstrap class loader
+     * @return the class pool
+     */
+    synchronized ClassPool get(ClassLoader loader) {
+        ClassPool pool = pools.get(loader);
+        if (pool != null) return pool;
+
+        if (pools.size() >= maxSize) {
+            Iterator<ClassLoader> it = pools.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        pool = new ClassPool(true);
+        // in OSGi environments access is automatically permitted to all classes, even for a Java agent
+        // therefore we need to adjust the default class path by appending all classes accessible
+        // to the specified class loader
+        pool.appendClassPath(new LoaderClassPath(loader));
+        // the runtime classes referenced by the transformed code are not necessarily visible to the class loader
+        pool.appendClassPath(new ClassClassPath(TimeoutDefaults.class));
+        pools.put(loader, pool);
+
+        Log.get().log("Created class pool for %s, %d pools cached", loader, pools.size());
+
+        return pool;
+    }
+}
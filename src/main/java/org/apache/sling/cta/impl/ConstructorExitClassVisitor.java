@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Support class for ASM visitors that change all the constructors of a class which call a superclass constructor
+ *
+ * <p>The equivalent of the javassist <code>insertAfter</code> operation on each constructor for which
+ * <code>callsSuper()</code> is true. Constructors delegating to another constructor of the same class are left
+ * unchanged, so that the injected code runs once per instance, and after all fields are initialized. The injected
+ * code must leave the operand stack unchanged, must not declare local variables and must not branch.</p>
+ */
+abstract class ConstructorExitClassVisitor extends ClassVisitor {
+
+    private String className;
+
+    protected ConstructorExitClassVisitor(ClassVisitor next) {
+        super(MethodTransformingClassVisitor.ASM_API, next);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.className = name;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+            int access, String name, String descriptor, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+        if (!"<init>".equals(name)) return mv;
+
+        return new MethodVisitor(MethodTransformingClassVisitor.ASM_API, mv) {
+            // objects allocated by the constructor are initialized before the this() or super() call returns
+            private int pendingAllocations;
+            private boolean delegates;
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                if (opcode == Opcodes.NEW) pendingAllocations++;
+                super.visitTypeInsn(opcode, type);
+            }
+
+            @Override
+            public void visitMethodInsn(
+                    int opcode, String owner, String methodName, String methodDescriptor, boolean isInterface) {
+                if (opcode == Opcodes.INVOKESPECIAL && "<init>".equals(methodName)) {
+                    if (pendingAllocations > 0) pendingAllocations--;
+                    else delegates = owner.equals(className);
+                }
+                super.visitMethodInsn(opcode, owner, methodName, methodDescriptor, isInterface);
+            }
+
+            @Override
+            public void visitInsn(int opcode) {
+                if (opcode == Opcodes.RETURN && !delegates) onConstructorExit(mv);
+                super.visitInsn(opcode);
+            }
+        };
+    }
+
+    /**
+     * Returns the internal name of the visited class
+     *
+     * @return the class name
+     */
+    protected String getClassName() {
+        return className;
+    }
+
+    /**
+     * Injects code before every return instruction of the constructors calling a superclass constructor
+     *
+     * @param mv the visitor for the constructor
+     */
+    protected abstract void onConstructorExit(MethodVisitor mv);
+}
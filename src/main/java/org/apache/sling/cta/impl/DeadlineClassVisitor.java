@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import org.apache.sling.cta.runtime.Deadlines;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Marks the start and end of an HTTP call in a method of a class, see {@link Deadlines}
+ *
+ * <p>The call ends when the method returns or throws any exception.</p>
+ */
+class DeadlineClassVisitor extends MethodTransformingClassVisitor {
+
+    private static final String DEADLINES_CLASS_NAME = Type.getInternalName(Deadlines.class);
+    private static final String THROWABLE_CLASS_NAME = Type.getInternalName(Throwable.class);
+
+    /**
+     * Creates a new instance
+     *
+     * @param next the visitor to delegate to
+     * @param className the internal name of the class declaring the method
+     * @param methodName the name of the method
+     * @param methodDescriptor the descriptor of the method
+     */
+    DeadlineClassVisitor(ClassVisitor next, String className, String methodName, String methodDescriptor) {
+        super(next, className, methodName, methodDescriptor);
+    }
+
+    @Override
+    protected void onMethodEnter(MethodVisitor mv) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "begin", "()V", false);
+    }
+
+    @Override
+    protected void onMethodExit(MethodVisitor mv) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "end", "()V", false);
+    }
+
+    @Override
+    protected String[] getHandledExceptionTypes() {
+        return new String[] {THROWABLE_CLASS_NAME};
+    }
+
+    @Override
+    protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "end", "()V", false);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single entry point for all the timeout transformers
+ *
+ * <p>The JVM invokes every registered {@link ClassFileTransformer} for every class it loads, and only a
+ * handful of classes are of interest to the agent. This transformer is registered instead of the individual
+ * transformers and keeps an immutable index from the internal class name to the transformer that handles it.</p>
+ *
+ * <p>Most class names are rejected by a cheap prefix check, derived from the handled class names, before
+ * looking up the index.</p>
+ */
+class DispatchingTransformer implements ClassFileTransformer {
+
+    private final AgentInfo agentInfo;
+    private final Map<String, MBeanAwareTimeoutTransformer> transformersByClassName;
+    private final String[] prefixes;
+    private final TransformationEngine engine;
+    private final Instrumentation inst;
+
+    /**
+     * Creates a new instance
+     *
+     * @param agentInfo the agent info, recording the inspected classes
+     * @param transformers the transformers to dispatch to
+     * @param engine the transformation engine
+     * @param inst the instrumentation instance, used for granting transformed classes access to the runtime classes,
+     *     may be <code>null</code>
+     */
+    DispatchingTransformer(
+            AgentInfo agentInfo,
+            List<MBeanAwareTimeoutTransformer> transformers,
+            TransformationEngine engine,
+            Instrumentation inst) {
+
+        this.agentInfo = agentInfo;
+        this.engine = engine;
+        this.inst = inst;
+
+        Map<String, MBeanAwareTimeoutTransformer> index = new HashMap<>();
+        Set<String> candidatePrefixes = new LinkedHashSet<>();
+
+        for (MBeanAwareTimeoutTransformer transformer : transformers) {
+            for (String className : transformer.getClassesToTransform()) {
+                MBeanAwareTimeoutTransformer previous = index.put(className, transformer);
+                if (previous != null)
+                    throw new IllegalArgumentException("Class " + className + " is handled by both "
+                            + previous.getClass().getName() + " and "
+                            + transformer.getClass().getName());
+                candidatePrefixes.add(prefixOf(className));
+            }
+        }
+
+        this.transformersByClassName = Collections.unmodifiableMap(index);
+        this.prefixes = candidatePrefixes.toArray(new String[0]);
+
+        Log.get()
+                .log(
+                        "%s dispatching %d classes using %s, candidate prefixes are %s",
+                        getClass().getSimpleName(), transformersByClassName.size(), engine, candidatePrefixes);
+    }
+
+    /**
+     * Returns the prefix used for rejecting class names cheaply, i.e. the first two package segments
+     *
+     * @param className the internal class name, e.g. <code>sun/net/www/protocol/http/HttpURLConnection</code>
+     * @return the prefix, e.g. <code>sun/net/</code>
+     */
+    static String prefixOf(String className) {
+        int first = className.indexOf('/');
+        if (first == -1) return className;
+        int second = className.indexOf('/', first + 1);
+        return className.substring(0, (second == -1 ? first : second) + 1);
+    }
+
+    /**
+     * Checks whether a class is handled by one of the transformers
+     *
+     * @param className the internal class name
+     * @return <code>true</code> if the class is handled
+     */
+    boolean handles(String className) {
+        return transformersByClassName.containsKey(className);
+    }
+
+    @Override
+    public byte[] transform(
+            ClassLoader loader,
+            String className,
+            Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain,
+            byte[] classfileBuffer) {
+        return transform(null, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    }
+
+    @Override
+    public byte[] transform(
+            Module module,
+            ClassLoader loader,
+            String className,
+            Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain,
+            byte[] classfileBuffer) {
+
+        agentInfo.registerInspectedClass();
+
+        // hidden classes and lambda proxies have no name
+        if (className == null || !hasCandidatePrefix(className)) return null;
+
+        MBeanAwareTimeoutTransformer transformer = transformersByClassName.get(className);
+        if (transformer == null) return null;
+
+        TimeoutSource timeouts = TimeoutSource.CONSTANT;
+        if (RuntimeClasses.isAccessibleFrom(module, loader, inst)) timeouts = TimeoutSource.RUNTIME;
+        else
+            Log.get()
+                    .log(
+                            "Runtime classes are not accessible from %s, timeouts for %s will not be adjustable",
+                            loader, className);
+
+        return transformer.transformClass(loader, className, classfileBuffer, engine, timeouts);
+    }
+
+    private boolean hasCandidatePrefix(String className) {
+        for (String prefix : prefixes) {
+            if (className.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+}
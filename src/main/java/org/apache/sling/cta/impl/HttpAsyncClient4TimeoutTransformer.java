@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import javassist.bytecode.Descriptor;
+
+/**
+ * Sets timeouts for HTTP calls done using <em>Apache HttpAsyncClient 4.x</em>, as used by e.g. the Elasticsearch
+ * <code>RestClient</code>
+ *
+ * <p>It inserts two calls to <code>org.apache.http.impl.nio.reactor.IOReactorConfig$Builder</code> that set default
+ * values for <code>connectTimeout</code> and <code>soTimeout</code>, the defaults of the I/O reactor sessions. The
+ * timeouts of each request come from the <code>RequestConfig</code>, which is shared with the classic client, see
+ * {@link HttpClient4TimeoutTransformer}.</p>
+ *
+ * <p>The I/O reactor uses socket channels, so the host policies do not apply.</p>
+ */
+public class HttpAsyncClient4TimeoutTransformer extends UpdateFieldsInConstructorTimeoutTransformer {
+
+    private static final String IO_REACTOR_CONFIG_BUILDER_CLASS_NAME =
+            Descriptor.toJvmName("org.apache.http.impl.nio.reactor.IOReactorConfig$Builder");
+
+    public HttpAsyncClient4TimeoutTransformer(AgentInfo agentInfoMBean) {
+        super(IO_REACTOR_CONFIG_BUILDER_CLASS_NAME, "connectTimeout", "soTimeout", agentInfoMBean);
+    }
+}
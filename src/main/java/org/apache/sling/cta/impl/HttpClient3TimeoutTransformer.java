@@ -23,6 +23,11 @@ import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.bytecode.Descriptor;
 
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
 /**
  * Sets timeouts for HTTP calls done using <em>Apache Commons HttpClient 3.x</em>
  *
@@ -34,31 +39,55 @@ public class HttpClient3TimeoutTransformer extends MBeanAwareTimeoutTransformer
     private static final String DEFAULT_HTTP_PARAMS_FACTORY_CLASS_NAME =
             Descriptor.toJvmName("org.apache.commons.httpclient.params.DefaultHttpParamsFactory");
 
-    private final long connectTimeoutMillis;
-    private final long readTimeoutMillis;
+    private static final String HTTP_PARAMS_CLASS_NAME =
+            Descriptor.toJvmName("org.apache.commons.httpclient.params.HttpParams");
 
-    public HttpClient3TimeoutTransformer(long connectTimeoutMillis, long readTimeoutMillis, AgentInfo agentInfoMBean) {
+    public HttpClient3TimeoutTransformer(AgentInfo agentInfoMBean) {
         super(agentInfoMBean, Collections.singleton(DEFAULT_HTTP_PARAMS_FACTORY_CLASS_NAME));
-        this.connectTimeoutMillis = connectTimeoutMillis;
-        this.readTimeoutMillis = readTimeoutMillis;
     }
 
     @Override
-    protected byte[] doTransformClass(CtClass cc) throws Exception {
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
 
         CtMethod getSoTimeout = cc.getDeclaredMethod("createParams");
         // javassist seems unable to resolve the constant values, so just inline them
         // also, unable to resolve calls to setParameter with int values (no boxing?)
         // HttpConnectionParams.CONNECTION_TIMEOUT
-        getSoTimeout.insertAfter(
-                "$_.setParameter(\"http.connection.timeout\", Integer.valueOf(" + connectTimeoutMillis + "));");
+        getSoTimeout.insertAfter("$_.setParameter(\"http.connection.timeout\", Integer.valueOf("
+                + timeouts.toSource(Timeout.CONNECT, int.class) + "));");
         // HttpMethodParams.SO_TIMEOUT
-        getSoTimeout.insertAfter(
-                "$_.setParameter(\"http.socket.timeout\", Integer.valueOf(" + readTimeoutMillis + "));");
+        getSoTimeout.insertAfter("$_.setParameter(\"http.socket.timeout\", Integer.valueOf("
+                + timeouts.toSource(Timeout.READ, int.class) + "));");
 
         byte[] classfileBuffer = cc.toBytecode();
         cc.detach();
 
         return classfileBuffer;
     }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "createParams", "()L" + HTTP_PARAMS_CLASS_NAME + ";") {
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                setParameter(mv, "http.connection.timeout", Timeout.CONNECT);
+                setParameter(mv, "http.socket.timeout", Timeout.READ);
+            }
+
+            // $_.setParameter(name, Integer.valueOf(timeout));
+            private void setParameter(MethodVisitor mv, String name, Timeout timeout) {
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitLdcInsn(name);
+                timeouts.load(mv, timeout, int.class);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKEINTERFACE,
+                        HTTP_PARAMS_CLASS_NAME,
+                        "setParameter",
+                        "(Ljava/lang/String;Ljava/lang/Object;)V",
+                        true);
+            }
+        };
+    }
 }
@@ -24,20 +24,15 @@ import javassist.bytecode.Descriptor;
  * Sets timeouts for HTTP calls done using <em>Apache HttpComponents Client 4.x</em>
  *
  * <p>It inserts two calls to <code>org.apache.http.client.config.RequestConfig$Builder</code> that set default
- * values for <code>connectTimeout</code> and <code>socketTimeout</code>.</p>
+ * values for <code>connectTimeout</code> and <code>socketTimeout</code>. The <code>RequestConfig</code> is also used
+ * by <em>Apache HttpAsyncClient 4.x</em>, see {@link HttpAsyncClient4TimeoutTransformer}.</p>
  */
 public class HttpClient4TimeoutTransformer extends UpdateFieldsInConstructorTimeoutTransformer {
 
     private static final String REQUEST_CONFIG_BUILDER_CLASS_NAME =
             Descriptor.toJvmName("org.apache.http.client.config.RequestConfig$Builder");
 
-    public HttpClient4TimeoutTransformer(long connectTimeoutMillis, long readTimeoutMillis, AgentInfo agentInfoMBean) {
-        super(
-                REQUEST_CONFIG_BUILDER_CLASS_NAME,
-                "connectTimeout",
-                "socketTimeout",
-                connectTimeoutMillis,
-                readTimeoutMillis,
-                agentInfoMBean);
+    public HttpClient4TimeoutTransformer(AgentInfo agentInfoMBean) {
+        super(REQUEST_CONFIG_BUILDER_CLASS_NAME, "connectTimeout", "socketTimeout", agentInfoMBean);
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.bytecode.Descriptor;
+
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Sets timeouts for HTTP calls done using <em>Apache HttpComponents Client 5.x</em>, both the classic and the async
+ * client
+ *
+ * <p>It sets default values in the constructors of the configuration builders, so that timeouts set by the
+ * application take precedence:</p>
+ *
+ * <ul>
+ *   <li><code>org.apache.hc.client5.http.config.ConnectionConfig$Builder</code> - <code>connectTimeout</code> and
+ *   <code>socketTimeout</code>, applied to the connections of both clients since HttpClient 5.2</li>
+ *   <li><code>org.apache.hc.core5.http.io.SocketConfig$Builder</code> - <code>soTimeout</code>, applied to the
+ *   sockets of the classic client while connecting</li>
+ *   <li><code>org.apache.hc.core5.reactor.IOReactorConfig$Builder</code> - <code>soTimeout</code>, applied to the
+ *   connections of the async client before HttpClient 5.2</li>
+ *   <li><code>org.apache.hc.client5.http.config.RequestConfig$Builder</code> - <code>connectTimeout</code>, only
+ *   when the constructor sets a default for it, as before HttpClient 5.2. Later versions leave it unset so that the
+ *   connect timeout of the <code>ConnectionConfig</code> applies, which a default would override.</li>
+ * </ul>
+ *
+ * <p>The <code>responseTimeout</code> of the <code>RequestConfig</code> is left unset for the same reason, the
+ * socket timeout applies instead.</p>
+ */
+public class HttpClient5TimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String TIMEOUT_CLASS_NAME = "org.apache.hc.core5.util.Timeout";
+    private static final String TIMEOUT_DESCRIPTOR = "L" + Descriptor.toJvmName(TIMEOUT_CLASS_NAME) + ";";
+
+    private static final String REQUEST_CONFIG_BUILDER_CLASS_NAME =
+            Descriptor.toJvmName("org.apache.hc.client5.http.config.RequestConfig$Builder");
+
+    // builder class name -> timeout for each field
+    private static final Map<String, Map<String, Timeout>> FIELDS = new HashMap<>();
+
+    static {
+        FIELDS.put(REQUEST_CONFIG_BUILDER_CLASS_NAME, fields("connectTimeout", Timeout.CONNECT));
+        FIELDS.put(
+                Descriptor.toJvmName("org.apache.hc.client5.http.config.ConnectionConfig$Builder"),
+                fields("connectTimeout", Timeout.CONNECT, "socketTimeout", Timeout.READ));
+        FIELDS.put(
+                Descriptor.toJvmName("org.apache.hc.core5.http.io.SocketConfig$Builder"),
+                fields("soTimeout", Timeout.READ));
+        FIELDS.put(
+                Descriptor.toJvmName("org.apache.hc.core5.reactor.IOReactorConfig$Builder"),
+                fields("soTimeout", Timeout.READ));
+    }
+
+    private static Map<String, Timeout> fields(Object... fieldsAndTimeouts) {
+        Map<String, Timeout> fields = new HashMap<>();
+        for (int i = 0; i < fieldsAndTimeouts.length; i += 2)
+            fields.put((String) fieldsAndTimeouts[i], (Timeout) fieldsAndTimeouts[i + 1]);
+        return fields;
+    }
+
+    public HttpClient5TimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, FIELDS.keySet());
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        String className = Descriptor.toJvmName(cc);
+        CtConstructor noArgCtor = cc.getConstructor(Descriptor.ofConstructor(new CtClass[0]));
+        for (Map.Entry<String, Timeout> field : FIELDS.get(className).entrySet()) {
+            // fail early if the field is missing, the compiler error is less helpful
+            cc.getDeclaredField(field.getKey());
+            String assignment = "this." + field.getKey() + " = " + TIMEOUT_CLASS_NAME + ".ofMilliseconds("
+                    + timeouts.toSource(field.getValue(), long.class) + ");";
+            if (className.equals(REQUEST_CONFIG_BUILDER_CLASS_NAME))
+                assignment = "if (this." + field.getKey() + " != null) " + assignment;
+            noArgCtor.insertAfter(assignment);
+        }
+
+        byte[] classfileBuffer = cc.toBytecode();
+        cc.detach();
+
+        return classfileBuffer;
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "<init>", "()V") {
+            private final Map<String, String> fieldDescriptors = new HashMap<>();
+            // fields assigned by the constructor, recorded before the injected code is emitted at its end
+            private final Set<String> assigned = new HashSet<>();
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                // fields are visited before methods
+                fieldDescriptors.put(name, descriptor);
+                return super.visitField(access, name, descriptor, signature, value);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(
+                    int access, String name, String descriptor, String signature, String[] exceptions) {
+                MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+                if (!"<init>".equals(name) || !"()V".equals(descriptor)) return mv;
+
+                return new MethodVisitor(ASM_API, mv) {
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String fieldName, String fieldDescriptor) {
+                        if (opcode == Opcodes.PUTFIELD && owner.equals(getClassName())) assigned.add(fieldName);
+                        super.visitFieldInsn(opcode, owner, fieldName, fieldDescriptor);
+                    }
+                };
+            }
+
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                for (Map.Entry<String, Timeout> field :
+                        FIELDS.get(getClassName()).entrySet()) {
+                    if (!TIMEOUT_DESCRIPTOR.equals(fieldDescriptors.get(field.getKey())))
+                        throw new IllegalStateException("Field " + field.getKey() + " of type " + TIMEOUT_CLASS_NAME
+                                + " not found in class " + getClassName());
+                    if (getClassName().equals(REQUEST_CONFIG_BUILDER_CLASS_NAME) && !assigned.contains(field.getKey()))
+                        continue;
+
+                    // this.field = Timeout.ofMilliseconds(timeout);
+                    mv.visitVarInsn(Opcodes.ALOAD, 0);
+                    timeouts.load(mv, field.getValue(), long.class);
+                    mv.visitMethodInsn(
+                            Opcodes.INVOKESTATIC,
+                            Descriptor.toJvmName(TIMEOUT_CLASS_NAME),
+                            "ofMilliseconds",
+                            "(J)" + TIMEOUT_DESCRIPTOR,
+                            false);
+                    mv.visitFieldInsn(Opcodes.PUTFIELD, getClassName(), field.getKey(), TIMEOUT_DESCRIPTOR);
+                }
+            }
+        };
+    }
+}
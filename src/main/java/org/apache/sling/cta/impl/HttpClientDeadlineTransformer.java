@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.bytecode.Descriptor;
+
+import org.apache.sling.cta.runtime.Deadlines;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * Marks the start and end of the calls done using <em>Apache Commons HttpClient 3.x</em>, <em>Apache
+ * HttpClient 4.x</em> and the classic <em>Apache HttpClient 5.x</em>, see {@link Deadlines}
+ *
+ * <p>It hooks into <code>org.apache.commons.httpclient.HttpClient.executeMethod(HostConfiguration, HttpMethod,
+ * HttpState)</code>, <code>org.apache.http.impl.client.InternalHttpClient.doExecute(HttpHost, HttpRequest,
+ * HttpContext)</code> and <code>org.apache.hc.client5.http.impl.classic.InternalHttpClient.doExecute(HttpHost,
+ * ClassicHttpRequest, HttpContext)</code>, which all other execute methods delegate to, and which follow redirects
+ * and retry failed requests.</p>
+ */
+class HttpClientDeadlineTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String HTTP_CLIENT_3_CLASS_NAME =
+            Descriptor.toJvmName("org.apache.commons.httpclient.HttpClient");
+    private static final String HTTP_CLIENT_3_METHOD_NAME = "executeMethod";
+    private static final String HTTP_CLIENT_3_METHOD_DESCRIPTOR = "(Lorg/apache/commons/httpclient/HostConfiguration;"
+            + "Lorg/apache/commons/httpclient/HttpMethod;Lorg/apache/commons/httpclient/HttpState;)I";
+
+    private static final String HTTP_CLIENT_4_CLASS_NAME =
+            Descriptor.toJvmName("org.apache.http.impl.client.InternalHttpClient");
+    private static final String HTTP_CLIENT_4_METHOD_NAME = "doExecute";
+    private static final String HTTP_CLIENT_4_METHOD_DESCRIPTOR =
+            "(Lorg/apache/http/HttpHost;Lorg/apache/http/HttpRequest;Lorg/apache/http/protocol/HttpContext;)"
+                    + "Lorg/apache/http/client/methods/CloseableHttpResponse;";
+
+    private static final String HTTP_CLIENT_5_CLASS_NAME =
+            Descriptor.toJvmName("org.apache.hc.client5.http.impl.classic.InternalHttpClient");
+    private static final String HTTP_CLIENT_5_METHOD_NAME = "doExecute";
+    private static final String HTTP_CLIENT_5_METHOD_DESCRIPTOR = "(Lorg/apache/hc/core5/http/HttpHost;"
+            + "Lorg/apache/hc/core5/http/ClassicHttpRequest;Lorg/apache/hc/core5/http/protocol/HttpContext;)"
+            + "Lorg/apache/hc/client5/http/impl/classic/CloseableHttpResponse;";
+
+    public HttpClientDeadlineTransformer(AgentInfo agentInfo) {
+        super(
+                agentInfo,
+                new HashSet<>(
+                        Arrays.asList(HTTP_CLIENT_3_CLASS_NAME, HTTP_CLIENT_4_CLASS_NAME, HTTP_CLIENT_5_CLASS_NAME)));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        String className = Descriptor.toJvmName(cc);
+        CtMethod execute;
+        if (className.equals(HTTP_CLIENT_3_CLASS_NAME))
+            execute = cc.getMethod(HTTP_CLIENT_3_METHOD_NAME, HTTP_CLIENT_3_METHOD_DESCRIPTOR);
+        else if (className.equals(HTTP_CLIENT_4_CLASS_NAME))
+            execute = cc.getMethod(HTTP_CLIENT_4_METHOD_NAME, HTTP_CLIENT_4_METHOD_DESCRIPTOR);
+        else execute = cc.getMethod(HTTP_CLIENT_5_METHOD_NAME, HTTP_CLIENT_5_METHOD_DESCRIPTOR);
+        execute.insertBefore(Deadlines.class.getName() + ".begin();");
+        execute.insertAfter(Deadlines.class.getName() + ".end();", true);
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        ClassVisitor httpClient5 = new DeadlineClassVisitor(
+                next, HTTP_CLIENT_5_CLASS_NAME, HTTP_CLIENT_5_METHOD_NAME, HTTP_CLIENT_5_METHOD_DESCRIPTOR);
+        ClassVisitor httpClient4 = new DeadlineClassVisitor(
+                httpClient5, HTTP_CLIENT_4_CLASS_NAME, HTTP_CLIENT_4_METHOD_NAME, HTTP_CLIENT_4_METHOD_DESCRIPTOR);
+        return new DeadlineClassVisitor(
+                httpClient4, HTTP_CLIENT_3_CLASS_NAME, HTTP_CLIENT_3_METHOD_NAME, HTTP_CLIENT_3_METHOD_DESCRIPTOR);
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.cta.impl;
 
+import java.net.URL;
 import java.net.URLConnection;
 import java.util.HashSet;
 import java.util.Set;
@@ -25,11 +26,27 @@ import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.bytecode.Descriptor;
 
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.apache.sling.cta.runtime.Deadlines;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
 /**
- * Sets timeouts for HTTP calls done using <code>java.net.URL</code>/<code>java.net.URLConnection</code>.
+ * Sets timeouts for HTTP and FTP calls done using <code>java.net.URL</code>/<code>java.net.URLConnection</code>.
  *
  * <p>It transforms calls to <code>connect</code> methods of internal URL connection classes to set the
- * connect and read timeout in case they have the default value of <code>0</code>.</p>
+ * connect and read timeout in case they have the default value of <code>0</code>. The timeouts are selected based
+ * on the host of the URL.</p>
+ *
+ * <p><code>jar:</code> URLs for remote jar files are covered as well, as the jar file is downloaded using a
+ * connection for the nested URL.</p>
+ *
+ * <p>When the timeouts are read at runtime, <code>getInputStream()</code> is transformed as well to mark the start and
+ * end of a call with a deadline, see {@link Deadlines}. It covers sending the request, reading the response headers
+ * and following redirects, also for HTTPS connections, which delegate to the HTTP implementation.</p>
  *
  * @see URLConnection#getConnectTimeout()
  * @see URLConnection#getReadTimeout()
@@ -39,29 +56,69 @@ class JavaNetTimeoutTransformer extends MBeanAwareTimeoutTransformer {
 
     static final Set<String> CLASSES_TO_TRANSFORM = new HashSet<>();
 
+    private static final String HTTP_URL_CONNECTION_CLASS_NAME =
+            Descriptor.toJvmName("sun.net.www.protocol.http.HttpURLConnection");
+
     static {
-        CLASSES_TO_TRANSFORM.add(Descriptor.toJvmName("sun.net.www.protocol.http.HttpURLConnection"));
+        CLASSES_TO_TRANSFORM.add(HTTP_URL_CONNECTION_CLASS_NAME);
         CLASSES_TO_TRANSFORM.add(Descriptor.toJvmName("sun.net.www.protocol.https.AbstractDelegateHttpsURLConnection"));
+        CLASSES_TO_TRANSFORM.add(Descriptor.toJvmName("sun.net.www.protocol.ftp.FtpURLConnection"));
     }
 
-    private final long readTimeoutMillis;
-    private final long connectTimeoutMillis;
+    private static final String URL_CONNECTION_CLASS_NAME = Type.getInternalName(URLConnection.class);
 
-    public JavaNetTimeoutTransformer(long connectTimeout, long readTimeout, AgentInfo agentInfo) {
+    public JavaNetTimeoutTransformer(AgentInfo agentInfo) {
 
         super(agentInfo, CLASSES_TO_TRANSFORM);
-
-        this.connectTimeoutMillis = connectTimeout;
-        this.readTimeoutMillis = readTimeout;
     }
 
-    protected byte[] doTransformClass(CtClass cc) throws Exception {
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
         CtMethod connectMethod = cc.getDeclaredMethod("connect");
-        connectMethod.insertBefore(
-                "if ( getConnectTimeout() == 0 ) { setConnectTimeout(" + connectTimeoutMillis + "); }");
-        connectMethod.insertBefore("if ( getReadTimeout() == 0 ) { setReadTimeout(" + readTimeoutMillis + "); }");
-        byte[] classfileBuffer = connectMethod.getDeclaringClass().toBytecode();
-        connectMethod.getDeclaringClass().detach();
+        connectMethod.insertBefore("if ( getConnectTimeout() == 0 ) { setConnectTimeout("
+                + timeouts.toSource(Timeout.CONNECT, int.class, "getURL()") + "); }");
+        connectMethod.insertBefore("if ( getReadTimeout() == 0 ) { setReadTimeout("
+                + timeouts.toSource(Timeout.READ, int.class, "getURL()") + "); }");
+
+        // the deadlines cannot be read by classes that only get constant timeouts
+        if (timeouts == TimeoutSource.RUNTIME
+                && cc.getName().equals(Descriptor.toJavaName(HTTP_URL_CONNECTION_CLASS_NAME))) {
+            CtMethod getInputStream = cc.getDeclaredMethod("getInputStream", new CtClass[0]);
+            getInputStream.insertBefore(Deadlines.class.getName() + ".begin();");
+            getInputStream.insertAfter(Deadlines.class.getName() + ".end();", true);
+        }
+
+        byte[] classfileBuffer = cc.toBytecode();
+        cc.detach();
         return classfileBuffer;
     }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        if (timeouts == TimeoutSource.RUNTIME)
+            next = new DeadlineClassVisitor(
+                    next, HTTP_URL_CONNECTION_CLASS_NAME, "getInputStream", "()Ljava/io/InputStream;");
+
+        return new MethodTransformingClassVisitor(next, "connect", "()V") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                setIfZero(mv, "getConnectTimeout", "setConnectTimeout", Timeout.CONNECT);
+                setIfZero(mv, "getReadTimeout", "setReadTimeout", Timeout.READ);
+            }
+
+            // if ( getter() == 0 ) { setter(timeoutFor(getURL())); }
+            private void setIfZero(MethodVisitor mv, String getter, String setter, Timeout timeout) {
+                Label alreadySet = new Label();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, URL_CONNECTION_CLASS_NAME, getter, "()I", false);
+                mv.visitJumpInsn(Opcodes.IFNE, alreadySet);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKEVIRTUAL, URL_CONNECTION_CLASS_NAME, "getURL", "()Ljava/net/URL;", false);
+                timeouts.loadForTarget(mv, timeout, int.class, URL.class);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, URL_CONNECTION_CLASS_NAME, setter, "(I)V", false);
+                visitLabelAtMethodEntryState(mv, alreadySet);
+            }
+        };
+    }
 }
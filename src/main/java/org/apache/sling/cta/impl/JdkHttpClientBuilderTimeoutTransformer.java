@@ -18,12 +18,20 @@
  */
 package org.apache.sling.cta.impl;
 
+import java.time.Duration;
 import java.util.HashSet;
 import java.util.Set;
 import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.bytecode.Descriptor;
 
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
 /**
  * Sets timeouts for HTTP calls done using <code>java.net.http</code>/<code>java.net.http.HttpClient</code>.
  */
@@ -35,22 +43,48 @@ class JdkHttpClientBuilderTimeoutTransformer extends MBeanAwareTimeoutTransforme
         CLASSES_TO_TRANSFORM.add(Descriptor.toJvmName("jdk.internal.net.http.HttpClientBuilderImpl"));
     }
 
-    private final long connectTimeoutMillis;
+    private static final String DURATION_CLASS_NAME = Type.getInternalName(Duration.class);
+    private static final String DURATION_DESCRIPTOR = Type.getDescriptor(Duration.class);
 
-    public JdkHttpClientBuilderTimeoutTransformer(long connectTimeout, AgentInfo agentInfo) {
+    public JdkHttpClientBuilderTimeoutTransformer(AgentInfo agentInfo) {
 
         super(agentInfo, CLASSES_TO_TRANSFORM);
-
-        this.connectTimeoutMillis = connectTimeout;
     }
 
-    protected byte[] doTransformClass(CtClass cc) throws Exception {
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
 
         CtMethod buildMethod = cc.getDeclaredMethod("build");
         buildMethod.insertBefore("if ( this.connectTimeout == null ) { connectTimeout(java.time.Duration.ofMillis("
-                + connectTimeoutMillis + "L)); }");
+                + timeouts.toSource(Timeout.CONNECT, long.class) + ")); }");
         byte[] classfileBuffer = buildMethod.getDeclaringClass().toBytecode();
         buildMethod.getDeclaringClass().detach();
         return classfileBuffer;
     }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "build", "()Ljava/net/http/HttpClient;") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // if ( this.connectTimeout == null ) {
+                // connectTimeout(java.time.Duration.ofMillis(connectTimeout)); }
+                Label alreadySet = new Label();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "connectTimeout", DURATION_DESCRIPTOR);
+                mv.visitJumpInsn(Opcodes.IFNONNULL, alreadySet);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                timeouts.load(mv, Timeout.CONNECT, long.class);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, DURATION_CLASS_NAME, "ofMillis", "(J)" + DURATION_DESCRIPTOR, false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKEVIRTUAL,
+                        getClassName(),
+                        "connectTimeout",
+                        "(" + DURATION_DESCRIPTOR + ")Ljava/net/http/HttpClient$Builder;",
+                        false);
+                mv.visitInsn(Opcodes.POP);
+                visitLabelAtMethodEntryState(mv, alreadySet);
+            }
+        };
+    }
 }
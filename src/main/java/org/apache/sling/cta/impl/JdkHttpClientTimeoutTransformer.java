@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.URI;
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.bytecode.Descriptor;
+
+import org.apache.sling.cta.runtime.TimeoutCounters;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Counts the timeouts of synchronous HTTP calls done using <code>java.net.http.HttpClient</code>
+ *
+ * <p>Hooks into <code>HttpClient.send</code>, counting an <code>HttpConnectTimeoutException</code> as a connect
+ * timeout and any other <code>HttpTimeoutException</code> as a read timeout, see
+ * {@link TimeoutCounters#timeout(java.io.IOException, String, String, URI)}.</p>
+ */
+class JdkHttpClientTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    static final String CLIENT_TYPE = "JdkHttpClient";
+
+    private static final String HTTP_CLIENT_IMPL_CLASS_NAME =
+            Descriptor.toJvmName("jdk.internal.net.http.HttpClientImpl");
+    private static final String CONNECT_TIMEOUT_EXCEPTION_CLASS_NAME = "java/net/http/HttpConnectTimeoutException";
+    private static final String TIMEOUT_EXCEPTION_CLASS_NAME = "java/net/http/HttpTimeoutException";
+    private static final String SEND_DESCRIPTOR =
+            "(Ljava/net/http/HttpRequest;Ljava/net/http/HttpResponse$BodyHandler;)Ljava/net/http/HttpResponse;";
+    private static final String URI_DESCRIPTOR = Type.getDescriptor(URI.class);
+    private static final String TIMEOUT_COUNTERS_CLASS_NAME = Type.getInternalName(TimeoutCounters.class);
+
+    public JdkHttpClientTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(HTTP_CLIENT_IMPL_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        // a single handler, as a rethrow from a more specific handler would be caught by the next one
+        CtMethod send = cc.getMethod("send", SEND_DESCRIPTOR);
+        send.addCatch(
+                "{ " + TimeoutCounters.class.getName() + ".timeout($e, \"" + CLIENT_TYPE + "\", \""
+                        + Descriptor.toJavaName(CONNECT_TIMEOUT_EXCEPTION_CLASS_NAME) + "\", $1.uri()); throw $e; }",
+                cc.getClassPool().get(Descriptor.toJavaName(TIMEOUT_EXCEPTION_CLASS_NAME)));
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "send", SEND_DESCRIPTOR) {
+            @Override
+            protected String[] getHandledExceptionTypes() {
+                return new String[] {TIMEOUT_EXCEPTION_CLASS_NAME};
+            }
+
+            @Override
+            protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+                // TimeoutCounters.timeout(e, "JdkHttpClient", "java.net.http.HttpConnectTimeoutException",
+                // request.uri());
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitLdcInsn(CLIENT_TYPE);
+                mv.visitLdcInsn(Descriptor.toJavaName(CONNECT_TIMEOUT_EXCEPTION_CLASS_NAME));
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKEVIRTUAL, "java/net/http/HttpRequest", "uri", "()" + URI_DESCRIPTOR, false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        TIMEOUT_COUNTERS_CLASS_NAME,
+                        "timeout",
+                        "(Ljava/io/IOException;Ljava/lang/String;Ljava/lang/String;" + URI_DESCRIPTOR + ")V",
+                        false);
+            }
+        };
+    }
+}
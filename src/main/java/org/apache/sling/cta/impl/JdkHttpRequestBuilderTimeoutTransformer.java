@@ -18,14 +18,25 @@
  */
 package org.apache.sling.cta.impl;
 
+import java.net.URI;
+import java.time.Duration;
 import java.util.HashSet;
 import java.util.Set;
 import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.bytecode.Descriptor;
 
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
 /**
  * Sets timeouts for HTTP calls done using <code>java.net.http</code>/<code>java.net.http.HttpClient</code>.
+ *
+ * <p>The request timeout is selected based on the host of the request URI.</p>
  */
 class JdkHttpRequestBuilderTimeoutTransformer extends MBeanAwareTimeoutTransformer {
 
@@ -35,22 +46,50 @@ class JdkHttpRequestBuilderTimeoutTransformer extends MBeanAwareTimeoutTransform
         CLASSES_TO_TRANSFORM.add(Descriptor.toJvmName("jdk.internal.net.http.HttpRequestBuilderImpl"));
     }
 
-    private final long readTimeoutMillis;
+    private static final String DURATION_CLASS_NAME = Type.getInternalName(Duration.class);
+    private static final String DURATION_DESCRIPTOR = Type.getDescriptor(Duration.class);
+    private static final String URI_DESCRIPTOR = Type.getDescriptor(URI.class);
 
-    public JdkHttpRequestBuilderTimeoutTransformer(long readTimeout, AgentInfo agentInfo) {
+    public JdkHttpRequestBuilderTimeoutTransformer(AgentInfo agentInfo) {
 
         super(agentInfo, CLASSES_TO_TRANSFORM);
-
-        this.readTimeoutMillis = readTimeout;
     }
 
-    protected byte[] doTransformClass(CtClass cc) throws Exception {
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
 
         CtMethod buildMethod = cc.getDeclaredMethod("build");
-        buildMethod.insertBefore(
-                "if ( this.duration == null ) { timeout(java.time.Duration.ofMillis(" + readTimeoutMillis + "L)); }");
+        buildMethod.insertBefore("if ( this.duration == null ) { timeout(java.time.Duration.ofMillis("
+                + timeouts.toSource(Timeout.READ, long.class, "this.uri") + ")); }");
         byte[] classfileBuffer = buildMethod.getDeclaringClass().toBytecode();
         buildMethod.getDeclaringClass().detach();
         return classfileBuffer;
     }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "build", "()Ljava/net/http/HttpRequest;") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // if ( this.duration == null ) { timeout(java.time.Duration.ofMillis(readTimeoutFor(this.uri))); }
+                Label alreadySet = new Label();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "duration", DURATION_DESCRIPTOR);
+                mv.visitJumpInsn(Opcodes.IFNONNULL, alreadySet);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "uri", URI_DESCRIPTOR);
+                timeouts.loadForTarget(mv, Timeout.READ, long.class, URI.class);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, DURATION_CLASS_NAME, "ofMillis", "(J)" + DURATION_DESCRIPTOR, false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKEVIRTUAL,
+                        getClassName(),
+                        "timeout",
+                        "(" + DURATION_DESCRIPTOR + ")Ljava/net/http/HttpRequest$Builder;",
+                        false);
+                mv.visitInsn(Opcodes.POP);
+                visitLabelAtMethodEntryState(mv, alreadySet);
+            }
+        };
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Objects;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.bytecode.Descriptor;
+
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Sets the timeout of every request sent using <code>java.net.http.HttpClient</code>
+ *
+ * <p>{@link JdkHttpRequestBuilderTimeoutTransformer} only covers requests created by <code>HttpRequest.Builder</code>.
+ * The client copies every request it sends, whatever its implementation, into a
+ * <code>jdk.internal.net.http.HttpRequestImpl</code> before sending it synchronously or asynchronously, so the
+ * constructors of that class set the timeout of the copy if the original request has none. The timeout is selected
+ * based on the host of the request URI.</p>
+ */
+class JdkHttpRequestTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String HTTP_REQUEST_IMPL_CLASS_NAME =
+            Descriptor.toJvmName("jdk.internal.net.http.HttpRequestImpl");
+    private static final String DURATION_CLASS_NAME = Type.getInternalName(Duration.class);
+    private static final String DURATION_DESCRIPTOR = Type.getDescriptor(Duration.class);
+    private static final String URI_DESCRIPTOR = Type.getDescriptor(URI.class);
+    private static final String OBJECTS_CLASS_NAME = Type.getInternalName(Objects.class);
+
+    public JdkHttpRequestTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(HTTP_REQUEST_IMPL_CLASS_NAME));
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        // fail early if the field is missing, the compiler error is less helpful
+        if (!cc.getDeclaredField("timeout").getType().getName().equals(Duration.class.getName()))
+            throw new IllegalStateException("Unsupported type for field timeout in class " + cc.getName());
+        for (CtConstructor constructor : cc.getDeclaredConstructors()) {
+            if (constructor.callsSuper())
+                constructor.insertAfter("if ( this.timeout == null ) { this.timeout = java.time.Duration.ofMillis("
+                        + timeouts.toSource(Timeout.READ, long.class, "this.uri") + "); }");
+        }
+
+        byte[] classfileBuffer = cc.toBytecode();
+        cc.detach();
+
+        return classfileBuffer;
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new ConstructorExitClassVisitor(next) {
+            @Override
+            protected void onConstructorExit(MethodVisitor mv) {
+                // this.timeout = java.util.Objects.requireNonNullElse(this.timeout,
+                // java.time.Duration.ofMillis(readTimeoutFor(this.uri)));
+                // branch free, as the frames at the end of the constructor are not known
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "timeout", DURATION_DESCRIPTOR);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "uri", URI_DESCRIPTOR);
+                timeouts.loadForTarget(mv, Timeout.READ, long.class, URI.class);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, DURATION_CLASS_NAME, "ofMillis", "(J)" + DURATION_DESCRIPTOR, false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        OBJECTS_CLASS_NAME,
+                        "requireNonNullElse",
+                        "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;",
+                        false);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, DURATION_CLASS_NAME);
+                mv.visitFieldInsn(Opcodes.PUTFIELD, getClassName(), "timeout", DURATION_DESCRIPTOR);
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.bytecode.Descriptor;
+
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Sets the opening handshake timeout of WebSockets created using <code>java.net.http.WebSocket.Builder</code>
+ *
+ * <p>The connect timeout of the <code>HttpClient</code> only covers establishing the connection, a server that
+ * accepts it but never answers the upgrade request would keep <code>buildAsync</code> pending forever. The timeout
+ * is selected based on the host of the WebSocket URI.</p>
+ */
+class JdkWebSocketBuilderTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String BUILDER_IMPL_CLASS_NAME =
+            Descriptor.toJvmName("jdk.internal.net.http.websocket.BuilderImpl");
+    private static final String BUILD_ASYNC_DESCRIPTOR =
+            "(Ljava/net/URI;Ljava/net/http/WebSocket$Listener;)Ljava/util/concurrent/CompletableFuture;";
+    private static final String DURATION_CLASS_NAME = Type.getInternalName(Duration.class);
+    private static final String DURATION_DESCRIPTOR = Type.getDescriptor(Duration.class);
+
+    public JdkWebSocketBuilderTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(BUILDER_IMPL_CLASS_NAME));
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        CtMethod buildAsync = cc.getMethod("buildAsync", BUILD_ASYNC_DESCRIPTOR);
+        buildAsync.insertBefore("if ( this.timeout == null ) { connectTimeout(java.time.Duration.ofMillis("
+                + timeouts.toSource(Timeout.CONNECT, long.class, "$1") + ")); }");
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "buildAsync", BUILD_ASYNC_DESCRIPTOR) {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // if ( this.timeout == null ) { connectTimeout(java.time.Duration.ofMillis(connectTimeoutFor(uri))); }
+                Label alreadySet = new Label();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "timeout", DURATION_DESCRIPTOR);
+                mv.visitJumpInsn(Opcodes.IFNONNULL, alreadySet);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                timeouts.loadForTarget(mv, Timeout.CONNECT, long.class, URI.class);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, DURATION_CLASS_NAME, "ofMillis", "(J)" + DURATION_DESCRIPTOR, false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKEVIRTUAL,
+                        getClassName(),
+                        "connectTimeout",
+                        "(" + DURATION_DESCRIPTOR + ")Ljava/net/http/WebSocket$Builder;",
+                        false);
+                mv.visitInsn(Opcodes.POP);
+                visitLabelAtMethodEntryState(mv, alreadySet);
+            }
+        };
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtConstructor;
+
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Sets timeouts for HTTP calls done using the <em>Eclipse Jetty</em> <code>HttpClient</code>
+ *
+ * <p>Jetty defaults to a connect timeout of 15 seconds and no idle timeout. The constructors of
+ * <code>org.eclipse.jetty.client.HttpClient</code> set the connect timeout and the idle timeout, the Jetty
+ * equivalent of the read timeout, to the agent values, so that the setters called by the application afterwards take
+ * precedence. The public setters are used instead of the fields, since newer Jetty versions store the connect timeout
+ * in the <code>ClientConnector</code>.</p>
+ *
+ * <p>Jetty uses socket channels, so the host policies do not apply.</p>
+ */
+class JettyHttpClientTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String HTTP_CLIENT_CLASS_NAME = "org/eclipse/jetty/client/HttpClient";
+
+    public JettyHttpClientTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(HTTP_CLIENT_CLASS_NAME));
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        for (CtConstructor constructor : cc.getDeclaredConstructors()) {
+            if (!constructor.callsSuper()) continue;
+            constructor.insertAfter("setConnectTimeout(" + timeouts.toSource(Timeout.CONNECT, long.class) + ");");
+            constructor.insertAfter("setIdleTimeout(" + timeouts.toSource(Timeout.READ, long.class) + ");");
+        }
+
+        byte[] classfileBuffer = cc.toBytecode();
+        cc.detach();
+
+        return classfileBuffer;
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new ConstructorExitClassVisitor(next) {
+            @Override
+            protected void onConstructorExit(MethodVisitor mv) {
+                // setConnectTimeout(connectTimeout); setIdleTimeout(readTimeout);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                timeouts.load(mv, Timeout.CONNECT, long.class);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, getClassName(), "setConnectTimeout", "(J)V", false);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                timeouts.load(mv, Timeout.READ, long.class);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, getClassName(), "setIdleTimeout", "(J)V", false);
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtConstructor;
+
+import org.apache.sling.cta.runtime.Deadlines;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Sets the total timeout of requests done using the <em>Eclipse Jetty</em> <code>HttpClient</code> to the call
+ * deadline
+ *
+ * <p>Jetty uses socket channels, which the deadlines do not cover, but enforces a total timeout for each request
+ * itself. The constructors of <code>org.eclipse.jetty.client.HttpRequest</code> set it to the current deadline, see
+ * {@link Deadlines#getDeadlineMillis()}, so that a timeout set by the application afterwards takes precedence. Without
+ * a deadline the requests keep having no total timeout. Requests aborted this way fail with a
+ * <code>java.util.concurrent.TimeoutException</code> and are not counted as exceeded deadlines.</p>
+ */
+class JettyHttpRequestTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String HTTP_REQUEST_CLASS_NAME = "org/eclipse/jetty/client/HttpRequest";
+    private static final String DEADLINES_CLASS_NAME = Type.getInternalName(Deadlines.class);
+
+    public JettyHttpRequestTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(HTTP_REQUEST_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        // fail early if the field is missing, the compiler error is less helpful
+        if (cc.getDeclaredField("timeout").getType() != CtClass.longType)
+            throw new IllegalStateException("Unsupported type for field timeout in class " + cc.getName());
+        for (CtConstructor constructor : cc.getDeclaredConstructors()) {
+            if (constructor.callsSuper())
+                constructor.insertAfter("this.timeout = " + Deadlines.class.getName() + ".getDeadlineMillis();");
+        }
+
+        byte[] classfileBuffer = cc.toBytecode();
+        cc.detach();
+
+        return classfileBuffer;
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new ConstructorExitClassVisitor(next) {
+            private boolean timeoutFound;
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                if ("timeout".equals(name) && "J".equals(descriptor)) timeoutFound = true;
+                return super.visitField(access, name, descriptor, signature, value);
+            }
+
+            @Override
+            public void visitEnd() {
+                if (!timeoutFound)
+                    throw new IllegalStateException("Field timeout of type long not found in class " + getClassName());
+                super.visitEnd();
+            }
+
+            @Override
+            protected void onConstructorExit(MethodVisitor mv) {
+                // this.timeout = Deadlines.getDeadlineMillis();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "getDeadlineMillis", "()J", false);
+                mv.visitFieldInsn(Opcodes.PUTFIELD, getClassName(), "timeout", "J");
+            }
+        };
+    }
+}
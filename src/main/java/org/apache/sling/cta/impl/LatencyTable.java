@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.sling.cta.runtime.LatencyHistogram;
+import org.apache.sling.cta.runtime.LatencyRecorder;
+
+/**
+ * Converts the {@link LatencyRecorder} histograms to open data
+ */
+final class LatencyTable {
+
+    static final String CONNECT = "connect";
+    static final String FIRST_BYTE = "firstByte";
+
+    static final TabularType TABULAR_TYPE;
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final String[] ITEM_NAMES = {
+        "host", "latency", "count", "p50Micros", "p90Micros", "p99Micros", "p999Micros", "maxMicros"
+    };
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType(
+                    "Latency",
+                    "The distribution of a latency for a host",
+                    ITEM_NAMES,
+                    new String[] {
+                        "The host, " + LatencyRecorder.OTHER_HOSTS + " for unknown hosts and hosts over the limit",
+                        "The latency, either " + CONNECT + " or " + FIRST_BYTE,
+                        "The number of recorded durations",
+                        "The median duration, in microseconds",
+                        "The 90th percentile, in microseconds",
+                        "The 99th percentile, in microseconds",
+                        "The 99.9th percentile, in microseconds",
+                        "The longest duration, in microseconds"
+                    },
+                    new OpenType<?>[] {
+                        SimpleType.STRING,
+                        SimpleType.STRING,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG
+                    });
+            TABULAR_TYPE = new TabularType(
+                    "Latencies", "The latency distributions for each host", ROW_TYPE, new String[] {"host", "latency"});
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private LatencyTable() {}
+
+    /**
+     * Returns the current latencies
+     *
+     * <p>Latencies without any recorded duration are omitted.</p>
+     *
+     * @return the latencies, of type {@link #TABULAR_TYPE}
+     * @throws OpenDataException in case the latencies cannot be converted
+     */
+    static TabularData toTabularData() throws OpenDataException {
+        TabularData data = new TabularDataSupport(TABULAR_TYPE);
+        for (LatencyRecorder.HostLatencies latencies : LatencyRecorder.getLatencies()) {
+            putIfRecorded(data, latencies.getHost(), CONNECT, latencies.getConnect());
+            putIfRecorded(data, latencies.getHost(), FIRST_BYTE, latencies.getFirstByte());
+        }
+        return data;
+    }
+
+    private static void putIfRecorded(TabularData data, String host, String latency, LatencyHistogram histogram)
+            throws OpenDataException {
+        long count = histogram.getCount();
+        if (count == 0) return;
+
+        long[] values = histogram.getValuesAtPercentiles(PERCENTILES);
+        CompositeData row = new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] {
+            host, latency, count, values[0], values[1], values[2], values[3], histogram.getMaxMicros()
+        });
+        data.put(row);
+    }
+}
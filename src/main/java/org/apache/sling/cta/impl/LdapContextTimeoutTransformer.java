@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.Collections;
+import java.util.Hashtable;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.bytecode.Descriptor;
+
+import org.apache.sling.cta.runtime.LdapContexts;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Sets the connect and read timeouts of LDAP contexts created with the JDK LDAP provider, e.g. through
+ * <code>javax.naming.directory.InitialDirContext</code>
+ *
+ * <p>The constructor of <code>com.sun.jndi.ldap.LdapCtx</code> that connects to a directory server replaces its
+ * environment with the one returned by {@link LdapContexts#withTimeouts(Hashtable, String)}, which adds the
+ * <code>com.sun.jndi.ldap.connect.timeout</code> and <code>com.sun.jndi.ldap.read.timeout</code> properties when
+ * missing. Contexts derived from a connected one, e.g. by a lookup, inherit its environment. The timeouts are selected
+ * based on the host of the directory server.</p>
+ */
+class LdapContextTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String LDAP_CTX_CLASS_NAME = Descriptor.toJvmName("com.sun.jndi.ldap.LdapCtx");
+    private static final String CONSTRUCTOR_DESCRIPTOR = "(Ljava/lang/String;Ljava/lang/String;ILjava/util/Hashtable;Z)V";
+    private static final String LDAP_CONTEXTS_CLASS_NAME = Type.getInternalName(LdapContexts.class);
+    private static final String HASHTABLE_DESCRIPTOR = Type.getDescriptor(Hashtable.class);
+
+    public LdapContextTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(LDAP_CTX_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        // before the environment is copied, the copy only happens when it is not null
+        CtConstructor constructor = cc.getConstructor(CONSTRUCTOR_DESCRIPTOR);
+        constructor.insertBefore("$4 = " + LdapContexts.class.getName() + ".withTimeouts($4, $2);");
+
+        byte[] classfileBuffer = cc.toBytecode();
+        cc.detach();
+
+        return classfileBuffer;
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "<init>", CONSTRUCTOR_DESCRIPTOR) {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // props = LdapContexts.withTimeouts(props, host);
+                mv.visitVarInsn(Opcodes.ALOAD, 4);
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        LDAP_CONTEXTS_CLASS_NAME,
+                        "withTimeouts",
+                        "(" + HASHTABLE_DESCRIPTOR + "Ljava/lang/String;)" + HASHTABLE_DESCRIPTOR,
+                        false);
+                mv.visitVarInsn(Opcodes.ASTORE, 4);
+            }
+        };
+    }
+}
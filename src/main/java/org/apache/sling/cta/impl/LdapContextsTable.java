@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.sling.cta.runtime.LdapContexts;
+
+/**
+ * Converts the {@link LdapContexts} to open data
+ */
+final class LdapContextsTable {
+
+    static final TabularType TABULAR_TYPE;
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final String[] ITEM_NAMES = {"host", "contexts", "agentTimeoutContexts"};
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType(
+                    "LdapContext",
+                    "The number of LDAP contexts created for a directory server host",
+                    ITEM_NAMES,
+                    new String[] {
+                        "The host, " + LdapContexts.OTHER_HOSTS + " for unknown hosts and hosts over the limit",
+                        "The number of contexts created",
+                        "The number of contexts which got an agent timeout"
+                    },
+                    new OpenType<?>[] {SimpleType.STRING, SimpleType.LONG, SimpleType.LONG});
+            TABULAR_TYPE = new TabularType(
+                    "LdapContexts", "The LDAP contexts created", ROW_TYPE, new String[] {"host"});
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private LdapContextsTable() {}
+
+    /**
+     * Returns the current counts
+     *
+     * @return the counts, of type {@link #TABULAR_TYPE}
+     * @throws OpenDataException in case the counts cannot be converted
+     */
+    static TabularData toTabularData() throws OpenDataException {
+        TabularData data = new TabularDataSupport(TABULAR_TYPE);
+        for (LdapContexts.Count count : LdapContexts.getCounts()) {
+            data.put(new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] {
+                count.getHost(), count.getContexts(), count.getAgentTimeoutContexts()
+            }));
+        }
+        return data;
+    }
+}
@@ -18,7 +18,20 @@
  */
 package org.apache.sling.cta.impl;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import static java.util.Objects.requireNonNull;
 
@@ -26,27 +39,60 @@ import static java.util.Objects.requireNonNull;
  * Simple logger abstraction
  *
  * <p>This is an intentionally simple and simplistic logger for agent-internal usage. Since the agent environment
- * is limited and can make no assumption about how it will be used, it only uses the console and no
- * external libraries.</p>
+ * is limited and can make no assumption about how it will be used, it uses no external libraries and writes either
+ * to the console or to a file, as plain text or as JSON lines.</p>
+ *
+ * <p>Messages are logged from class loading threads, so logging must not slow them down. Checking a disabled level
+ * costs a single branch, and the fixed arity methods avoid allocating a varargs array. Enabled messages are added
+ * to a bounded ring buffer and formatted and written by a background thread. Messages are dropped when the buffer is
+ * full, the number of dropped messages is logged once there is room again. Since formatting is deferred, arguments
+ * must not be modified after being logged.</p>
  *
  * <p>It is required to call {@link #configure(String)} before accessing the log instance using {@link #get()}.</p>
  *
  */
 abstract class Log {
 
-    private static Log INSTANCE; // NOSONAR - name is OK for static fields
+    enum Level {
+        FATAL,
+        INFO,
+        TRACE
+    }
+
+    static final int BUFFER_CAPACITY = 8192;
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static volatile Log INSTANCE; // NOSONAR - name is OK for static fields
 
     /**
-     * Configures the global logger instance
+     * Configures the global logger instance to write plain text to the console
      *
-     * @param spec the logger spec, <code>v</code> for a console log, anything else for a no-op log
+     * @param spec the logger spec, <code>v</code> for a console log, <code>vv</code> for a console log including
+     *     trace messages, anything else for a no-op log
      */
     public static void configure(String spec) {
+        configure(spec, null, false);
+    }
+
+    /**
+     * Configures the global logger instance
+     *
+     * <p>A previously configured logger is closed, after writing the messages it buffered.</p>
+     *
+     * @param spec the logger spec, <code>v</code> for a log, <code>vv</code> for a log including trace messages,
+     *     anything else for a no-op log
+     * @param file the file to append to, <code>null</code> for the console
+     * @param json <code>true</code> for writing JSON lines, <code>false</code> for plain text
+     */
+    public static synchronized void configure(String spec, Path file, boolean json) {
 
         boolean isVerbose = "v".equals(spec);
         boolean isExtraVerbose = "vv".equals(spec);
 
-        INSTANCE = isVerbose || isExtraVerbose ? new ConsoleLog(isExtraVerbose) : new NoopLog();
+        Log previous = INSTANCE;
+        INSTANCE = isVerbose || isExtraVerbose ? new AsyncLog(isExtraVerbose, file, json) : new NoopLog();
+        if (previous != null) previous.close();
     }
 
     /**
@@ -59,7 +105,17 @@ abstract class Log {
         return requireNonNull(INSTANCE, "Log is null, did you foget to call Log.configure() ?");
     }
 
-    private Log() {}
+    private final boolean infoEnabled;
+    private final boolean traceEnabled;
+
+    private Log(boolean infoEnabled, boolean traceEnabled) {
+        this.infoEnabled = infoEnabled;
+        this.traceEnabled = traceEnabled;
+    }
+
+    public final boolean isTraceEnabled() {
+        return traceEnabled;
+    }
 
     /**
      * Logs a message
@@ -70,14 +126,52 @@ abstract class Log {
      *
      *  </p>
      *
-     *  <p>The line separator <code>%n</code> is automatically appended to the message.</p>
-     *
      * @param msg the message
      * @param args the arguments
      */
-    public abstract void log(String msg, Object... args);
+    public final void log(String msg, Object... args) {
+        if (infoEnabled) append(Level.INFO, msg, args, null);
+    }
+
+    public final void log(String msg) {
+        if (infoEnabled) append(Level.INFO, msg, NO_ARGS, null);
+    }
+
+    public final void log(String msg, Object arg) {
+        if (infoEnabled) append(Level.INFO, msg, new Object[] {arg}, null);
+    }
+
+    public final void log(String msg, Object arg1, Object arg2) {
+        if (infoEnabled) append(Level.INFO, msg, new Object[] {arg1, arg2}, null);
+    }
+
+    public final void log(String msg, Object arg1, Object arg2, Object arg3) {
+        if (infoEnabled) append(Level.INFO, msg, new Object[] {arg1, arg2, arg3}, null);
+    }
+
+    public final void log(String msg, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (infoEnabled) append(Level.INFO, msg, new Object[] {arg1, arg2, arg3, arg4}, null);
+    }
+
+    public final void trace(String msg, Object... args) {
+        if (traceEnabled) append(Level.TRACE, msg, args, null);
+    }
+
+    public final void trace(String msg) {
+        if (traceEnabled) append(Level.TRACE, msg, NO_ARGS, null);
+    }
 
-    public abstract void trace(String msg, Object... args);
+    public final void trace(String msg, Object arg) {
+        if (traceEnabled) append(Level.TRACE, msg, new Object[] {arg}, null);
+    }
+
+    public final void trace(String msg, Object arg1, Object arg2) {
+        if (traceEnabled) append(Level.TRACE, msg, new Object[] {arg1, arg2}, null);
+    }
+
+    public final void trace(String msg, Object arg1, Object arg2, Object arg3) {
+        if (traceEnabled) append(Level.TRACE, msg, new Object[] {arg1, arg2, arg3}, null);
+    }
 
     /**
      * Prints the throwable stack trace and throws a <code>RuntimeException</code>
@@ -87,40 +181,211 @@ abstract class Log {
      */
     public abstract void fatal(String message, Throwable t);
 
-    static class ConsoleLog extends Log {
+    abstract void append(Level level, String msg, Object[] args, Throwable t);
+
+    /**
+     * Writes the buffered messages and releases the resources of this logger
+     */
+    void close() {
+        // nothing to release by default
+    }
+
+    static class AsyncLog extends Log {
 
         private static final String LOG_ENTRY_PREFIX = "[AGENT] ";
 
-        private final boolean trace;
+        private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+        private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(2);
 
-        ConsoleLog(boolean trace) {
-            this.trace = trace;
+        private final LogRingBuffer<Event> buffer = new LogRingBuffer<>(BUFFER_CAPACITY);
+        private final Writer out;
+        private final boolean console;
+        private final boolean json;
+        private final Thread writer;
+        private final Thread shutdownHook;
+        private volatile boolean running = true;
+
+        AsyncLog(boolean trace, Path file, boolean json) {
+            super(true, trace);
+            this.json = json;
+            this.out = open(file);
+            this.console = out == null;
+            this.writer = new Thread(this::drain, "connection-timeout-agent-log");
+            this.writer.setDaemon(true);
+            this.writer.start();
+            this.shutdownHook = new Thread(this::close, "connection-timeout-agent-log-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
         }
 
-        @Override
-        public void log(String msg, Object... args) {
-            System.out.format(LOG_ENTRY_PREFIX + msg + " %n", args); // NOSONAR - this is a logger, OK to use System.out
+        private static Writer open(Path file) {
+            if (file == null) return null;
+            try {
+                return Files.newBufferedWriter(
+                        file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println(LOG_ENTRY_PREFIX + "Failed opening " + file + ", logging to the console: " + e);
+                return null;
+            }
         }
 
         @Override
-        public void trace(String msg, Object... args) {
-            if (!trace) return;
-
-            log(msg, args);
+        void append(Level level, String msg, Object[] args, Throwable t) {
+            buffer.offer(new Event(level, msg, args, t));
         }
 
         @Override
         public void fatal(String msg, Throwable t) {
+            append(Level.FATAL, msg, NO_ARGS, t);
             // ensure _something_ is printed, throwable might not be printed
             t.printStackTrace(); // NOSONAR - OK to use printStackTrace, we are a logger
             throw new RuntimeException(LOG_ENTRY_PREFIX + msg, t); // NOSONAR - we don't want custom exceptions
         }
+
+        @Override
+        void close() {
+            if (!running) return;
+
+            running = false;
+            LockSupport.unpark(writer);
+            try {
+                writer.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down
+            }
+        }
+
+        private void drain() {
+            Writer target = console
+                    ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) // NOSONAR
+                    : out;
+            StringBuilder line = new StringBuilder();
+            Formatter formatter = new Formatter(line);
+            try {
+                while (true) {
+                    // read before draining, so that the messages logged before closing are written
+                    boolean stopping = !running;
+                    for (Event event = buffer.poll(); event != null; event = buffer.poll()) {
+                        format(event, line, formatter);
+                        target.write(line.toString());
+                    }
+                    long dropped = buffer.drainDropped();
+                    if (dropped > 0) {
+                        format(
+                                new Event(
+                                        Level.INFO,
+                                        "Dropped %d log messages, the log buffer is full",
+                                        new Object[] {dropped},
+                                        null),
+                                line,
+                                formatter);
+                        target.write(line.toString());
+                    }
+                    target.flush();
+                    if (stopping) break;
+                    LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // NOSONAR - OK to use printStackTrace, we are a logger
+            } finally {
+                if (!console) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // nothing left to log to
+                    }
+                }
+            }
+        }
+
+        private void format(Event event, StringBuilder line, Formatter formatter) {
+            line.setLength(0);
+            String message;
+            try {
+                formatter.format(event.msg, event.args);
+                message = line.toString();
+            } catch (RuntimeException e) {
+                message = event.msg + " (formatting failed: " + e + ")";
+            }
+            line.setLength(0);
+
+            String thread = event.thread;
+            String timestamp = Instant.ofEpochMilli(event.timestamp).toString();
+            if (json) {
+                line.append("{\"timestamp\":\"").append(timestamp);
+                line.append("\",\"level\":\"").append(event.level);
+                line.append("\",\"thread\":\"");
+                appendJsonString(line, thread);
+                line.append("\",\"message\":\"");
+                appendJsonString(line, message);
+                if (event.t != null) {
+                    line.append("\",\"exception\":\"");
+                    appendJsonString(line, stackTraceOf(event.t));
+                }
+                line.append("\"}");
+            } else {
+                if (console) line.append(LOG_ENTRY_PREFIX);
+                else
+                    line.append(timestamp)
+                            .append(' ')
+                            .append(event.level)
+                            .append(" [")
+                            .append(thread)
+                            .append("] ");
+                line.append(message);
+                if (event.t != null)
+                    line.append(System.lineSeparator())
+                            .append(stackTraceOf(event.t).trim());
+            }
+            line.append(System.lineSeparator());
+        }
+
+        private static String stackTraceOf(Throwable t) {
+            StringWriter stackTrace = new StringWriter();
+            t.printStackTrace(new PrintWriter(stackTrace));
+            return stackTrace.toString();
+        }
+
+        private static void appendJsonString(StringBuilder line, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        line.append("\\\"");
+                        break;
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) line.append(String.format("\\u%04x", (int) c));
+                        else line.append(c);
+                }
+            }
+        }
     }
 
     static class NoopLog extends Log {
 
+        NoopLog() {
+            super(false, false);
+        }
+
         @Override
-        public void log(String msg, Object... args) {
+        void append(Level level, String msg, Object[] args, Throwable t) {
             // empty by design
         }
 
@@ -128,10 +393,21 @@ abstract class Log {
         public void fatal(String message, Throwable t) {
             // empty by design
         }
+    }
 
-        @Override
-        public void trace(String msg, Object... args) {
-            // empty by design
+    private static final class Event {
+        private final long timestamp = System.currentTimeMillis();
+        private final String thread = Thread.currentThread().getName();
+        private final Level level;
+        private final String msg;
+        private final Object[] args;
+        private final Throwable t;
+
+        Event(Level level, String msg, Object[] args, Throwable t) {
+            this.level = level;
+            this.msg = msg;
+            this.args = args;
+            this.t = t;
         }
     }
 }
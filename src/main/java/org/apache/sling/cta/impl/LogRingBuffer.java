@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, lock-free queue with many producers and a single consumer
+ *
+ * <p>Producers claim a slot by incrementing the producer index and then publish the element into it. Elements
+ * offered while the buffer is full are dropped and counted, so that producers never block. The consumer reads
+ * the slots in order, waiting for claimed slots to be published.</p>
+ *
+ * @param <E> the element type
+ */
+final class LogRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long consumerIndex;
+
+    /**
+     * Creates a new instance
+     *
+     * @param capacity the capacity, rounded up to a power of two
+     */
+    LogRingBuffer(int capacity) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an element, unless the buffer is full
+     *
+     * <p>This method can be called by any thread.</p>
+     *
+     * @param element the element
+     * @return <code>true</code> if the element was added, <code>false</code> if it was dropped
+     */
+    boolean offer(E element) {
+        while (true) {
+            long index = producerIndex.get();
+            if (index - consumerIndex >= slots.length()) {
+                dropped.increment();
+                return false;
+            }
+            if (producerIndex.compareAndSet(index, index + 1)) {
+                slots.lazySet((int) index & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element
+     *
+     * <p>This method must only be called by the consumer thread.</p>
+     *
+     * @return the element, or <code>null</code> if the buffer is empty
+     */
+    E poll() {
+        long index = consumerIndex;
+        int slot = (int) index & mask;
+        E element = slots.get(slot);
+        if (element == null) {
+            if (index == producerIndex.get()) return null;
+            // a producer claimed the slot but did not publish the element yet
+            do {
+                Thread.onSpinWait();
+                element = slots.get(slot);
+            } while (element == null);
+        }
+        slots.lazySet(slot, null);
+        consumerIndex = index + 1;
+        return element;
+    }
+
+    /**
+     * Returns the number of elements dropped so far and resets it
+     *
+     * @return the number of dropped elements
+     */
+    long drainDropped() {
+        return dropped.sumThenReset();
+    }
+}
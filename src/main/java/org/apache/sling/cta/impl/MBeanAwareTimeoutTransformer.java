@@ -18,14 +18,16 @@
  */
 package org.apache.sling.cta.impl;
 
+import java.io.ByteArrayInputStream;
 import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
 import java.util.Set;
-import javassist.ByteArrayClassPath;
 import javassist.ClassPool;
 import javassist.CtClass;
-import javassist.LoaderClassPath;
-import javassist.bytecode.Descriptor;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
 
 /**
  * Support class for transformers that expose runtime information through JMX
@@ -35,13 +37,18 @@ import javassist.bytecode.Descriptor;
  */
 public abstract class MBeanAwareTimeoutTransformer implements ClassFileTransformer {
 
+    private static final int MAX_CACHED_CLASS_POOLS = 32;
+
+    private static final ClassPoolCache CLASS_POOLS = new ClassPoolCache(MAX_CACHED_CLASS_POOLS);
+
     private final AgentInfo agentInfo;
     private final Set<String> classesToTransform;
+    private final TransformerStats stats;
 
     public MBeanAwareTimeoutTransformer(AgentInfo agent, Set<String> classesToTransform) {
         this.agentInfo = agent;
         this.classesToTransform = classesToTransform;
-        this.agentInfo.registerTransformer(getClass());
+        this.stats = this.agentInfo.registerTransformer(getClass());
 
         Log.get()
                 .log(
@@ -57,40 +64,136 @@ public abstract class MBeanAwareTimeoutTransformer implements ClassFileTransform
             ProtectionDomain protectionDomain,
             byte[] classfileBuffer) {
 
+        agentInfo.registerInspectedClass();
+        if (!classesToTransform.contains(className)) {
+            Log.get()
+                    .trace(
+                            "%s did not transform %s as it was not part of the classes it handles",
+                            getClass().getSimpleName(), className);
+            return classfileBuffer;
+        }
+
+        // the module of the class is not known, so the timeouts can only be inlined
+        return transformClass(
+                loader, className, classfileBuffer, TransformationEngine.JAVASSIST, TimeoutSource.CONSTANT);
+    }
+
+    /**
+     * Returns the internal names of the classes handled by this transformer
+     *
+     * @return the classes to transform, never <code>null</code>
+     */
+    Set<String> getClassesToTransform() {
+        return classesToTransform;
+    }
+
+    /**
+     * Transforms a class that is known to be handled by this transformer
+     *
+     * @param loader the defining class loader, <code>null</code> for the bootstrap class loader
+     * @param className the internal name of the class
+     * @param classfileBuffer the current class definition
+     * @param engine the preferred engine, javassist is used if this transformer does not support it
+     * @param timeouts the source of the timeouts in the transformed code
+     * @return the new class definition, or <code>null</code> if the transformation failed
+     */
+    byte[] transformClass(
+            ClassLoader loader,
+            String className,
+            byte[] classfileBuffer,
+            TransformationEngine engine,
+            TimeoutSource timeouts) {
+        stats.matched();
+        long start = System.nanoTime();
         try {
-            if (classesToTransform.contains(className)) {
-                Log.get().log("%s asked to transform %s", getClass().getSimpleName(), className);
-                ClassPool classPool = new ClassPool(true);
-                // in OSGi environments access is automatically permitted to all classes, even for a Java agent
-                // therefore we need to adjust the default class path
-                // 1. append all classes accessible to the specified class loader
-                classPool.appendClassPath(new LoaderClassPath(loader));
-                // 2. insert the current definition of the class
-                classPool.insertClassPath(new ByteArrayClassPath(Descriptor.toJavaName(className), classfileBuffer));
-                CtClass cc = classPool.get(Descriptor.toJavaName(className));
-                classfileBuffer = doTransformClass(cc);
-                Log.get().log("Transformation of %s complete", className);
-                this.agentInfo.registerTransformedClass(className);
-            } else {
+            Log.get().log("%s asked to transform %s", getClass().getSimpleName(), className);
+            if (timeouts == TimeoutSource.CONSTANT && requiresRuntimeClasses()) {
+                stats.skipped();
                 Log.get()
-                        .trace(
-                                "%s did not transform %s as it was not part of the classes it handles",
+                        .log(
+                                "%s skipped %s as it requires the runtime classes",
                                 getClass().getSimpleName(), className);
+                return null; // NOSONAR: null return is OK in case no transform is performed
             }
-            return classfileBuffer;
+            byte[] transformed =
+                    engine == TransformationEngine.ASM ? transformWithAsm(classfileBuffer, timeouts) : null;
+            if (transformed == null) {
+                engine = TransformationEngine.JAVASSIST;
+                transformed = transformWithJavassist(loader, classfileBuffer, timeouts);
+            }
+            long elapsed = System.nanoTime() - start;
+            stats.succeeded(elapsed);
+            Log.get()
+                    .log(
+                            "Transformation of %s complete using %s with %s timeouts in %d microseconds",
+                            className, engine, timeouts, elapsed / 1000);
+            this.agentInfo.registerTransformedClass(className, loader);
+            return transformed;
         } catch (Exception e) {
+            stats.failed(System.nanoTime() - start);
             Log.get().fatal("Transformation failed", e);
             return null; // NOSONAR: null return is OK in case no transform is performed
         }
     }
 
+    private byte[] transformWithJavassist(ClassLoader loader, byte[] classfileBuffer, TimeoutSource timeouts)
+            throws Exception {
+        ClassPool classPool = CLASS_POOLS.get(loader);
+        synchronized (classPool) {
+            // always start from the current definition of the class, replacing any previously cached one
+            CtClass cc = classPool.makeClass(new ByteArrayInputStream(classfileBuffer), false);
+            try {
+                return doTransformClass(cc, timeouts);
+            } finally {
+                // the transformed class must not be reused by further transformations
+                cc.detach();
+            }
+        }
+    }
+
+    private byte[] transformWithAsm(byte[] classfileBuffer, TimeoutSource timeouts) {
+        ClassReader reader = new ClassReader(classfileBuffer);
+        // frames are emitted by the visitors, computing them would require loading classes
+        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        ClassVisitor visitor = newClassVisitor(writer, timeouts);
+        if (visitor == null) return null;
+
+        reader.accept(visitor, 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Indicates whether the transformed code calls the runtime classes directly, instead of using the
+     * {@link TimeoutSource}, in which case classes that cannot access them are not transformed
+     *
+     * @return <code>true</code> if the runtime classes are required, <code>false</code> by default
+     */
+    protected boolean requiresRuntimeClasses() {
+        return false;
+    }
+
     /**
      * Transform a class that is guaranteed to exist and in scope of this agent instance
      *
      * @param cc the class
+     * @param timeouts the source of the timeouts in the transformed code
      * @return the new class definition
      * @throws Exception in case of any problems while transforming
      */
-    protected abstract byte[] doTransformClass(CtClass cc)
+    protected abstract byte[] doTransformClass(CtClass cc, TimeoutSource timeouts)
             throws Exception; // NOSONAR - throwing Exception is OK, we don't want custom exceptions
+
+    /**
+     * Creates a visitor that transforms a class that is guaranteed to exist and in scope of this agent instance
+     *
+     * <p>This method is only invoked when the {@link TransformationEngine#ASM ASM engine} is selected. Transformers
+     * that return <code>null</code> are applied using javassist instead.</p>
+     *
+     * @param next the visitor to delegate to
+     * @param timeouts the source of the timeouts in the transformed code
+     * @return the visitor, or <code>null</code> if the ASM engine is not supported
+     */
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return null;
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Support class for ASM visitors that change a single method of a class
+ *
+ * <p>The equivalent of the javassist <code>insertBefore</code>, <code>insertAfter</code> and <code>addCatch</code>
+ * operations is available by overriding {@link #onMethodEnter(MethodVisitor)}, {@link #onMethodExit(MethodVisitor)}
+ * and {@link #onMethodThrow(MethodVisitor, String)}. The injected code must leave the operand stack unchanged and
+ * must not declare local variables.</p>
+ *
+ * <p>Transforming fails with an {@link IllegalStateException} if the method is not found, similar to the javassist
+ * lookup methods. Visitors restricted to a class, for transformers handling several classes, leave the other classes
+ * unchanged.</p>
+ */
+abstract class MethodTransformingClassVisitor extends ClassVisitor {
+
+    static final int ASM_API = Opcodes.ASM9;
+
+    private static final int FIRST_VERSION_WITH_FRAMES = Opcodes.V1_6;
+
+    private final String targetClassName;
+    private final String methodName;
+    private final String methodDescriptor;
+    private String className;
+    private boolean framesRequired;
+    private boolean active;
+    private boolean found;
+
+    protected MethodTransformingClassVisitor(ClassVisitor next, String methodName, String methodDescriptor) {
+        this(next, null, methodName, methodDescriptor);
+    }
+
+    /**
+     * Creates a visitor that only changes the method of the specified class
+     *
+     * @param next the visitor to delegate to
+     * @param targetClassName the internal name of the class declaring the method, <code>null</code> for any class
+     * @param methodName the name of the method
+     * @param methodDescriptor the descriptor of the method
+     */
+    protected MethodTransformingClassVisitor(
+            ClassVisitor next, String targetClassName, String methodName, String methodDescriptor) {
+        super(ASM_API, next);
+        this.targetClassName = targetClassName;
+        this.methodName = methodName;
+        this.methodDescriptor = methodDescriptor;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.className = name;
+        this.active = targetClassName == null || targetClassName.equals(name);
+        this.framesRequired = (version & 0xFFFF) >= FIRST_VERSION_WITH_FRAMES;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+            int access, String name, String descriptor, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+        if (!active || found || !methodName.equals(name) || !methodDescriptor.equals(descriptor)) return mv;
+
+        found = true;
+        Object[] entryLocals = entryLocals(access, descriptor);
+        return new MethodVisitor(ASM_API, mv) {
+            private final Label tryStart = new Label();
+
+            @Override
+            public void visitCode() {
+                super.visitCode();
+                onMethodEnter(mv);
+                mv.visitLabel(tryStart);
+            }
+
+            @Override
+            public void visitMaxs(int maxStack, int maxLocals) {
+                String[] exceptionTypes = getHandledExceptionTypes();
+                if (exceptionTypes.length > 0) {
+                    Label tryEnd = new Label();
+                    mv.visitLabel(tryEnd);
+                    // appended last, so that the handlers of the original code take precedence
+                    for (String exceptionType : exceptionTypes) {
+                        Label handler = new Label();
+                        mv.visitLabel(handler);
+                        if (framesRequired)
+                            mv.visitFrame(
+                                    Opcodes.F_FULL, entryLocals.length, entryLocals, 1, new Object[] {exceptionType});
+                        onMethodThrow(mv, exceptionType);
+                        mv.visitInsn(Opcodes.ATHROW);
+                        mv.visitTryCatchBlock(tryStart, tryEnd, handler, exceptionType);
+                    }
+                }
+                super.visitMaxs(maxStack, maxLocals);
+            }
+
+            @Override
+            public void visitInsn(int opcode) {
+                if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) onMethodExit(mv);
+                super.visitInsn(opcode);
+            }
+        };
+    }
+
+    @Override
+    public void visitEnd() {
+        if (active && !found)
+            throw new IllegalStateException(
+                    "Method " + methodName + methodDescriptor + " not found in class " + className);
+        super.visitEnd();
+    }
+
+    private Object[] entryLocals(int access, String descriptor) {
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        boolean isStatic = (access & Opcodes.ACC_STATIC) != 0;
+        Object[] locals = new Object[argumentTypes.length + (isStatic ? 0 : 1)];
+        int i = 0;
+        if (!isStatic) locals[i++] = className;
+        for (Type type : argumentTypes) {
+            switch (type.getSort()) {
+                case Type.BOOLEAN:
+                case Type.CHAR:
+                case Type.BYTE:
+                case Type.SHORT:
+                case Type.INT:
+                    locals[i++] = Opcodes.INTEGER;
+                    break;
+                case Type.FLOAT:
+                    locals[i++] = Opcodes.FLOAT;
+                    break;
+                case Type.LONG:
+                    locals[i++] = Opcodes.LONG;
+                    break;
+                case Type.DOUBLE:
+                    locals[i++] = Opcodes.DOUBLE;
+                    break;
+                default:
+                    locals[i++] = type.getInternalName();
+            }
+        }
+        return locals;
+    }
+
+    /**
+     * Returns the internal name of the visited class
+     *
+     * @return the class name
+     */
+    protected String getClassName() {
+        return className;
+    }
+
+    /**
+     * Injects code at the beginning of the method
+     *
+     * @param mv the visitor for the method
+     */
+    protected void onMethodEnter(MethodVisitor mv) {
+        // nothing injected by default
+    }
+
+    /**
+     * Injects code before every return instruction of the method
+     *
+     * <p>For methods returning a value, it is on the top of the operand stack.</p>
+     *
+     * @param mv the visitor for the method
+     */
+    protected void onMethodExit(MethodVisitor mv) {
+        // nothing injected by default
+    }
+
+    /**
+     * Returns the exceptions handled by {@link #onMethodThrow(MethodVisitor, String)}
+     *
+     * <p>The handlers cover the whole method, except for the code injected by
+     * {@link #onMethodEnter(MethodVisitor)}, and are evaluated in order, after the handlers of the method.</p>
+     *
+     * @return the internal names of the exception classes, empty by default
+     */
+    protected String[] getHandledExceptionTypes() {
+        return new String[0];
+    }
+
+    /**
+     * Injects code executed when the method throws one of the {@link #getHandledExceptionTypes() handled exceptions}
+     *
+     * <p>The exception is on the top of the operand stack and is rethrown after the injected code. Only the
+     * <code>this</code> reference and the method arguments can be accessed.</p>
+     *
+     * @param mv the visitor for the method
+     * @param exceptionType the internal name of the handled exception class
+     */
+    protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+        // nothing injected by default
+    }
+
+    /**
+     * Marks the target of a forward jump emitted at the beginning of the method
+     *
+     * <p>The local variables and operand stack must be the same as when entering the method.</p>
+     *
+     * @param mv the visitor for the method
+     * @param label the jump target
+     */
+    protected void visitLabelAtMethodEntryState(MethodVisitor mv, Label label) {
+        mv.visitLabel(label);
+        if (framesRequired) mv.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+        // ensure that the frame does not share its offset with a frame of the original code
+        mv.visitInsn(Opcodes.NOP);
+    }
+}
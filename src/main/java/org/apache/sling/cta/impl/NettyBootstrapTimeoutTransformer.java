@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtMethod;
+import javassist.bytecode.Descriptor;
+
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.apache.sling.cta.runtime.NettyChannels;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Sets the connect timeout of Netty 4.x client channels, as used by e.g. Reactor Netty and gRPC
+ *
+ * <p>The no-arg constructor of <code>io.netty.bootstrap.Bootstrap</code> sets the
+ * <code>ChannelOption.CONNECT_TIMEOUT_MILLIS</code> option to the agent connect timeout, so that an option set by the
+ * application afterwards takes precedence. Bootstraps cloned from a transformed one inherit its options.</p>
+ *
+ * <p>When the runtime classes are accessible, each channel about to connect is reported to {@link NettyChannels},
+ * from <code>Bootstrap.doResolveAndConnect0(Channel, SocketAddress, SocketAddress, ChannelPromise)</code>, once the
+ * options are applied to the channel.</p>
+ *
+ * <p>No read timeout is set: Netty has no socket read timeout, and a <code>ReadTimeoutHandler</code> added to the
+ * pipeline would also close idle pooled connections and long-lived streams. Netty uses socket channels, so the host
+ * policies do not apply.</p>
+ */
+class NettyBootstrapTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String BOOTSTRAP_CLASS_NAME = "io/netty/bootstrap/Bootstrap";
+    private static final String CHANNEL_OPTION_CLASS_NAME = "io/netty/channel/ChannelOption";
+    private static final String CONNECT_METHOD_NAME = "doResolveAndConnect0";
+    private static final String CONNECT_METHOD_DESCRIPTOR = "(Lio/netty/channel/Channel;Ljava/net/SocketAddress;"
+            + "Ljava/net/SocketAddress;Lio/netty/channel/ChannelPromise;)Lio/netty/channel/ChannelFuture;";
+    private static final String NETTY_CHANNELS_CLASS_NAME = Type.getInternalName(NettyChannels.class);
+
+    public NettyBootstrapTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(BOOTSTRAP_CLASS_NAME));
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        CtConstructor noArgCtor = cc.getConstructor(Descriptor.ofConstructor(new CtClass[0]));
+        noArgCtor.insertAfter("option(io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.valueOf("
+                + timeouts.toSource(Timeout.CONNECT, int.class) + "));");
+
+        if (timeouts == TimeoutSource.RUNTIME) {
+            CtMethod connect = cc.getMethod(CONNECT_METHOD_NAME, CONNECT_METHOD_DESCRIPTOR);
+            connect.insertBefore(
+                    NettyChannels.class.getName() + ".connecting($2, $1.config().getConnectTimeoutMillis());");
+        }
+
+        byte[] classfileBuffer = cc.toBytecode();
+        cc.detach();
+
+        return classfileBuffer;
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        ClassVisitor connect = timeouts != TimeoutSource.RUNTIME
+                ? next
+                : new MethodTransformingClassVisitor(next, CONNECT_METHOD_NAME, CONNECT_METHOD_DESCRIPTOR) {
+                    @Override
+                    protected void onMethodEnter(MethodVisitor mv) {
+                        // NettyChannels.connecting(remoteAddress, channel.config().getConnectTimeoutMillis());
+                        mv.visitVarInsn(Opcodes.ALOAD, 2);
+                        mv.visitVarInsn(Opcodes.ALOAD, 1);
+                        mv.visitMethodInsn(
+                                Opcodes.INVOKEINTERFACE,
+                                "io/netty/channel/Channel",
+                                "config",
+                                "()Lio/netty/channel/ChannelConfig;",
+                                true);
+                        mv.visitMethodInsn(
+                                Opcodes.INVOKEINTERFACE,
+                                "io/netty/channel/ChannelConfig",
+                                "getConnectTimeoutMillis",
+                                "()I",
+                                true);
+                        mv.visitMethodInsn(
+                                Opcodes.INVOKESTATIC,
+                                NETTY_CHANNELS_CLASS_NAME,
+                                "connecting",
+                                "(" + Type.getDescriptor(SocketAddress.class) + "I)V",
+                                false);
+                    }
+                };
+
+        return new MethodTransformingClassVisitor(connect, "<init>", "()V") {
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                // option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.valueOf(connectTimeout));
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(
+                        Opcodes.GETSTATIC,
+                        CHANNEL_OPTION_CLASS_NAME,
+                        "CONNECT_TIMEOUT_MILLIS",
+                        "L" + CHANNEL_OPTION_CLASS_NAME + ";");
+                timeouts.load(mv, Timeout.CONNECT, int.class);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKEVIRTUAL,
+                        getClassName(),
+                        "option",
+                        "(L" + CHANNEL_OPTION_CLASS_NAME + ";Ljava/lang/Object;)Lio/netty/bootstrap/AbstractBootstrap;",
+                        false);
+                mv.visitInsn(Opcodes.POP);
+            }
+        };
+    }
+}
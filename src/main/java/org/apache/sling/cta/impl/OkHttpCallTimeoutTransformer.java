@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import org.apache.sling.cta.runtime.Deadlines;
+import org.apache.sling.cta.runtime.TimeoutCounters;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Counts the timeouts of synchronous OkHttp 3.x calls that are not reported by the socket
+ *
+ * <p>Hooks into <code>okhttp3.RealCall.execute()</code>, see {@link TimeoutCounters#okHttpTimeout(IOException, String)}.
+ * Calls enqueued for asynchronous execution are not counted.</p>
+ *
+ * <p>The start and end of each synchronous call are marked as well, see {@link Deadlines}.</p>
+ */
+class OkHttpCallTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String REAL_CALL_CLASS_NAME = "okhttp3/RealCall";
+    private static final String IO_EXCEPTION_CLASS_NAME = Type.getInternalName(IOException.class);
+    private static final String THROWABLE_CLASS_NAME = Type.getInternalName(Throwable.class);
+    private static final String TIMEOUT_COUNTERS_CLASS_NAME = Type.getInternalName(TimeoutCounters.class);
+    private static final String DEADLINES_CLASS_NAME = Type.getInternalName(Deadlines.class);
+
+    public OkHttpCallTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(REAL_CALL_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        CtMethod execute = cc.getDeclaredMethod("execute", new CtClass[0]);
+        execute.insertBefore(Deadlines.class.getName() + ".begin();");
+        execute.addCatch(
+                "{ " + TimeoutCounters.class.getName()
+                        + ".okHttpTimeout($e, originalRequest.url().host()); throw $e; }",
+                cc.getClassPool().get(IOException.class.getName()));
+        // covers the handler added above as well
+        execute.insertAfter(Deadlines.class.getName() + ".end();", true);
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "execute", "()Lokhttp3/Response;") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "begin", "()V", false);
+            }
+
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "end", "()V", false);
+            }
+
+            @Override
+            protected String[] getHandledExceptionTypes() {
+                // the handlers do not cover each other, so both end the call
+                return new String[] {IO_EXCEPTION_CLASS_NAME, THROWABLE_CLASS_NAME};
+            }
+
+            @Override
+            protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "end", "()V", false);
+                if (!exceptionType.equals(IO_EXCEPTION_CLASS_NAME)) return;
+
+                // TimeoutCounters.okHttpTimeout(e, this.originalRequest.url().host());
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "originalRequest", "Lokhttp3/Request;");
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "okhttp3/Request", "url", "()Lokhttp3/HttpUrl;", false);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "okhttp3/HttpUrl", "host", "()Ljava/lang/String;", false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        TIMEOUT_COUNTERS_CLASS_NAME,
+                        "okHttpTimeout",
+                        "(Ljava/io/IOException;Ljava/lang/String;)V",
+                        false);
+            }
+        };
+    }
+}
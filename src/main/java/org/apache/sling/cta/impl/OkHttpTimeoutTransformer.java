@@ -31,14 +31,8 @@ public class OkHttpTimeoutTransformer extends UpdateFieldsInConstructorTimeoutTr
     private static final String REQUEST_CONFIG_BUILDER_CLASS_NAME =
             Descriptor.toJvmName("okhttp3.OkHttpClient$Builder");
 
-    public OkHttpTimeoutTransformer(long connectTimeoutMillis, long readTimeoutMillis, AgentInfo agentInfoMBean) {
+    public OkHttpTimeoutTransformer(AgentInfo agentInfoMBean) {
 
-        super(
-                REQUEST_CONFIG_BUILDER_CLASS_NAME,
-                "connectTimeout",
-                "readTimeout",
-                connectTimeoutMillis,
-                readTimeoutMillis,
-                agentInfoMBean);
+        super(REQUEST_CONFIG_BUILDER_CLASS_NAME, "connectTimeout", "readTimeout", agentInfoMBean);
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.apache.sling.cta.runtime.TimeoutDefaults;
+
+/**
+ * Makes the classes referenced by the transformed code visible to the transformed classes
+ *
+ * <p>The transformed classes may be defined by any class loader, while the agent classes are defined by the system
+ * class loader. The classes from the <code>org.apache.sling.cta.runtime</code> package are therefore copied from
+ * the agent jar to a separate jar which is appended to the bootstrap class loader search path. They must not be
+ * loaded before that happens, otherwise the system class loader defines them.</p>
+ *
+ * <p>Class loaders that do not delegate to the bootstrap class loader, for instance OSGi bundle class loaders
+ * without the package listed in <code>org.osgi.framework.bootdelegation</code>, cannot access these classes.</p>
+ */
+final class RuntimeClasses {
+
+    // class literals must not be used for these classes, as they would load them
+    private static final String RUNTIME_PACKAGE_PATH = "org/apache/sling/cta/runtime/";
+
+    /**
+     * Appends the runtime classes to the bootstrap class loader search path
+     *
+     * @param inst the instrumentation instance
+     * @throws IOException in case the runtime jar cannot be created
+     */
+    static void appendToBootstrapClassLoaderSearch(Instrumentation inst) throws IOException {
+        Path agentJar;
+        try {
+            agentJar = Paths.get(RuntimeClasses.class
+                    .getProtectionDomain()
+                    .getCodeSource()
+                    .getLocation()
+                    .toURI());
+        } catch (URISyntaxException | RuntimeException e) {
+            throw new IOException("Unable to locate the agent jar", e);
+        }
+
+        Path jar = Files.createTempFile("connection-timeout-agent-runtime", ".jar");
+        jar.toFile().deleteOnExit();
+
+        int classCount = 0;
+        try (JarFile source = new JarFile(agentJar.toFile());
+                JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (JarEntry entry : Collections.list(source.entries())) {
+                if (!entry.getName().startsWith(RUNTIME_PACKAGE_PATH)
+                        || !entry.getName().endsWith(".class")) continue;
+                try (InputStream in = source.getInputStream(entry)) {
+                    out.putNextEntry(new JarEntry(entry.getName()));
+                    in.transferTo(out);
+                    out.closeEntry();
+                }
+                classCount++;
+            }
+        }
+
+        if (classCount == 0) throw new IOException("No runtime classes found in " + agentJar);
+
+        inst.appendToBootstrapClassLoaderSearch(new JarFile(jar.toFile()));
+
+        Log.get().log("Appended %d runtime classes from %s to the bootstrap class loader search", classCount, jar);
+    }
+
+    /**
+     * Checks whether classes in the specified module and class loader can access the runtime classes
+     *
+     * <p>Named modules, e.g. <code>java.base</code>, do not read the unnamed module that the runtime classes
+     * belong to. If the instrumentation instance is available the missing read edge is added.</p>
+     *
+     * @param module the module of the transformed class, <code>null</code> if unknown
+     * @param loader the defining class loader, <code>null</code> for the bootstrap class loader
+     * @param inst the instrumentation instance, <code>null</code> if unavailable
+     * @return <code>true</code> if the runtime classes are accessible
+     */
+    static boolean isAccessibleFrom(Module module, ClassLoader loader, Instrumentation inst) {
+        if (module == null) return false;
+
+        try {
+            if (Class.forName(TimeoutDefaults.class.getName(), false, loader) != TimeoutDefaults.class) return false;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+
+        Module runtimeModule = TimeoutDefaults.class.getModule();
+        if (module.canRead(runtimeModule)) return true;
+        if (inst == null || !inst.isModifiableModule(module)) return false;
+
+        inst.redefineModule(
+                module,
+                Collections.singleton(runtimeModule),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptySet(),
+                Collections.emptyMap());
+
+        Log.get().log("Added read edge from %s to %s", module, runtimeModule);
+
+        return module.canRead(runtimeModule);
+    }
+
+    // prevent instantiation
+    private RuntimeClasses() {}
+}
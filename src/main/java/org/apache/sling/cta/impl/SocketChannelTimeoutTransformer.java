@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import org.apache.sling.cta.runtime.ChannelDeadlines;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Enforces the default timeouts on blocking <code>java.nio.channels.SocketChannel</code> connects and reads
+ *
+ * <p>Hooks into <code>connect(SocketAddress)</code>, <code>read(ByteBuffer)</code> and
+ * <code>read(ByteBuffer[], int, int)</code> of <code>sun.nio.ch.SocketChannelImpl</code>, the implementation of all
+ * socket channels, see {@link ChannelDeadlines}. Sockets adapted from channels enforce their own timeouts and are not
+ * affected.</p>
+ */
+class SocketChannelTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String SOCKET_CHANNEL_IMPL_CLASS_NAME = "sun/nio/ch/SocketChannelImpl";
+    private static final String SOCKET_CHANNEL_DESCRIPTOR = Type.getDescriptor(SocketChannel.class);
+    private static final String SOCKET_ADDRESS_DESCRIPTOR = Type.getDescriptor(SocketAddress.class);
+    private static final String BYTE_BUFFER_DESCRIPTOR = Type.getDescriptor(ByteBuffer.class);
+    private static final String CHANNEL_DEADLINES_CLASS_NAME = Type.getInternalName(ChannelDeadlines.class);
+
+    public SocketChannelTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(SOCKET_CHANNEL_IMPL_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        ClassPool pool = cc.getClassPool();
+        CtClass throwable = pool.get(Throwable.class.getName());
+        String channelDeadlines = ChannelDeadlines.class.getName();
+
+        CtMethod connect = cc.getDeclaredMethod("connect", new CtClass[] {pool.get(SocketAddress.class.getName())});
+        connect.insertBefore(channelDeadlines + ".connecting(this, $1);");
+        connect.insertAfter(channelDeadlines + ".connected(this, $1);");
+        connect.addCatch("{ throw " + channelDeadlines + ".connectFailed($1, $e); }", throwable);
+
+        CtClass byteBuffer = pool.get(ByteBuffer.class.getName());
+        CtClass[][] readParameters = {
+            {byteBuffer}, {pool.get(ByteBuffer.class.getName() + "[]"), CtClass.intType, CtClass.intType}
+        };
+        for (CtClass[] parameters : readParameters) {
+            CtMethod read = cc.getDeclaredMethod("read", parameters);
+            read.insertBefore(channelDeadlines + ".reading(this);");
+            read.insertAfter(channelDeadlines + ".readCompleted();");
+            read.addCatch("{ throw " + channelDeadlines + ".readFailed(this, $e); }", throwable);
+        }
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        ClassVisitor read = newReadVisitor(next, "(" + BYTE_BUFFER_DESCRIPTOR + ")I");
+        ClassVisitor scatteringRead = newReadVisitor(read, "([" + BYTE_BUFFER_DESCRIPTOR + "II)J");
+
+        return new MethodTransformingClassVisitor(scatteringRead, "connect", "(" + SOCKET_ADDRESS_DESCRIPTOR + ")Z") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // ChannelDeadlines.connecting(this, remote);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        CHANNEL_DEADLINES_CLASS_NAME,
+                        "connecting",
+                        "(" + SOCKET_CHANNEL_DESCRIPTOR + SOCKET_ADDRESS_DESCRIPTOR + ")V",
+                        false);
+            }
+
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                // ChannelDeadlines.connected(this, remote);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        CHANNEL_DEADLINES_CLASS_NAME,
+                        "connected",
+                        "(" + SOCKET_CHANNEL_DESCRIPTOR + SOCKET_ADDRESS_DESCRIPTOR + ")V",
+                        false);
+            }
+
+            @Override
+            protected String[] getHandledExceptionTypes() {
+                return new String[] {"java/lang/Throwable"};
+            }
+
+            @Override
+            protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+                // e = ChannelDeadlines.connectFailed(remote, e);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitInsn(Opcodes.SWAP);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        CHANNEL_DEADLINES_CLASS_NAME,
+                        "connectFailed",
+                        "(" + SOCKET_ADDRESS_DESCRIPTOR + "Ljava/lang/Throwable;)Ljava/lang/Throwable;",
+                        false);
+            }
+        };
+    }
+
+    private static ClassVisitor newReadVisitor(ClassVisitor next, String descriptor) {
+        return new MethodTransformingClassVisitor(next, "read", descriptor) {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // ChannelDeadlines.reading(this);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        CHANNEL_DEADLINES_CLASS_NAME,
+                        "reading",
+                        "(" + SOCKET_CHANNEL_DESCRIPTOR + ")V",
+                        false);
+            }
+
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                // ChannelDeadlines.readCompleted();
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, CHANNEL_DEADLINES_CLASS_NAME, "readCompleted", "()V", false);
+            }
+
+            @Override
+            protected String[] getHandledExceptionTypes() {
+                return new String[] {"java/lang/Throwable"};
+            }
+
+            @Override
+            protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+                // e = ChannelDeadlines.readFailed(this, e);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitInsn(Opcodes.SWAP);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        CHANNEL_DEADLINES_CLASS_NAME,
+                        "readFailed",
+                        "(" + SOCKET_CHANNEL_DESCRIPTOR + "Ljava/lang/Throwable;)Ljava/lang/Throwable;",
+                        false);
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import org.apache.sling.cta.runtime.LatencyRecorder;
+import org.apache.sling.cta.runtime.TimeoutCounters;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Counts the read timeouts of <code>java.net.Socket</code> instances
+ *
+ * <p>Hooks into the input stream returned by <code>Socket.getInputStream()</code>, which exists since Java 13, see
+ * {@link TimeoutCounters#readTimeout(Socket)}. The time to first byte is recorded as well, see
+ * {@link LatencyRecorder#read(Socket)}.</p>
+ */
+class SocketInputStreamTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String SOCKET_INPUT_STREAM_CLASS_NAME = "java/net/Socket$SocketInputStream";
+    private static final String SOCKET_DESCRIPTOR = Type.getDescriptor(Socket.class);
+    private static final String SOCKET_TIMEOUT_EXCEPTION_CLASS_NAME =
+            Type.getInternalName(SocketTimeoutException.class);
+    private static final String TIMEOUT_COUNTERS_CLASS_NAME = Type.getInternalName(TimeoutCounters.class);
+    private static final String LATENCY_RECORDER_CLASS_NAME = Type.getInternalName(LatencyRecorder.class);
+
+    public SocketInputStreamTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(SOCKET_INPUT_STREAM_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        CtMethod read = cc.getDeclaredMethod(
+                "read", new CtClass[] {cc.getClassPool().get("byte[]"), CtClass.intType, CtClass.intType});
+        read.addCatch(
+                "{ " + TimeoutCounters.class.getName() + ".readTimeout(parent); throw $e; }",
+                cc.getClassPool().get(SocketTimeoutException.class.getName()));
+        read.insertAfter(LatencyRecorder.class.getName() + ".read(parent);");
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "read", "([BII)I") {
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                // LatencyRecorder.read(this.parent);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "parent", SOCKET_DESCRIPTOR);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        LATENCY_RECORDER_CLASS_NAME,
+                        "read",
+                        "(" + SOCKET_DESCRIPTOR + ")V",
+                        false);
+            }
+
+            @Override
+            protected String[] getHandledExceptionTypes() {
+                return new String[] {SOCKET_TIMEOUT_EXCEPTION_CLASS_NAME};
+            }
+
+            @Override
+            protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+                // TimeoutCounters.readTimeout(this.parent);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "parent", SOCKET_DESCRIPTOR);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        TIMEOUT_COUNTERS_CLASS_NAME,
+                        "readTimeout",
+                        "(" + SOCKET_DESCRIPTOR + ")V",
+                        false);
+            }
+        };
+    }
+}
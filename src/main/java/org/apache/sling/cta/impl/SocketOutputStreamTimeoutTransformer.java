@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.Socket;
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import org.apache.sling.cta.runtime.Deadlines;
+import org.apache.sling.cta.runtime.LatencyRecorder;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Marks the start of the time to first byte of <code>java.net.Socket</code> instances
+ *
+ * <p>Hooks into the output stream returned by <code>Socket.getOutputStream()</code>, which exists since Java 13, see
+ * {@link LatencyRecorder#written()}. Sockets written to are associated with the HTTP call in progress on the writing
+ * thread, which covers pooled connections, see {@link Deadlines#using(Socket)}.</p>
+ */
+class SocketOutputStreamTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String SOCKET_OUTPUT_STREAM_CLASS_NAME = "java/net/Socket$SocketOutputStream";
+    private static final String SOCKET_DESCRIPTOR = Type.getDescriptor(Socket.class);
+    private static final String LATENCY_RECORDER_CLASS_NAME = Type.getInternalName(LatencyRecorder.class);
+    private static final String DEADLINES_CLASS_NAME = Type.getInternalName(Deadlines.class);
+
+    public SocketOutputStreamTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(SOCKET_OUTPUT_STREAM_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        CtMethod write = cc.getDeclaredMethod(
+                "write", new CtClass[] {cc.getClassPool().get("byte[]"), CtClass.intType, CtClass.intType});
+        write.insertBefore(Deadlines.class.getName() + ".using(parent);");
+        write.insertAfter(LatencyRecorder.class.getName() + ".written();");
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        return new MethodTransformingClassVisitor(next, "write", "([BII)V") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // Deadlines.using(this.parent);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, getClassName(), "parent", SOCKET_DESCRIPTOR);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "using", "(" + SOCKET_DESCRIPTOR + ")V", false);
+            }
+
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                // LatencyRecorder.written();
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, LATENCY_RECORDER_CLASS_NAME, "written", "()V", false);
+            }
+        };
+    }
+}
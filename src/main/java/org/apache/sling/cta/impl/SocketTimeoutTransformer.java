@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import javassist.CtClass;
+import javassist.CtMethod;
+
+import org.apache.sling.cta.runtime.Deadlines;
+import org.apache.sling.cta.runtime.HostPolicies;
+import org.apache.sling.cta.runtime.LatencyRecorder;
+import org.apache.sling.cta.runtime.SocketDefaults;
+import org.apache.sling.cta.runtime.TimeoutCounters;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Applies the host timeout policies to <code>java.net.Socket</code> instances
+ *
+ * <p>Clients such as Apache HttpClient or OkHttp get the default timeouts when they are created, before the host is
+ * known. This transformer hooks into <code>connect(SocketAddress, int)</code> and <code>setSoTimeout(int)</code>
+ * so that the default timeouts are replaced with the ones from the policy matching the remote host, see
+ * {@link HostPolicies#connectTimeoutMillis(SocketAddress, int)} and
+ * {@link HostPolicies#readTimeoutMillis(Socket, int)}.</p>
+ *
+ * <p>If enabled, sockets without timeouts get the default ones first, see {@link SocketDefaults}. Both the legacy
+ * and the NIO socket implementations used since Java 13 are reached through these methods, so the implementations
+ * themselves are not transformed.</p>
+ *
+ * <p>Connect timeouts are counted as well, see {@link TimeoutCounters#connectTimeout(SocketAddress)}, and the
+ * duration of successful connects is recorded, see {@link LatencyRecorder#connectCompleted(SocketAddress)}. The
+ * socket is associated with the HTTP call in progress on the connecting thread, see
+ * {@link Deadlines#using(Socket)}.</p>
+ */
+class SocketTimeoutTransformer extends MBeanAwareTimeoutTransformer {
+
+    private static final String SOCKET_CLASS_NAME = Type.getInternalName(Socket.class);
+    private static final String SOCKET_ADDRESS_DESCRIPTOR = Type.getDescriptor(SocketAddress.class);
+    private static final String HOST_POLICIES_CLASS_NAME = Type.getInternalName(HostPolicies.class);
+    private static final String SOCKET_TIMEOUT_EXCEPTION_CLASS_NAME =
+            Type.getInternalName(SocketTimeoutException.class);
+    private static final String TIMEOUT_COUNTERS_CLASS_NAME = Type.getInternalName(TimeoutCounters.class);
+    private static final String LATENCY_RECORDER_CLASS_NAME = Type.getInternalName(LatencyRecorder.class);
+    private static final String DEADLINES_CLASS_NAME = Type.getInternalName(Deadlines.class);
+    private static final String SOCKET_DEFAULTS_CLASS_NAME = Type.getInternalName(SocketDefaults.class);
+
+    public SocketTimeoutTransformer(AgentInfo agentInfo) {
+        super(agentInfo, Collections.singleton(SOCKET_CLASS_NAME));
+    }
+
+    @Override
+    protected boolean requiresRuntimeClasses() {
+        return true;
+    }
+
+    @Override
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
+
+        CtMethod connect = cc.getDeclaredMethod(
+                "connect", new CtClass[] {cc.getClassPool().get(SocketAddress.class.getName()), CtClass.intType});
+        connect.insertBefore("$2 = " + HostPolicies.class.getName() + ".connectTimeoutMillis($1, "
+                + SocketDefaults.class.getName() + ".connectTimeoutMillis($1, $2)); "
+                + LatencyRecorder.class.getName() + ".connectStarted(); "
+                + Deadlines.class.getName() + ".using(this);");
+        connect.insertAfter(LatencyRecorder.class.getName() + ".connectCompleted($1); " + SocketDefaults.class.getName()
+                + ".connected(this, $1);");
+        connect.addCatch(
+                "{ " + TimeoutCounters.class.getName() + ".connectTimeout($1); throw $e; }",
+                cc.getClassPool().get(SocketTimeoutException.class.getName()));
+
+        CtMethod setSoTimeout = cc.getDeclaredMethod("setSoTimeout", new CtClass[] {CtClass.intType});
+        setSoTimeout.insertBefore("$1 = " + HostPolicies.class.getName() + ".readTimeoutMillis(this, "
+                + SocketDefaults.class.getName() + ".readTimeoutMillis(this, $1));");
+
+        return cc.toBytecode();
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        ClassVisitor setSoTimeout = new MethodTransformingClassVisitor(next, "setSoTimeout", "(I)V") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // timeout = HostPolicies.readTimeoutMillis(this, SocketDefaults.readTimeoutMillis(this, timeout));
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        SOCKET_DEFAULTS_CLASS_NAME,
+                        "readTimeoutMillis",
+                        "(L" + SOCKET_CLASS_NAME + ";I)I",
+                        false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        HOST_POLICIES_CLASS_NAME,
+                        "readTimeoutMillis",
+                        "(L" + SOCKET_CLASS_NAME + ";I)I",
+                        false);
+                mv.visitVarInsn(Opcodes.ISTORE, 1);
+            }
+        };
+
+        return new MethodTransformingClassVisitor(setSoTimeout, "connect", "(" + SOCKET_ADDRESS_DESCRIPTOR + "I)V") {
+            @Override
+            protected void onMethodEnter(MethodVisitor mv) {
+                // timeout = HostPolicies.connectTimeoutMillis(endpoint,
+                //         SocketDefaults.connectTimeoutMillis(endpoint, timeout));
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitVarInsn(Opcodes.ILOAD, 2);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        SOCKET_DEFAULTS_CLASS_NAME,
+                        "connectTimeoutMillis",
+                        "(" + SOCKET_ADDRESS_DESCRIPTOR + "I)I",
+                        false);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        HOST_POLICIES_CLASS_NAME,
+                        "connectTimeoutMillis",
+                        "(" + SOCKET_ADDRESS_DESCRIPTOR + "I)I",
+                        false);
+                mv.visitVarInsn(Opcodes.ISTORE, 2);
+                // LatencyRecorder.connectStarted();
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, LATENCY_RECORDER_CLASS_NAME, "connectStarted", "()V", false);
+                // Deadlines.using(this);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, DEADLINES_CLASS_NAME, "using", "(L" + SOCKET_CLASS_NAME + ";)V", false);
+            }
+
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                // LatencyRecorder.connectCompleted(endpoint);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        LATENCY_RECORDER_CLASS_NAME,
+                        "connectCompleted",
+                        "(" + SOCKET_ADDRESS_DESCRIPTOR + ")V",
+                        false);
+                // SocketDefaults.connected(this, endpoint);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        SOCKET_DEFAULTS_CLASS_NAME,
+                        "connected",
+                        "(L" + SOCKET_CLASS_NAME + ";" + SOCKET_ADDRESS_DESCRIPTOR + ")V",
+                        false);
+            }
+
+            @Override
+            protected String[] getHandledExceptionTypes() {
+                return new String[] {SOCKET_TIMEOUT_EXCEPTION_CLASS_NAME};
+            }
+
+            @Override
+            protected void onMethodThrow(MethodVisitor mv, String exceptionType) {
+                // TimeoutCounters.connectTimeout(endpoint);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        TIMEOUT_COUNTERS_CLASS_NAME,
+                        "connectTimeout",
+                        "(" + SOCKET_ADDRESS_DESCRIPTOR + ")V",
+                        false);
+            }
+        };
+    }
+}
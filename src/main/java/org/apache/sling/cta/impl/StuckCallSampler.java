@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples the stack traces of all threads to find the ones blocked in a socket connect or read for
+ * longer than a threshold
+ *
+ * <p>This finds stuck calls made by code the agent does not transform, e.g. clients using a custom socket factory.
+ * A thread is considered blocked when one of its top {@value #MAX_BLOCKED_FRAMES} frames connects or reads a
+ * <code>java.net.Socket</code>, and it is considered stuck when consecutive samples find it with the same stack
+ * trace without it using more than {@value #MAX_CPU_PERCENT}% CPU time in between, which tells a blocked read apart
+ * from a loop of short reads. The duration is measured from the first sample that found the thread blocked, so it is
+ * underestimated by at most the sampling interval.</p>
+ *
+ * <p>Sampling stops all threads briefly, so its cost is bounded: only the top {@value #MAX_DEPTH} frames are
+ * collected, and the interval is stretched so that sampling takes at most {@value #MAX_SAMPLING_PERCENT}% of the
+ * time of the sampling thread. At most {@value #MAX_REPORTED} stuck calls are reported, the longest first.</p>
+ */
+final class StuckCallSampler implements Runnable {
+
+    static final int MAX_DEPTH = 32;
+    static final int MAX_BLOCKED_FRAMES = 8;
+    static final int SIGNATURE_FRAMES = 5;
+    static final int MAX_CPU_PERCENT = 1;
+    static final int MAX_SAMPLING_PERCENT = 1;
+    static final int MAX_REPORTED = 100;
+
+    private final long thresholdNanos;
+    private final long intervalNanos;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTime = threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "connection-timeout-agent-stuck-calls");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // only accessed by the sampling thread
+    private Map<Long, Observation> observations = new HashMap<>();
+    private boolean warmedUp;
+
+    private volatile List<StuckCall> stuckCalls = Collections.emptyList();
+
+    /**
+     * Creates a new instance
+     *
+     * @param thresholdMillis the time after which a blocked thread is reported, in milliseconds
+     * @param intervalMillis the time between two samples, in milliseconds
+     */
+    StuckCallSampler(long thresholdMillis, long intervalMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * Starts sampling on a daemon thread
+     */
+    void start() {
+        executor.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the stuck calls found by the last sample
+     *
+     * @return the stuck calls, the longest first
+     */
+    List<StuckCall> getStuckCalls() {
+        return stuckCalls;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        try {
+            sample(start);
+        } catch (RuntimeException e) {
+            // keep the schedule running
+            Log.get().log("Failed sampling the threads: %s", e);
+        }
+        long elapsed = System.nanoTime() - start;
+        // the first sample loads the management classes, its duration says nothing about the cost of sampling
+        long delay = warmedUp ? Math.max(intervalNanos, elapsed * (100 / MAX_SAMPLING_PERCENT)) : intervalNanos;
+        warmedUp = true;
+        executor.schedule(this, delay, TimeUnit.NANOSECONDS);
+    }
+
+    void sample(long now) {
+        Map<Long, Observation> next = new HashMap<>();
+        List<StuckCall> stuck = new ArrayList<>();
+
+        for (ThreadInfo info : threads.dumpAllThreads(false, false, MAX_DEPTH)) {
+            StackTraceElement[] stack = info.getStackTrace();
+            int blockedFrame = findBlockedFrame(stack);
+            if (blockedFrame == -1) continue;
+
+            long threadId = info.getThreadId();
+            long cpuNanos = cpuTime ? threads.getThreadCpuTime(threadId) : -1;
+            Observation previous = observations.get(threadId);
+            Observation current = previous != null && previous.isSameCall(stack, cpuNanos, now)
+                    ? new Observation(stack, cpuNanos, now, previous.since, previous.reported)
+                    : new Observation(stack, cpuNanos, now, now, false);
+            next.put(threadId, current);
+
+            long durationNanos = now - current.since;
+            if (durationNanos < thresholdNanos) continue;
+
+            StuckCall call = new StuckCall(
+                    threadId,
+                    info.getThreadName(),
+                    operationOf(stack[blockedFrame]),
+                    signatureOf(stack, blockedFrame),
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos));
+            stuck.add(call);
+            if (!current.reported) {
+                current.reported = true;
+                Log.get()
+                        .log(
+                                "Thread '%s' blocked in socket %s for %d milliseconds at %s",
+                                call.getThreadName(),
+                                call.getOperation(),
+                                call.getDurationMillis(),
+                                call.getSignature());
+            }
+        }
+
+        stuck.sort(Comparator.comparingLong(StuckCall::getDurationMillis).reversed());
+        observations = next;
+        stuckCalls =
+                Collections.unmodifiableList(new ArrayList<>(stuck.subList(0, Math.min(stuck.size(), MAX_REPORTED))));
+    }
+
+    /**
+     * Finds the frame connecting or reading a socket among the top frames of a stack trace
+     *
+     * <p>Java 13 and newer use <code>sun.nio.ch.NioSocketImpl</code>, older versions
+     * <code>java.net.SocketInputStream</code> and <code>java.net.PlainSocketImpl</code>.</p>
+     *
+     * @param stack the stack trace
+     * @return the index of the frame, or <code>-1</code> if the thread is not blocked in a socket
+     */
+    static int findBlockedFrame(StackTraceElement[] stack) {
+        for (int i = 0; i < Math.min(stack.length, MAX_BLOCKED_FRAMES); i++) {
+            if (operationOf(stack[i]) != null) return i;
+        }
+        return -1;
+    }
+
+    private static String operationOf(StackTraceElement frame) {
+        String className = frame.getClassName();
+        String methodName = frame.getMethodName();
+        if (className.equals("sun.nio.ch.NioSocketImpl")) {
+            if (methodName.equals("implRead") || methodName.equals("timedRead")) return "read";
+            if (methodName.equals("connect") || methodName.equals("timedFinishConnect")) return "connect";
+        } else if (className.equals("java.net.SocketInputStream") && methodName.equals("socketRead0")) {
+            return "read";
+        } else if (className.equals("java.net.PlainSocketImpl") && methodName.equals("socketConnect")) {
+            return "connect";
+        }
+        return null;
+    }
+
+    /**
+     * Describes where a blocked socket is used, by the first frames below the socket and TLS implementation
+     *
+     * @param stack the stack trace
+     * @param blockedFrame the index of the frame connecting or reading the socket
+     * @return the frames, separated by <code> &lt; </code>
+     */
+    static String signatureOf(StackTraceElement[] stack, int blockedFrame) {
+        int first = blockedFrame;
+        while (first < stack.length && isSocketImplementation(stack[first].getClassName())) first++;
+
+        StringBuilder signature = new StringBuilder();
+        for (int i = first; i < Math.min(stack.length, first + SIGNATURE_FRAMES); i++) {
+            if (signature.length() > 0) signature.append(" < ");
+            StackTraceElement frame = stack[i];
+            signature.append(frame.getClassName()).append('.').append(frame.getMethodName());
+            if (frame.getLineNumber() > 0) signature.append(':').append(frame.getLineNumber());
+        }
+        return signature.toString();
+    }
+
+    private static boolean isSocketImplementation(String className) {
+        return className.startsWith("java.")
+                || className.startsWith("sun.nio.")
+                || className.startsWith("sun.security.ssl.")
+                || className.startsWith("jdk.internal.");
+    }
+
+    /**
+     * A thread found blocked in a socket
+     */
+    private static final class Observation {
+        private final StackTraceElement[] stack;
+        private final long cpuNanos;
+        private final long sampledAt;
+        private final long since;
+        private boolean reported;
+
+        Observation(StackTraceElement[] stack, long cpuNanos, long sampledAt, long since, boolean reported) {
+            this.stack = stack;
+            this.cpuNanos = cpuNanos;
+            this.sampledAt = sampledAt;
+            this.since = since;
+            this.reported = reported;
+        }
+
+        boolean isSameCall(StackTraceElement[] currentStack, long currentCpuNanos, long now) {
+            if (!Arrays.equals(stack, currentStack)) return false;
+            if (cpuNanos == -1 || currentCpuNanos == -1) return true;
+            // a thread doing many short reads may be sampled at the same place, but uses CPU time in between
+            return (currentCpuNanos - cpuNanos) * 100 <= (now - sampledAt) * MAX_CPU_PERCENT;
+        }
+    }
+
+    /**
+     * A thread blocked in a socket for longer than the threshold
+     */
+    static final class StuckCall {
+        private final long threadId;
+        private final String threadName;
+        private final String operation;
+        private final String signature;
+        private final long durationMillis;
+
+        StuckCall(long threadId, String threadName, String operation, String signature, long durationMillis) {
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.operation = operation;
+            this.signature = signature;
+            this.durationMillis = durationMillis;
+        }
+
+        long getThreadId() {
+            return threadId;
+        }
+
+        String getThreadName() {
+            return threadName;
+        }
+
+        String getOperation() {
+            return operation;
+        }
+
+        String getSignature() {
+            return signature;
+        }
+
+        long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import java.util.List;
+
+/**
+ * Converts the calls found by the {@link StuckCallSampler} to open data
+ */
+final class StuckCallsTable {
+
+    static final TabularType TABULAR_TYPE;
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final String[] ITEM_NAMES = {"threadId", "threadName", "operation", "signature", "durationMillis"};
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType(
+                    "StuckCall",
+                    "A thread blocked in a socket for longer than the threshold",
+                    ITEM_NAMES,
+                    new String[] {
+                        "The thread id",
+                        "The thread name",
+                        "The blocked socket operation, connect or read",
+                        "The first frames below the socket implementation",
+                        "The time since the thread was first found blocked, in milliseconds"
+                    },
+                    new OpenType<?>[] {
+                        SimpleType.LONG, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.LONG
+                    });
+            TABULAR_TYPE = new TabularType(
+                    "StuckCalls", "The threads blocked in a socket", ROW_TYPE, new String[] {"threadId"});
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private StuckCallsTable() {}
+
+    /**
+     * Converts the stuck calls
+     *
+     * @param stuckCalls the stuck calls
+     * @return the stuck calls, of type {@link #TABULAR_TYPE}
+     * @throws OpenDataException in case the calls cannot be converted
+     */
+    static TabularData toTabularData(List<StuckCallSampler.StuckCall> stuckCalls) throws OpenDataException {
+        TabularData data = new TabularDataSupport(TABULAR_TYPE);
+        for (StuckCallSampler.StuckCall call : stuckCalls) {
+            data.put(new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] {
+                call.getThreadId(),
+                call.getThreadName(),
+                call.getOperation(),
+                call.getSignature(),
+                call.getDurationMillis()
+            }));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.sling.cta.runtime.TimeoutPolicy;
+
+/**
+ * Reads the host timeout policies from a text file
+ *
+ * <p>Each line contains a host pattern, the connect timeout and the read timeout, in milliseconds, separated by
+ * whitespace. Empty lines and lines starting with <code>#</code> are ignored. The policies are evaluated in the
+ * order in which they are listed, for instance:</p>
+ *
+ * <pre>
+ * # internal services
+ * *.internal.example.com 500 500
+ * 10.0.0.0/8             500 500
+ * # slow partner API
+ * partner.example.org    30000 30000
+ * </pre>
+ */
+final class TimeoutPolicyFile {
+
+    /**
+     * Reads the policies
+     *
+     * @param path the path to the file
+     * @return the policies, in the order in which they are listed
+     * @throws IllegalArgumentException if the file cannot be read or contains invalid entries
+     */
+    static List<TimeoutPolicy> read(Path path) {
+        List<TimeoutPolicy> policies = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.split("\\s+");
+                try {
+                    if (parts.length != 3)
+                        throw new IllegalArgumentException("expected <host-pattern> <connect-timeout> <read-timeout>");
+                    policies.add(new TimeoutPolicy(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(
+                            "Invalid timeout policy at " + path + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read timeout policies from " + path, e);
+        }
+        return policies;
+    }
+
+    // prevent instantiation
+    private TimeoutPolicyFile() {}
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import org.apache.sling.cta.runtime.HostPolicies;
+import org.apache.sling.cta.runtime.TimeoutDefaults;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates the code that obtains a default timeout inside a transformed class
+ *
+ * <p>The {@link #RUNTIME} source reads the timeouts from {@link TimeoutDefaults} each time, so that they can be
+ * changed while the JVM is running. When the host is known, the timeouts are selected by {@link HostPolicies}. It can only be used for classes that can access {@link TimeoutDefaults}, see
+ * {@link RuntimeClasses#isAccessibleFrom(Module, ClassLoader, java.lang.instrument.Instrumentation)}. The
+ * {@link #CONSTANT} source inlines the values in effect when the class is transformed.</p>
+ */
+abstract class TimeoutSource {
+
+    /**
+     * The timeouts handled by the agent
+     */
+    enum Timeout {
+        CONNECT("getConnectTimeoutMillis", "connectTimeoutMillis"),
+        READ("getReadTimeoutMillis", "readTimeoutMillis");
+
+        private final String getterName;
+        private final String policyMethodName;
+
+        Timeout(String getterName, String policyMethodName) {
+            this.getterName = getterName;
+            this.policyMethodName = policyMethodName;
+        }
+
+        long currentValue() {
+            return this == CONNECT ? TimeoutDefaults.getConnectTimeoutMillis() : TimeoutDefaults.getReadTimeoutMillis();
+        }
+    }
+
+    private static final String TIMEOUT_DEFAULTS_CLASS_NAME = Type.getInternalName(TimeoutDefaults.class);
+    private static final String HOST_POLICIES_CLASS_NAME = Type.getInternalName(HostPolicies.class);
+
+    static final TimeoutSource RUNTIME = new TimeoutSource() {
+        @Override
+        String toSource(Timeout timeout, Class<?> type) {
+            String call = TimeoutDefaults.class.getName() + "." + timeout.getterName + "()";
+            return isInt(type) ? "((int) " + call + ")" : call;
+        }
+
+        @Override
+        String toSource(Timeout timeout, Class<?> type, String targetExpression) {
+            String call = HostPolicies.class.getName() + "." + timeout.policyMethodName + "(" + targetExpression + ")";
+            return isInt(type) ? "((int) " + call + ")" : call;
+        }
+
+        @Override
+        void load(MethodVisitor mv, Timeout timeout, Class<?> type) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, TIMEOUT_DEFAULTS_CLASS_NAME, timeout.getterName, "()J", false);
+            if (isInt(type)) mv.visitInsn(Opcodes.L2I);
+        }
+
+        @Override
+        void loadForTarget(MethodVisitor mv, Timeout timeout, Class<?> type, Class<?> targetType) {
+            mv.visitMethodInsn(
+                    Opcodes.INVOKESTATIC,
+                    HOST_POLICIES_CLASS_NAME,
+                    timeout.policyMethodName,
+                    "(" + Type.getDescriptor(targetType) + ")J",
+                    false);
+            if (isInt(type)) mv.visitInsn(Opcodes.L2I);
+        }
+
+        @Override
+        public String toString() {
+            return "runtime";
+        }
+    };
+
+    static final TimeoutSource CONSTANT = new TimeoutSource() {
+        @Override
+        String toSource(Timeout timeout, Class<?> type) {
+            long value = timeout.currentValue();
+            return isInt(type) ? String.valueOf((int) value) : value + "L";
+        }
+
+        @Override
+        String toSource(Timeout timeout, Class<?> type, String targetExpression) {
+            return toSource(timeout, type);
+        }
+
+        @Override
+        void load(MethodVisitor mv, Timeout timeout, Class<?> type) {
+            long value = timeout.currentValue();
+            if (isInt(type)) mv.visitLdcInsn((int) value);
+            else mv.visitLdcInsn(value);
+        }
+
+        @Override
+        void loadForTarget(MethodVisitor mv, Timeout timeout, Class<?> type, Class<?> targetType) {
+            mv.visitInsn(Opcodes.POP);
+            load(mv, timeout, type);
+        }
+
+        @Override
+        public String toString() {
+            return "constant";
+        }
+    };
+
+    /**
+     * Returns a javassist source expression evaluating to the timeout
+     *
+     * @param timeout the timeout
+     * @param type the type of the expression, either <code>int.class</code> or <code>long.class</code>
+     * @return the source expression
+     */
+    abstract String toSource(Timeout timeout, Class<?> type);
+
+    /**
+     * Returns a javassist source expression evaluating to the timeout for the host of a target
+     *
+     * @param timeout the timeout
+     * @param type the type of the expression, either <code>int.class</code> or <code>long.class</code>
+     * @param targetExpression a source expression evaluating to the target, a <code>java.net.URL</code> or a
+     *     <code>java.net.URI</code>
+     * @return the source expression
+     */
+    abstract String toSource(Timeout timeout, Class<?> type, String targetExpression);
+
+    /**
+     * Emits the instructions that push the timeout on the operand stack
+     *
+     * @param mv the method visitor
+     * @param timeout the timeout
+     * @param type the type of the pushed value, either <code>int.class</code> or <code>long.class</code>
+     */
+    abstract void load(MethodVisitor mv, Timeout timeout, Class<?> type);
+
+    /**
+     * Emits the instructions that replace the target on top of the operand stack with the timeout for its host
+     *
+     * @param mv the method visitor
+     * @param timeout the timeout
+     * @param type the type of the pushed value, either <code>int.class</code> or <code>long.class</code>
+     * @param targetType the type of the target, either <code>java.net.URL</code> or <code>java.net.URI</code>
+     */
+    abstract void loadForTarget(MethodVisitor mv, Timeout timeout, Class<?> type, Class<?> targetType);
+
+    private static boolean isInt(Class<?> type) {
+        if (type == int.class) return true;
+        if (type == long.class) return false;
+        throw new IllegalArgumentException("Unsupported timeout type " + type);
+    }
+}
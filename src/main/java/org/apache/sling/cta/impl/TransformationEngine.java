@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.util.Locale;
+
+/**
+ * The bytecode engines that can be used for transforming classes
+ */
+enum TransformationEngine {
+
+    /**
+     * Compiles Java source snippets using javassist, supported by all transformers
+     */
+    JAVASSIST,
+    /**
+     * Emits the bytecode directly using ASM visitors, without compiling source code at class load time
+     *
+     * <p>Transformers that do not support this engine fall back to {@link #JAVASSIST}.</p>
+     */
+    ASM;
+
+    /**
+     * Parses an engine name, as passed in the agent arguments
+     *
+     * @param value the engine name, case-insensitive, may be <code>null</code>
+     * @return the engine, {@link #JAVASSIST} if the value is <code>null</code>
+     * @throws IllegalArgumentException in case the value is not a known engine name
+     */
+    static TransformationEngine fromString(String value) {
+        if (value == null) return JAVASSIST;
+
+        return valueOf(value.toUpperCase(Locale.ROOT));
+    }
+}
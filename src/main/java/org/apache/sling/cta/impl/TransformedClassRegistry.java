@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import java.lang.ref.WeakReference;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the classes transformed by the agent, one entry for each class name and defining class loader
+ *
+ * <p>Classes are transformed by whichever thread loads them, possibly in parallel when using parallel capable
+ * class loaders, so the entries are kept in a concurrent map. Retransforming a class updates the existing entry.
+ * Class loaders are weakly referenced, since a class is transformed again for each new class loader, e.g. after
+ * an OSGi bundle is refreshed.</p>
+ *
+ * <p>The number of entries is bounded. When the limit is reached, the entries of garbage collected class loaders
+ * are removed first, then the least recently transformed entry. Concurrent registrations may exceed the limit by
+ * the number of registering threads.</p>
+ */
+final class TransformedClassRegistry {
+
+    static final TabularType TABULAR_TYPE;
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final String[] ITEM_NAMES = {
+        "className", "classLoader", "firstTransformed", "lastTransformed", "transformCount"
+    };
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType(
+                    "TransformedClass",
+                    "A class transformed by the agent",
+                    ITEM_NAMES,
+                    new String[] {
+                        "The class name",
+                        "The defining class loader",
+                        "The time of the first transformation",
+                        "The time of the last transformation",
+                        "The number of transformations"
+                    },
+                    new OpenType<?>[] {
+                        SimpleType.STRING, SimpleType.STRING, SimpleType.DATE, SimpleType.DATE, SimpleType.INTEGER
+                    });
+            TABULAR_TYPE = new TabularType(
+                    "TransformedClasses", "The classes transformed by the agent", ROW_TYPE, new String[] {
+                        "className", "classLoader"
+                    });
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int maxSize;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    TransformedClassRegistry(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Records a transformation
+     *
+     * @param className the internal name of the class
+     * @param loader the defining class loader, <code>null</code> for the bootstrap class loader
+     */
+    void register(String className, ClassLoader loader) {
+        long now = System.currentTimeMillis();
+        Key key = new Key(className, loader);
+
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (entries.size() >= maxSize) evict();
+            entry = entries.putIfAbsent(key, new Entry(className, describe(loader), now));
+            if (entry == null) return;
+        }
+        entry.transformed(now);
+    }
+
+    /**
+     * Returns the names of the transformed classes
+     *
+     * @return the class names, without duplicates
+     */
+    String[] getClassNames() {
+        return entries.keySet().stream()
+                .map(k -> k.className)
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Returns the transformed classes
+     *
+     * @return the transformed classes, of type {@link #TABULAR_TYPE}
+     * @throws OpenDataException in case the entries cannot be converted
+     */
+    TabularData toTabularData() throws OpenDataException {
+        TabularData data = new TabularDataSupport(TABULAR_TYPE);
+        for (Entry entry : entries.values()) {
+            CompositeData row = new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] {
+                entry.className,
+                entry.classLoader,
+                new Date(entry.firstTransformed),
+                new Date(entry.lastTransformed),
+                entry.transformCount.get()
+            });
+            // a collected class loader may share the identity hash code, and therefore the description, of a live one
+            if (!data.containsKey(data.calculateIndex(row))) data.put(row);
+        }
+        return data;
+    }
+
+    private void evict() {
+        entries.keySet().removeIf(Key::isCollected);
+        if (entries.size() < maxSize) return;
+
+        Map.Entry<Key, Entry> oldest = null;
+        for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+            if (oldest == null || candidate.getValue().lastTransformed < oldest.getValue().lastTransformed)
+                oldest = candidate;
+        }
+        if (oldest != null) entries.remove(oldest.getKey(), oldest.getValue());
+    }
+
+    private static String describe(ClassLoader loader) {
+        if (loader == null) return "bootstrap";
+
+        String id = loader.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(loader));
+        return loader.getName() != null ? loader.getName() + " (" + id + ")" : id;
+    }
+
+    private static final class Key {
+        private final String className;
+        private final int loaderHash;
+        private final WeakReference<ClassLoader> loader; // null for the bootstrap class loader
+
+        Key(String className, ClassLoader loader) {
+            this.className = className;
+            this.loaderHash = System.identityHashCode(loader);
+            this.loader = loader != null ? new WeakReference<>(loader) : null;
+        }
+
+        boolean isCollected() {
+            return loader != null && loader.get() == null;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * className.hashCode() + loaderHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            if (loaderHash != other.loaderHash || !className.equals(other.className)) return false;
+            if (loader == null || other.loader == null) return loader == other.loader;
+            // entries of collected class loaders are only equal to themselves
+            ClassLoader referent = loader.get();
+            return referent != null && referent == other.loader.get();
+        }
+    }
+
+    private static final class Entry {
+        private final String className;
+        private final String classLoader;
+        private final long firstTransformed;
+        private volatile long lastTransformed;
+        private final AtomicInteger transformCount = new AtomicInteger();
+
+        Entry(String className, String classLoader, long firstTransformed) {
+            this.className = className;
+            this.classLoader = classLoader;
+            this.firstTransformed = firstTransformed;
+            this.lastTransformed = firstTransformed;
+            this.transformCount.set(1);
+        }
+
+        void transformed(long timestamp) {
+            lastTransformed = timestamp;
+            transformCount.incrementAndGet();
+        }
+    }
+}
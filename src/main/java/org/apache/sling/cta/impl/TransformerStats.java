@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularType;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the transformations done by a transformer and the time spent in them
+ *
+ * <p>Classes are transformed by whichever thread loads them, so the counters are striped to avoid contention
+ * between class loading threads. The values are read without synchronization, so a snapshot may be slightly
+ * inconsistent while transformations are in progress.</p>
+ */
+final class TransformerStats {
+
+    static final TabularType TABULAR_TYPE;
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final String[] ITEM_NAMES = {
+        "transformer", "matched", "succeeded", "failed", "skipped", "totalNanos", "maxNanos"
+    };
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType(
+                    "TransformerStats",
+                    "The transformations done by a transformer",
+                    ITEM_NAMES,
+                    new String[] {
+                        "The transformer class name",
+                        "The number of classes handled by the transformer",
+                        "The number of successful transformations",
+                        "The number of failed transformations",
+                        "The number of classes not transformed as they cannot access the runtime classes",
+                        "The total time spent transforming classes, in nanoseconds",
+                        "The longest time spent transforming a class, in nanoseconds"
+                    },
+                    new OpenType<?>[] {
+                        SimpleType.STRING,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        SimpleType.LONG
+                    });
+            TABULAR_TYPE = new TabularType(
+                    "TransformerStats", "The transformations done by each transformer", ROW_TYPE, new String[] {
+                        "transformer"
+                    });
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String transformer;
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    TransformerStats(String transformer) {
+        this.transformer = transformer;
+    }
+
+    void matched() {
+        matched.increment();
+    }
+
+    void skipped() {
+        skipped.increment();
+    }
+
+    void succeeded(long nanos) {
+        succeeded.increment();
+        recordTime(nanos);
+    }
+
+    void failed(long nanos) {
+        failed.increment();
+        recordTime(nanos);
+    }
+
+    private void recordTime(long nanos) {
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Returns the current values
+     *
+     * @return the values, a row of {@link #TABULAR_TYPE}
+     * @throws OpenDataException in case the values cannot be converted
+     */
+    CompositeData toCompositeData() throws OpenDataException {
+        return new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] {
+            transformer, matched.sum(), succeeded.sum(), failed.sum(), skipped.sum(), totalNanos.sum(), maxNanos.get()
+        });
+    }
+}
@@ -19,11 +19,21 @@
 package org.apache.sling.cta.impl;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import javassist.CtClass;
 import javassist.CtConstructor;
 import javassist.CtField;
+import javassist.NotFoundException;
 import javassist.bytecode.Descriptor;
 
+import org.apache.sling.cta.impl.TimeoutSource.Timeout;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
 /**
  * Support class for transformers that update the timeout fields in the default constructor
  */
@@ -31,37 +41,71 @@ public abstract class UpdateFieldsInConstructorTimeoutTransformer extends MBeanA
 
     private final String connectTimeoutFieldName;
     private final String readTimeoutFieldName;
-    private final long connectTimeoutMillis;
-    private final long readTimeoutMillis;
 
     public UpdateFieldsInConstructorTimeoutTransformer(
-            String className,
-            String connectTimeoutFieldName,
-            String readTimeoutFieldName,
-            long connectTimeoutMillis,
-            long readTimeoutMillis,
-            AgentInfo agentInfo) {
+            String className, String connectTimeoutFieldName, String readTimeoutFieldName, AgentInfo agentInfo) {
 
         super(agentInfo, Collections.singleton(className));
 
         this.connectTimeoutFieldName = connectTimeoutFieldName;
         this.readTimeoutFieldName = readTimeoutFieldName;
-        this.connectTimeoutMillis = connectTimeoutMillis;
-        this.readTimeoutMillis = readTimeoutMillis;
     }
 
     @Override
-    protected byte[] doTransformClass(CtClass cc) throws Exception {
+    protected byte[] doTransformClass(CtClass cc, TimeoutSource timeouts) throws Exception {
 
         CtConstructor noArgCtor = cc.getConstructor(Descriptor.ofConstructor(new CtClass[0]));
         CtField connectTimeout = cc.getDeclaredField(connectTimeoutFieldName);
         CtField readTimeout = cc.getDeclaredField(readTimeoutFieldName);
-        noArgCtor.insertAfter("this." + connectTimeout.getName() + " = " + connectTimeoutMillis + ";");
-        noArgCtor.insertAfter("this." + readTimeout.getName() + " = " + readTimeoutMillis + ";");
+        noArgCtor.insertAfter("this." + connectTimeout.getName() + " = "
+                + timeouts.toSource(Timeout.CONNECT, typeOf(connectTimeout)) + ";");
+        noArgCtor.insertAfter(
+                "this." + readTimeout.getName() + " = " + timeouts.toSource(Timeout.READ, typeOf(readTimeout)) + ";");
 
         byte[] classfileBuffer = cc.toBytecode();
         cc.detach();
 
         return classfileBuffer;
     }
+
+    private static Class<?> typeOf(CtField field) throws NotFoundException {
+        if (field.getType() == CtClass.longType) return long.class;
+        if (field.getType() == CtClass.intType) return int.class;
+        throw new IllegalStateException("Unsupported type " + field.getType().getName() + " for field "
+                + field.getName() + " in class " + field.getDeclaringClass().getName());
+    }
+
+    @Override
+    protected ClassVisitor newClassVisitor(ClassVisitor next, TimeoutSource timeouts) {
+        Map<String, String> fieldDescriptors = new HashMap<>();
+        return new MethodTransformingClassVisitor(next, "<init>", "()V") {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                // fields are visited before methods
+                fieldDescriptors.put(name, descriptor);
+                return super.visitField(access, name, descriptor, signature, value);
+            }
+
+            @Override
+            protected void onMethodExit(MethodVisitor mv) {
+                setField(mv, connectTimeoutFieldName, Timeout.CONNECT);
+                setField(mv, readTimeoutFieldName, Timeout.READ);
+            }
+
+            // this.field = timeout;
+            private void setField(MethodVisitor mv, String fieldName, Timeout timeout) {
+                String descriptor = fieldDescriptors.get(fieldName);
+                if (descriptor == null)
+                    throw new IllegalStateException("Field " + fieldName + " not found in class " + getClassName());
+
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                if (Type.LONG_TYPE.getDescriptor().equals(descriptor)) timeouts.load(mv, timeout, long.class);
+                else if (Type.INT_TYPE.getDescriptor().equals(descriptor)) timeouts.load(mv, timeout, int.class);
+                else
+                    throw new IllegalStateException("Unsupported type " + descriptor + " for field " + fieldName
+                            + " in class " + getClassName());
+                mv.visitFieldInsn(Opcodes.PUTFIELD, getClassName(), fieldName, descriptor);
+            }
+        };
+    }
 }
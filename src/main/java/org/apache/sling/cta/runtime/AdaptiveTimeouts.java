@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the timeouts learned for each host from the observed latencies
+ *
+ * <p>The learned timeouts are computed by the agent and replace the {@link TimeoutDefaults} for hosts without a
+ * {@link TimeoutPolicy}, see {@link HostPolicies}. They are clamped between the configured floor and the default
+ * timeouts when read, so that lowering the defaults takes effect immediately. Default timeouts of 0 are kept, as
+ * they disable the timeout.</p>
+ *
+ * <p>The methods used by the transformed code never throw exceptions.</p>
+ */
+public final class AdaptiveTimeouts {
+
+    /**
+     * Value of a timeout that was not learned yet
+     */
+    public static final long UNKNOWN = -1;
+
+    static final int MAX_HOSTS = 256;
+
+    private static volatile boolean enabled;
+    private static volatile long floorMillis;
+
+    private static final Map<String, Learned> LEARNED = new ConcurrentHashMap<>();
+
+    /**
+     * Enables or disables the learned timeouts
+     *
+     * @param enabled whether the learned timeouts are applied
+     * @param floorMillis the lowest timeout applied, in milliseconds
+     * @throws IllegalArgumentException if the floor is invalid
+     */
+    public static void configure(boolean enabled, long floorMillis) {
+        AdaptiveTimeouts.floorMillis = TimeoutDefaults.checkTimeout("floor", floorMillis);
+        AdaptiveTimeouts.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static long getFloorMillis() {
+        return floorMillis;
+    }
+
+    /**
+     * Sets the timeouts learned for a host
+     *
+     * <p>Hosts over the limit are ignored, unless they already have learned timeouts.</p>
+     *
+     * @param host the host
+     * @param connectTimeoutMillis the connect timeout, or {@link #UNKNOWN}
+     * @param readTimeoutMillis the read timeout, or {@link #UNKNOWN}
+     */
+    public static void setLearned(String host, long connectTimeoutMillis, long readTimeoutMillis) {
+        if (LEARNED.size() >= MAX_HOSTS && !LEARNED.containsKey(host)) return;
+        LEARNED.put(host, new Learned(host, connectTimeoutMillis, readTimeoutMillis));
+    }
+
+    /**
+     * Returns the learned timeouts for a host
+     *
+     * @param host the host
+     * @return the learned timeouts, or <code>null</code>
+     */
+    public static Learned getLearned(String host) {
+        return LEARNED.get(host);
+    }
+
+    /**
+     * Returns all learned timeouts
+     *
+     * @return the learned timeouts, one for each host
+     */
+    public static List<Learned> getLearned() {
+        return new ArrayList<>(LEARNED.values());
+    }
+
+    // entry points for HostPolicies
+
+    static long connectTimeoutMillis(String host, long defaultTimeoutMillis) {
+        Learned learned = enabled && host != null ? LEARNED.get(host) : null;
+        return learned != null ? clamp(learned.connectTimeoutMillis, defaultTimeoutMillis) : defaultTimeoutMillis;
+    }
+
+    static long readTimeoutMillis(String host, long defaultTimeoutMillis) {
+        Learned learned = enabled && host != null ? LEARNED.get(host) : null;
+        return learned != null ? clamp(learned.readTimeoutMillis, defaultTimeoutMillis) : defaultTimeoutMillis;
+    }
+
+    private static long clamp(long learnedMillis, long defaultTimeoutMillis) {
+        if (learnedMillis == UNKNOWN || defaultTimeoutMillis == 0) return defaultTimeoutMillis;
+        return Math.min(Math.max(learnedMillis, floorMillis), defaultTimeoutMillis);
+    }
+
+    /**
+     * The timeouts learned for a host, before clamping
+     */
+    public static final class Learned {
+        private final String host;
+        private final long connectTimeoutMillis;
+        private final long readTimeoutMillis;
+
+        Learned(String host, long connectTimeoutMillis, long readTimeoutMillis) {
+            this.host = host;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public long getReadTimeoutMillis() {
+            return readTimeoutMillis;
+        }
+
+        /**
+         * Returns the connect timeout applied to the host
+         *
+         * @return the learned timeout clamped to the current floor and default, in milliseconds
+         */
+        public long getEffectiveConnectTimeoutMillis() {
+            return clamp(connectTimeoutMillis, TimeoutDefaults.getConnectTimeoutMillis());
+        }
+
+        /**
+         * Returns the read timeout applied to the host
+         *
+         * @return the learned timeout clamped to the current floor and default, in milliseconds
+         */
+        public long getEffectiveReadTimeoutMillis() {
+            return clamp(readTimeoutMillis, TimeoutDefaults.getReadTimeoutMillis());
+        }
+    }
+
+    // prevent instantiation
+    private AdaptiveTimeouts() {}
+}
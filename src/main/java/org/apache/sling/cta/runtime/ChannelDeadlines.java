@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.Channel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Applies the {@link TimeoutDefaults} to socket channels, which have no timeouts of their own
+ *
+ * <p>Blocking <code>SocketChannel</code> connects and reads ignore the socket timeouts. When the
+ * {@link SocketDefaults} are enabled, blocking connects, and blocking reads of the channels connected this way, get a
+ * deadline tracked by the {@link TimingWheel} shared with the {@link Deadlines}. When it passes, the channel is
+ * closed, which fails the blocked operation, and the failure is reported as a <code>SocketTimeoutException</code>,
+ * like for sockets.</p>
+ *
+ * <p><code>AsynchronousSocketChannel</code> operations returning a future have no timeout either. Connects get a
+ * deadline which closes the channel if the connect is still pending, the future then fails with an
+ * <code>InterruptedByTimeoutException</code>. Reads of the channels connected this way get the default read timeout,
+ * which the channel enforces itself, failing the future with the same exception.</p>
+ *
+ * <p>Channels accepted by servers are not covered, neither are the hosts excluded from the socket defaults. The
+ * timeouts are subject to the {@link HostPolicies}. The methods used by the transformed code never throw
+ * exceptions.</p>
+ */
+public final class ChannelDeadlines {
+
+    // the deadline of the blocking operation in progress on the current thread
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    // the remote address of the channels connected by the application, weakly referenced
+    private static final Map<Channel, SocketAddress> CLIENT_CHANNELS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // entry points for transformed socket channels
+
+    public static void connecting(SocketChannel channel, SocketAddress remote) {
+        if (!SocketDefaults.isEnabled()) return;
+
+        try {
+            if (!channel.isBlocking() || !SocketDefaults.appliesTo(remote)) return;
+            start(channel, HostPolicies.connectTimeoutMillis(remote, (int) TimeoutDefaults.getConnectTimeoutMillis()));
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void connected(SocketChannel channel, SocketAddress remote) {
+        finish();
+        if (!SocketDefaults.isEnabled()) return;
+
+        try {
+            if (SocketDefaults.appliesTo(remote)) CLIENT_CHANNELS.put(channel, remote);
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static Throwable connectFailed(SocketAddress remote, Throwable e) {
+        if (!finish() || !(e instanceof IOException)) return e;
+
+        TimeoutCounters.connectTimeout(remote);
+        return timeoutException("Connect timed out", e);
+    }
+
+    public static void reading(SocketChannel channel) {
+        if (!SocketDefaults.isEnabled()) return;
+
+        try {
+            if (!channel.isBlocking()) return;
+            SocketAddress remote = CLIENT_CHANNELS.get(channel);
+            if (remote == null) return;
+            start(channel, HostPolicies.readTimeoutMillis(remote, (int) TimeoutDefaults.getReadTimeoutMillis()));
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void readCompleted() {
+        finish();
+    }
+
+    public static Throwable readFailed(SocketChannel channel, Throwable e) {
+        if (!finish() || !(e instanceof IOException)) return e;
+
+        TimeoutCounters.readTimeout(CLIENT_CHANNELS.get(channel));
+        return timeoutException("Read timed out", e);
+    }
+
+    // entry points for transformed asynchronous socket channels
+
+    public static Future<Void> connectFuture(
+            Future<Void> future, AsynchronousSocketChannel channel, SocketAddress remote) {
+        if (!SocketDefaults.isEnabled()) return future;
+
+        try {
+            if (!SocketDefaults.appliesTo(remote)) return future;
+            CLIENT_CHANNELS.put(channel, remote);
+
+            int timeout = HostPolicies.connectTimeoutMillis(remote, (int) TimeoutDefaults.getConnectTimeoutMillis());
+            if (timeout <= 0 || future.isDone()) return future;
+            PendingConnect pending = new PendingConnect(future, channel, remote, deadlineNanos(timeout));
+            TimingWheel.shared().schedule(pending);
+            return pending;
+        } catch (RuntimeException e) {
+            return future;
+        }
+    }
+
+    public static long readFutureTimeout(
+            AsynchronousSocketChannel channel, long timeout, TimeUnit unit, CompletionHandler<?, ?> handler) {
+        // reads with a completion handler take a timeout
+        if (timeout != 0 || handler != null || !SocketDefaults.isEnabled()) return timeout;
+
+        try {
+            SocketAddress remote = CLIENT_CHANNELS.get(channel);
+            if (remote == null) return timeout;
+            int millis = HostPolicies.readTimeoutMillis(remote, (int) TimeoutDefaults.getReadTimeoutMillis());
+            return millis > 0 ? Math.max(1, unit.convert(millis, TimeUnit.MILLISECONDS)) : timeout;
+        } catch (RuntimeException e) {
+            return timeout;
+        }
+    }
+
+    private static void start(Channel channel, int timeoutMillis) {
+        finish();
+        if (timeoutMillis <= 0) return;
+
+        Deadline deadline = new Deadline(channel, deadlineNanos(timeoutMillis));
+        CURRENT.set(deadline);
+        TimingWheel.shared().schedule(deadline);
+    }
+
+    /**
+     * Ends the blocking operation of the current thread
+     *
+     * @return <code>true</code> if the channel was closed because the deadline passed
+     */
+    private static boolean finish() {
+        Deadline deadline = CURRENT.get();
+        if (deadline == null) return false;
+
+        CURRENT.remove();
+        return !TimingWheel.shared().cancel(deadline);
+    }
+
+    private static long deadlineNanos(int timeoutMillis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    private static IOException timeoutException(String message, Throwable cause) {
+        SocketTimeoutException e = new SocketTimeoutException(message);
+        e.initCause(cause);
+        // point to the failed operation, not to the agent
+        e.setStackTrace(cause.getStackTrace());
+        return e;
+    }
+
+    private static void close(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the channel is unusable either way
+        }
+    }
+
+    /**
+     * The deadline of a blocking connect or read
+     */
+    private static final class Deadline extends TimingWheel.Entry {
+
+        private final Channel channel;
+
+        Deadline(Channel channel, long deadlineNanos) {
+            super(deadlineNanos);
+            this.channel = channel;
+        }
+
+        @Override
+        void expire() {
+            close(channel);
+        }
+    }
+
+    /**
+     * A connect future, closing the channel if the connect is still pending when the deadline passes
+     */
+    private static final class PendingConnect extends TimingWheel.Entry implements Future<Void> {
+
+        private final Future<Void> future;
+        private final Channel channel;
+        private final SocketAddress remote;
+
+        PendingConnect(Future<Void> future, Channel channel, SocketAddress remote, long deadlineNanos) {
+            super(deadlineNanos);
+            this.future = future;
+            this.channel = channel;
+            this.remote = remote;
+        }
+
+        @Override
+        void expire() {
+            if (future.isDone()) return;
+            TimeoutCounters.connectTimeout(remote);
+            close(channel);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            TimingWheel.shared().cancel(this);
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            try {
+                Void result = future.get();
+                TimingWheel.shared().cancel(this);
+                return result;
+            } catch (ExecutionException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                Void result = future.get(timeout, unit);
+                TimingWheel.shared().cancel(this);
+                return result;
+            } catch (ExecutionException e) {
+                throw translate(e);
+            }
+        }
+
+        private ExecutionException translate(ExecutionException e) {
+            if (!isExpired() || !(e.getCause() instanceof AsynchronousCloseException)) return e;
+
+            InterruptedByTimeoutException timeout = new InterruptedByTimeoutException();
+            timeout.initCause(e.getCause());
+            return new ExecutionException(timeout);
+        }
+    }
+
+    // prevent instantiation
+    private ChannelDeadlines() {}
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces a deadline on the total duration of HTTP calls
+ *
+ * <p>Read timeouts only bound the wait between two bytes, so a server sending the response slowly can block the
+ * calling thread for much longer. The transformed HTTP clients mark the start and the end of each call on the
+ * calling thread, and the sockets connected or written to by the thread in between are associated with the call.
+ * When the deadline passes, the socket in use is closed, which fails the blocked connect, read or write. Sockets the
+ * client opens afterwards for the same call, e.g. for retrying it, are closed as well.</p>
+ *
+ * <p>A call ends when the client method returns, so the deadline covers connecting, sending the request, following
+ * redirects and receiving the response headers. Reading the response body afterwards is only bounded by the read
+ * timeout. Nested calls, e.g. a client calling itself, are part of the outermost call.</p>
+ *
+ * <p>The deadlines are tracked by the {@link TimingWheel#shared() shared timing wheel}, running on a single daemon
+ * thread. The methods used by the transformed code never throw exceptions.</p>
+ */
+public final class Deadlines {
+
+    private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+    private static final LongAdder EXCEEDED = new LongAdder();
+
+    private static volatile long deadlineMillis;
+
+    /**
+     * Sets the deadline of the calls started from now on, starting the watchdog thread if needed
+     *
+     * @param deadlineMillis the deadline, in milliseconds, 0 for no deadline
+     * @throws IllegalArgumentException if the deadline is negative or does not fit in an <code>int</code>
+     */
+    public static synchronized void setDeadlineMillis(long deadlineMillis) {
+        TimeoutDefaults.checkTimeout("deadline", deadlineMillis);
+        // starts the watchdog thread outside of the calls
+        if (deadlineMillis > 0) TimingWheel.shared();
+        Deadlines.deadlineMillis = deadlineMillis;
+    }
+
+    public static long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Returns the number of calls aborted because the deadline passed
+     *
+     * @return the number of calls
+     */
+    public static long getExceededCount() {
+        return EXCEEDED.sum();
+    }
+
+    // entry points for the transformed classes
+
+    /**
+     * Marks the start of a call on the current thread
+     *
+     * <p>Must be followed by {@link #end()} on the same thread, including when the call fails.</p>
+     */
+    public static void begin() {
+        Call call = CURRENT.get();
+        if (call != null) {
+            call.depth++;
+            return;
+        }
+
+        long millis = deadlineMillis;
+        if (millis == 0) return;
+
+        call = new Call(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+        CURRENT.set(call);
+        TimingWheel.shared().schedule(call);
+    }
+
+    /**
+     * Marks the end of the call started on the current thread
+     */
+    public static void end() {
+        Call call = CURRENT.get();
+        if (call == null) return;
+        if (call.depth > 0) {
+            call.depth--;
+            return;
+        }
+
+        CURRENT.remove();
+        TimingWheel.shared().cancel(call);
+    }
+
+    /**
+     * Associates a socket with the call of the current thread, if any
+     *
+     * @param socket the socket about to be connected or written to
+     */
+    public static void using(Socket socket) {
+        Call call = CURRENT.get();
+        if (call == null) return;
+
+        call.socket = socket;
+        // the deadline may have passed before the socket was associated
+        if (call.isExpired()) call.abort();
+    }
+
+    /**
+     * A call in progress
+     */
+    private static final class Call extends TimingWheel.Entry {
+
+        // only accessed by the calling thread
+        private int depth;
+
+        private volatile Socket socket;
+
+        Call(long deadlineNanos) {
+            super(deadlineNanos);
+        }
+
+        @Override
+        void expire() {
+            EXCEEDED.increment();
+            abort();
+        }
+
+        void abort() {
+            Socket current = socket;
+            if (current == null) return;
+            try {
+                current.close();
+            } catch (IOException e) {
+                // the socket is unusable either way
+            }
+        }
+    }
+
+    // prevent instantiation
+    private Deadlines() {}
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Selects the timeouts for a host based on an ordered table of {@link TimeoutPolicy policies}
+ *
+ * <p>The first matching policy wins. Hosts without a matching policy get the {@link TimeoutDefaults}, or the
+ * {@link AdaptiveTimeouts} learned for them, if enabled. The methods used by the transformed code never throw
+ * exceptions.</p>
+ *
+ * <p>Lookup results are kept in bounded, lock-free caches, so that the policies are only evaluated once per host
+ * as long as the host stays in the cache. Each cache slot holds a single entry, replaced when a different host maps
+ * to the same slot. Replacing the policies discards the caches.</p>
+ */
+public final class HostPolicies {
+
+    static final int CACHE_SIZE = 1024;
+
+    private static volatile Table table = new Table(new TimeoutPolicy[0]);
+
+    /**
+     * Replaces the policies
+     *
+     * @param policies the policies, in the order in which they are evaluated
+     */
+    public static void setPolicies(List<TimeoutPolicy> policies) {
+        table = new Table(policies.toArray(new TimeoutPolicy[0]));
+    }
+
+    /**
+     * Returns the active policies
+     *
+     * @return the policies, in the order in which they are evaluated
+     */
+    public static List<TimeoutPolicy> getPolicies() {
+        return Collections.unmodifiableList(Arrays.asList(table.policies));
+    }
+
+    /**
+     * Returns the policy for a host
+     *
+     * @param host the host name or IP address literal, may be <code>null</code>
+     * @param address the resolved address, may be <code>null</code>
+     * @return the first matching policy, or <code>null</code>
+     */
+    public static TimeoutPolicy getPolicy(String host, InetAddress address) {
+        Table current = table;
+        if (current.policies.length == 0) return null;
+
+        TimeoutPolicy policy = host != null ? current.forHost(host) : null;
+        if (policy == null && address != null && current.hasAddressPolicies) policy = current.forAddress(address);
+        return policy;
+    }
+
+    // entry points for transformed URL connections and HTTP clients
+
+    public static long connectTimeoutMillis(URL url) {
+        return connectTimeoutMillis(url.getHost());
+    }
+
+    public static long readTimeoutMillis(URL url) {
+        return readTimeoutMillis(url.getHost());
+    }
+
+    public static long connectTimeoutMillis(URI uri) {
+        return connectTimeoutMillis(uri != null ? uri.getHost() : null);
+    }
+
+    public static long readTimeoutMillis(URI uri) {
+        return readTimeoutMillis(uri != null ? uri.getHost() : null);
+    }
+
+    // entry points for transformed sockets
+
+    /**
+     * Adjusts the connect timeout of a socket
+     *
+     * <p>Clients that only know the host when connecting, e.g. Apache HttpClient, get the {@link TimeoutDefaults}
+     * applied when they are created. Timeouts equal to the default are therefore assumed to be set by the agent and
+     * are replaced by the timeout from the matching policy, if any.</p>
+     *
+     * @param endpoint the endpoint
+     * @param timeout the connect timeout requested by the caller
+     * @return the connect timeout to use
+     */
+    public static int connectTimeoutMillis(SocketAddress endpoint, int timeout) {
+        if (timeout == 0 || timeout != TimeoutDefaults.getConnectTimeoutMillis()) return timeout;
+        if (table.policies.length == 0 && !AdaptiveTimeouts.isEnabled()) return timeout;
+        if (!(endpoint instanceof InetSocketAddress)) return timeout;
+
+        InetSocketAddress address = (InetSocketAddress) endpoint;
+        TimeoutPolicy policy = getPolicySafely(address.getHostString(), address.getAddress());
+        if (policy != null) return (int) policy.getConnectTimeoutMillis();
+        return (int) AdaptiveTimeouts.connectTimeoutMillis(address.getHostString(), timeout);
+    }
+
+    /**
+     * Adjusts the read timeout of a connected socket
+     *
+     * @param socket the socket
+     * @param timeout the read timeout requested by the caller
+     * @return the read timeout to use
+     * @see #connectTimeoutMillis(SocketAddress, int)
+     */
+    public static int readTimeoutMillis(Socket socket, int timeout) {
+        if (timeout == 0 || timeout != TimeoutDefaults.getReadTimeoutMillis()) return timeout;
+        if (table.policies.length == 0 && !AdaptiveTimeouts.isEnabled()) return timeout;
+        if (!socket.isConnected()) return timeout;
+
+        try {
+            // does not perform a reverse lookup, unlike InetAddress.getHostName()
+            return readTimeoutMillis(socket.getRemoteSocketAddress(), timeout);
+        } catch (RuntimeException e) {
+            return timeout;
+        }
+    }
+
+    /**
+     * Adjusts the read timeout of a connection to an endpoint
+     *
+     * @param endpoint the remote endpoint
+     * @param timeout the read timeout requested by the caller
+     * @return the read timeout to use
+     * @see #connectTimeoutMillis(SocketAddress, int)
+     */
+    public static int readTimeoutMillis(SocketAddress endpoint, int timeout) {
+        if (timeout == 0 || timeout != TimeoutDefaults.getReadTimeoutMillis()) return timeout;
+        if (table.policies.length == 0 && !AdaptiveTimeouts.isEnabled()) return timeout;
+        if (!(endpoint instanceof InetSocketAddress)) return timeout;
+
+        try {
+            InetSocketAddress address = (InetSocketAddress) endpoint;
+            TimeoutPolicy policy = getPolicy(address.getHostString(), address.getAddress());
+            if (policy != null) return (int) policy.getReadTimeoutMillis();
+            return (int) AdaptiveTimeouts.readTimeoutMillis(address.getHostString(), timeout);
+        } catch (RuntimeException e) {
+            return timeout;
+        }
+    }
+
+    static long connectTimeoutMillis(String host) {
+        TimeoutPolicy policy = getPolicySafely(host, null);
+        if (policy != null) return policy.getConnectTimeoutMillis();
+        return AdaptiveTimeouts.connectTimeoutMillis(host, TimeoutDefaults.getConnectTimeoutMillis());
+    }
+
+    static long readTimeoutMillis(String host) {
+        TimeoutPolicy policy = getPolicySafely(host, null);
+        if (policy != null) return policy.getReadTimeoutMillis();
+        return AdaptiveTimeouts.readTimeoutMillis(host, TimeoutDefaults.getReadTimeoutMillis());
+    }
+
+    private static TimeoutPolicy getPolicySafely(String host, InetAddress address) {
+        try {
+            return getPolicy(host, address);
+        } catch (RuntimeException e) {
+            // never break a connection attempt because of the agent
+            return null;
+        }
+    }
+
+    /**
+     * Immutable set of policies along with the caches for the lookup results
+     */
+    private static final class Table {
+
+        private final TimeoutPolicy[] policies;
+        private final boolean hasAddressPolicies;
+        private final AtomicReferenceArray<Entry> hostCache = new AtomicReferenceArray<>(CACHE_SIZE);
+        private final AtomicReferenceArray<Entry> addressCache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+        Table(TimeoutPolicy[] policies) {
+            this.policies = policies;
+            boolean addressPolicies = false;
+            for (TimeoutPolicy policy : policies) addressPolicies |= policy.isAddressPolicy();
+            this.hasAddressPolicies = addressPolicies;
+        }
+
+        TimeoutPolicy forHost(String host) {
+            int slot = slot(host.hashCode());
+            Entry entry = hostCache.get(slot);
+            if (entry != null && entry.key.equals(host)) return entry.policy;
+
+            TimeoutPolicy match = null;
+            for (TimeoutPolicy policy : policies) {
+                if (policy.matchesHost(host)) {
+                    match = policy;
+                    break;
+                }
+            }
+            hostCache.lazySet(slot, new Entry(host, match));
+            return match;
+        }
+
+        TimeoutPolicy forAddress(InetAddress address) {
+            int slot = slot(address.hashCode());
+            Entry entry = addressCache.get(slot);
+            if (entry != null && entry.key.equals(address)) return entry.policy;
+
+            TimeoutPolicy match = null;
+            for (TimeoutPolicy policy : policies) {
+                if (policy.matchesAddress(address)) {
+                    match = policy;
+                    break;
+                }
+            }
+            addressCache.lazySet(slot, new Entry(address, match));
+            return match;
+        }
+
+        private static int slot(int hash) {
+            // spread the high bits, as the low bits of address hashes are often similar
+            return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        }
+    }
+
+    /**
+     * Cached lookup result, <code>policy</code> is <code>null</code> if no policy matches
+     */
+    private static final class Entry {
+        private final Object key;
+        private final TimeoutPolicy policy;
+
+        Entry(Object key, TimeoutPolicy policy) {
+            this.key = key;
+            this.policy = policy;
+        }
+    }
+
+    // prevent instantiation
+    private HostPolicies() {}
+}
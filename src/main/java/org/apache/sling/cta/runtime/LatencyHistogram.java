@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Histogram of durations with a fixed memory footprint
+ *
+ * <p>Durations are recorded in microseconds into logarithmic buckets: values below {@value #SUB_BUCKETS} have their
+ * own bucket, larger ones are split into {@value #SUB_BUCKETS} buckets for each power of two, which bounds the
+ * relative error to 12.5%. Durations longer than about 19 hours are recorded in the last bucket.</p>
+ *
+ * <p>Recording only increments a bucket atomically and never blocks. Reading the percentiles is done on a copy of
+ * the buckets, which may be slightly inconsistent while durations are recorded.</p>
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 35;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration
+     *
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(indexOf(micros));
+        maxMicros.accumulate(micros);
+    }
+
+    /**
+     * Returns the recorded durations at the specified percentiles
+     *
+     * <p>The upper bound of the bucket containing the percentile is returned, but never more than the maximum
+     * recorded duration.</p>
+     *
+     * @param percentiles the percentiles, between 0 and 100
+     * @return the durations in microseconds, one for each percentile, all 0 if nothing was recorded
+     */
+    public long[] getValuesAtPercentiles(double... percentiles) {
+        long[] counts = getBucketCounts();
+        long max = maxMicros.get();
+        long[] values = new long[percentiles.length];
+        for (int p = 0; p < percentiles.length; p++)
+            values[p] = Math.min(getValueAtPercentile(counts, percentiles[p]), max);
+        return values;
+    }
+
+    /**
+     * Returns a copy of the bucket counts, e.g. for computing the percentiles of the durations recorded since an
+     * earlier copy with {@link #getValueAtPercentile(long[], double)}
+     *
+     * @return the bucket counts
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) counts[i] = buckets.get(i);
+        return counts;
+    }
+
+    /**
+     * Returns the duration at the specified percentile
+     *
+     * @param counts the bucket counts, as returned by {@link #getBucketCounts()}
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket containing the percentile, in microseconds, 0 if the counts are empty
+     */
+    public static long getValueAtPercentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) total += count;
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        int i = 0;
+        while (i < counts.length - 1 && (seen += counts[i]) < rank) i++;
+        return upperBoundOf(i);
+    }
+
+    /**
+     * Returns the number of recorded durations
+     *
+     * @return the count
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) total += buckets.get(i);
+        return total;
+    }
+
+    /**
+     * Returns the longest recorded duration
+     *
+     * @return the duration in microseconds, 0 if nothing was recorded
+     */
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude > MAX_MAGNITUDE) return BUCKET_COUNT - 1;
+        int subBucket = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBoundOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (magnitude - SUB_BUCKET_BITS);
+    }
+
+    static long upperBoundOf(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowerBoundOf(index + 1) - 1;
+    }
+}
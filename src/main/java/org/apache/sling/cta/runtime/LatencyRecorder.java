@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the connect duration and the time to first byte of sockets, for each host
+ *
+ * <p>The transformed socket classes call the entry points of this class, the methods never throw exceptions. The
+ * time to first byte is the time between the last write to a socket and the first read that follows it, on the same
+ * thread, which is how blocking HTTP clients send a request and wait for the response. The start times are kept
+ * per thread, so no state is attached to the sockets.</p>
+ *
+ * <p>The number of hosts is bounded, the durations for further hosts are recorded under {@link #OTHER_HOSTS}.</p>
+ */
+public final class LatencyRecorder {
+
+    static final int MAX_HOSTS = 256;
+
+    /**
+     * Host name used for the durations of hosts exceeding the maximum number of hosts
+     */
+    public static final String OTHER_HOSTS = "(other)";
+
+    private static final int CONNECT_START = 0;
+    private static final int LAST_WRITE = 1;
+
+    // start times in nanoseconds, 0 if not started
+    private static final ThreadLocal<long[]> START_TIMES = ThreadLocal.withInitial(() -> new long[2]);
+
+    private static final Map<String, HostLatencies> LATENCIES = new ConcurrentHashMap<>();
+
+    private LatencyRecorder() {}
+
+    // entry points for transformed sockets
+
+    public static void connectStarted() {
+        try {
+            START_TIMES.get()[CONNECT_START] = System.nanoTime();
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void connectCompleted(SocketAddress endpoint) {
+        try {
+            long[] startTimes = START_TIMES.get();
+            long start = startTimes[CONNECT_START];
+            if (start == 0) return;
+            startTimes[CONNECT_START] = 0;
+            latenciesFor(hostOf(endpoint)).connect.record(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void written() {
+        try {
+            START_TIMES.get()[LAST_WRITE] = System.nanoTime();
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void read(Socket socket) {
+        try {
+            long[] startTimes = START_TIMES.get();
+            long start = startTimes[LAST_WRITE];
+            if (start == 0) return;
+            startTimes[LAST_WRITE] = 0;
+            latenciesFor(hostOf(socket.getRemoteSocketAddress())).firstByte.record(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    /**
+     * Returns the current latencies
+     *
+     * @return the latencies, one for each host
+     */
+    public static List<HostLatencies> getLatencies() {
+        return new ArrayList<>(LATENCIES.values());
+    }
+
+    /**
+     * Discards all recorded durations
+     *
+     * <p>Durations recorded concurrently with the reset may be lost.</p>
+     */
+    public static void reset() {
+        LATENCIES.clear();
+    }
+
+    private static String hostOf(SocketAddress address) {
+        return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getHostString() : OTHER_HOSTS;
+    }
+
+    private static HostLatencies latenciesFor(String host) {
+        HostLatencies latencies = LATENCIES.get(host);
+        if (latencies != null) return latencies;
+
+        if (LATENCIES.size() >= MAX_HOSTS) host = OTHER_HOSTS;
+        return LATENCIES.computeIfAbsent(host, HostLatencies::new);
+    }
+
+    /**
+     * The durations recorded for a host
+     */
+    public static final class HostLatencies {
+        private final String host;
+        private final LatencyHistogram connect = new LatencyHistogram();
+        private final LatencyHistogram firstByte = new LatencyHistogram();
+
+        HostLatencies(String host) {
+            this.host = host;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public LatencyHistogram getConnect() {
+            return connect;
+        }
+
+        public LatencyHistogram getFirstByte() {
+            return firstByte;
+        }
+    }
+}
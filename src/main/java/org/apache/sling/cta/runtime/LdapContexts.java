@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds the agent timeouts to the environment of LDAP contexts, and counts the contexts created for each host
+ *
+ * <p>The transformed <code>com.sun.jndi.ldap.LdapCtx</code> constructor passes its environment through
+ * {@link #withTimeouts(Hashtable, String)} before using it, the method never throws exceptions. The timeouts are
+ * selected based on the host of the directory server, like for sockets.</p>
+ *
+ * <p>The number of hosts is bounded, contexts for further hosts are counted under {@link #OTHER_HOSTS}.</p>
+ */
+public final class LdapContexts {
+
+    /**
+     * Environment property holding the LDAP connect timeout, in milliseconds
+     */
+    public static final String CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
+
+    /**
+     * Environment property holding the LDAP read timeout, in milliseconds
+     */
+    public static final String READ_TIMEOUT = "com.sun.jndi.ldap.read.timeout";
+
+    static final int MAX_ENTRIES = 256;
+
+    /**
+     * Host name used for the contexts of hosts exceeding the maximum number of entries
+     */
+    public static final String OTHER_HOSTS = "(other)";
+
+    private static final Map<String, Count> COUNTS = new ConcurrentHashMap<>();
+
+    private LdapContexts() {}
+
+    // entry point for the transformed context
+
+    /**
+     * Returns the environment of a new LDAP context, with the agent timeouts for the keys it lacks
+     *
+     * <p>The environment passed by the application is not modified, a copy is returned if timeouts are added.</p>
+     *
+     * @param environment the environment, possibly <code>null</code>
+     * @param host the host of the directory server, possibly <code>null</code> for the default one
+     * @return the environment to use
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Hashtable withTimeouts(Hashtable environment, String host) {
+        try {
+            boolean connectTimeoutMissing = environment == null || environment.get(CONNECT_TIMEOUT) == null;
+            boolean readTimeoutMissing = environment == null || environment.get(READ_TIMEOUT) == null;
+
+            Count count = countFor(host);
+            count.contexts.increment();
+            if (!connectTimeoutMissing && !readTimeoutMissing) return environment;
+
+            Hashtable withTimeouts = environment != null ? (Hashtable) environment.clone() : new Hashtable<>();
+            if (connectTimeoutMissing)
+                withTimeouts.put(CONNECT_TIMEOUT, String.valueOf(HostPolicies.connectTimeoutMillis(host)));
+            if (readTimeoutMissing) withTimeouts.put(READ_TIMEOUT, String.valueOf(HostPolicies.readTimeoutMillis(host)));
+            count.agentTimeoutContexts.increment();
+            return withTimeouts;
+        } catch (RuntimeException e) {
+            // never fail the caller
+            return environment;
+        }
+    }
+
+    /**
+     * Returns the current counts
+     *
+     * @return the counts, one for each host
+     */
+    public static List<Count> getCounts() {
+        return new ArrayList<>(COUNTS.values());
+    }
+
+    private static Count countFor(String host) {
+        String key = host != null ? host : OTHER_HOSTS;
+        Count count = COUNTS.get(key);
+        if (count != null) return count;
+
+        if (COUNTS.size() >= MAX_ENTRIES) key = OTHER_HOSTS;
+        return COUNTS.computeIfAbsent(key, Count::new);
+    }
+
+    /**
+     * The number of LDAP contexts created for a host
+     */
+    public static final class Count {
+        private final String host;
+        private final LongAdder contexts = new LongAdder();
+        private final LongAdder agentTimeoutContexts = new LongAdder();
+
+        Count(String host) {
+            this.host = host;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getContexts() {
+            return contexts.sum();
+        }
+
+        public long getAgentTimeoutContexts() {
+            return agentTimeoutContexts.sum();
+        }
+    }
+}
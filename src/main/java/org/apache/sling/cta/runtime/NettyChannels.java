@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the Netty client channels connected, for each host, and how many of them use the agent connect timeout
+ *
+ * <p>The transformed <code>io.netty.bootstrap.Bootstrap</code> calls {@link #connecting(SocketAddress, int)} before
+ * each channel connects, the method never throws exceptions. A channel is counted as using the agent connect timeout
+ * when its timeout equals the current one, so channels for which the application set the same value explicitly are
+ * counted as well.</p>
+ *
+ * <p>The number of hosts is bounded, channels to further hosts are counted under {@link #OTHER_HOSTS}.</p>
+ */
+public final class NettyChannels {
+
+    static final int MAX_ENTRIES = 256;
+
+    /**
+     * Host name used for the channels of hosts exceeding the maximum number of entries
+     */
+    public static final String OTHER_HOSTS = "(other)";
+
+    private static final Map<String, Count> COUNTS = new ConcurrentHashMap<>();
+
+    private NettyChannels() {}
+
+    // entry point for the transformed bootstrap
+
+    public static void connecting(SocketAddress remoteAddress, int connectTimeoutMillis) {
+        try {
+            String host = remoteAddress instanceof InetSocketAddress
+                    ? ((InetSocketAddress) remoteAddress).getHostString()
+                    : null;
+            Count count = countFor(host);
+            count.connects.increment();
+            if (connectTimeoutMillis == TimeoutDefaults.getConnectTimeoutMillis())
+                count.agentTimeoutConnects.increment();
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    /**
+     * Returns the current counts
+     *
+     * @return the counts, one for each host
+     */
+    public static List<Count> getCounts() {
+        return new ArrayList<>(COUNTS.values());
+    }
+
+    private static Count countFor(String host) {
+        String key = host != null ? host : OTHER_HOSTS;
+        Count count = COUNTS.get(key);
+        if (count != null) return count;
+
+        if (COUNTS.size() >= MAX_ENTRIES) key = OTHER_HOSTS;
+        return COUNTS.computeIfAbsent(key, Count::new);
+    }
+
+    /**
+     * The number of channels connected to a host
+     */
+    public static final class Count {
+        private final String host;
+        private final LongAdder connects = new LongAdder();
+        private final LongAdder agentTimeoutConnects = new LongAdder();
+
+        Count(String host) {
+            this.host = host;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getConnects() {
+            return connects.sum();
+        }
+
+        public long getAgentTimeoutConnects() {
+            return agentTimeoutConnects.sum();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Applies the {@link TimeoutDefaults} to plain sockets which would otherwise have no timeouts
+ *
+ * <p>Many clients, e.g. JDBC drivers or mail and directory clients, connect sockets without a timeout and never set
+ * a read timeout. When enabled, connects without a timeout get the default connect timeout, and sockets which have
+ * no read timeout once connected get the default read timeout. Sockets explicitly set to have no read timeout before
+ * connecting keep it, and the read timeout set by the application after connecting takes precedence. The defaults
+ * are subject to the {@link HostPolicies}, like the ones set by the HTTP clients.</p>
+ *
+ * <p>Hosts such as long-polling services can be excluded, using the patterns of the {@link TimeoutPolicy policies}
+ * and the {@link #LOOPBACK} keyword, which matches all loopback addresses and is excluded by default. The methods
+ * used by the transformed code never throw exceptions.</p>
+ */
+public final class SocketDefaults {
+
+    /**
+     * Exclusion matching the loopback addresses
+     */
+    public static final String LOOPBACK = "loopback";
+
+    // null if disabled
+    private static volatile Exclusions exclusions;
+
+    // sockets explicitly set to have no read timeout, weakly referenced since most are never connected
+    private static final Map<Socket, Boolean> UNTIMED_SOCKETS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Enables or disables the socket defaults
+     *
+     * @param enabled <code>true</code> to enable the socket defaults
+     * @param excludedHosts the host patterns to exclude, or {@link #LOOPBACK}
+     * @throws IllegalArgumentException if one of the patterns is invalid
+     */
+    public static void configure(boolean enabled, List<String> excludedHosts) {
+        exclusions = enabled ? new Exclusions(excludedHosts) : null;
+        UNTIMED_SOCKETS.clear();
+        // the socket channel deadlines start the watchdog thread outside of the calls
+        if (enabled) TimingWheel.shared();
+    }
+
+    public static boolean isEnabled() {
+        return exclusions != null;
+    }
+
+    /**
+     * Returns the excluded hosts
+     *
+     * @return the excluded host patterns, empty if disabled
+     */
+    public static List<String> getExcludedHosts() {
+        Exclusions current = exclusions;
+        return current != null ? current.patterns : Collections.emptyList();
+    }
+
+    /**
+     * Indicates whether the defaults apply to connections to an endpoint
+     *
+     * @param endpoint the endpoint
+     * @return <code>true</code> if enabled and the endpoint is not excluded
+     */
+    static boolean appliesTo(SocketAddress endpoint) {
+        Exclusions current = exclusions;
+        return current != null && !current.excludes(endpoint);
+    }
+
+    // entry points for transformed sockets
+
+    /**
+     * Applies the default connect timeout to connects without a timeout
+     *
+     * @param endpoint the endpoint
+     * @param timeout the connect timeout requested by the caller
+     * @return the connect timeout to use
+     */
+    public static int connectTimeoutMillis(SocketAddress endpoint, int timeout) {
+        Exclusions current = exclusions;
+        if (timeout != 0 || current == null) return timeout;
+
+        try {
+            if (current.excludes(endpoint)) return timeout;
+            return (int) TimeoutDefaults.getConnectTimeoutMillis();
+        } catch (RuntimeException e) {
+            // never break a connection attempt because of the agent
+            return timeout;
+        }
+    }
+
+    /**
+     * Records the sockets explicitly set to have no read timeout
+     *
+     * @param socket the socket
+     * @param timeout the read timeout requested by the caller
+     * @return the read timeout to use, which is always the requested one
+     */
+    public static int readTimeoutMillis(Socket socket, int timeout) {
+        if (timeout != 0 || exclusions == null) return timeout;
+
+        try {
+            UNTIMED_SOCKETS.put(socket, Boolean.TRUE);
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+        return timeout;
+    }
+
+    /**
+     * Applies the default read timeout to a connected socket which has none
+     *
+     * @param socket the socket
+     * @param endpoint the endpoint
+     */
+    public static void connected(Socket socket, SocketAddress endpoint) {
+        Exclusions current = exclusions;
+        if (current == null) return;
+
+        try {
+            if (UNTIMED_SOCKETS.remove(socket) != null) return;
+            int timeout = (int) TimeoutDefaults.getReadTimeoutMillis();
+            if (timeout == 0 || socket.getSoTimeout() != 0 || current.excludes(endpoint)) return;
+            socket.setSoTimeout(timeout);
+        } catch (IOException | RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    /**
+     * Immutable list of excluded hosts
+     */
+    private static final class Exclusions {
+
+        private final List<String> patterns;
+        private final boolean loopback;
+        private final TimeoutPolicy[] hosts;
+
+        Exclusions(List<String> excludedHosts) {
+            List<TimeoutPolicy> parsed = new ArrayList<>();
+            boolean excludesLoopback = false;
+            for (String pattern : excludedHosts) {
+                if (LOOPBACK.equals(pattern)) excludesLoopback = true;
+                // only used for matching, the timeouts are ignored
+                else parsed.add(new TimeoutPolicy(pattern, 0, 0));
+            }
+            this.patterns = Collections.unmodifiableList(new ArrayList<>(excludedHosts));
+            this.loopback = excludesLoopback;
+            this.hosts = parsed.toArray(new TimeoutPolicy[0]);
+        }
+
+        boolean excludes(SocketAddress endpoint) {
+            if (!loopback && hosts.length == 0) return false;
+            if (!(endpoint instanceof InetSocketAddress)) return false;
+
+            InetSocketAddress address = (InetSocketAddress) endpoint;
+            InetAddress resolved = address.getAddress();
+            if (loopback && resolved != null && resolved.isLoopbackAddress()) return true;
+            for (TimeoutPolicy host : hosts) {
+                if (host.matchesHost(address.getHostString())) return true;
+                if (resolved != null && host.matchesAddress(resolved)) return true;
+            }
+            return false;
+        }
+    }
+
+    // prevent instantiation
+    private SocketDefaults() {}
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Counts the connect and read timeouts fired, for each client type and host
+ *
+ * <p>The transformed classes call the entry points of this class when a timeout exception is thrown, the methods
+ * never throw exceptions themselves. Socket based clients are counted when the socket times out, and the client
+ * type is found by walking the stack, which is only done once a timeout fired.</p>
+ *
+ * <p>The counters are striped to avoid contention. The number of client and host pairs is bounded, timeouts for
+ * further hosts are counted under {@link #OTHER_HOSTS}.</p>
+ */
+public final class TimeoutCounters {
+
+    static final int MAX_ENTRIES = 1024;
+
+    /**
+     * Host name used for the timeouts of hosts exceeding the maximum number of entries
+     */
+    public static final String OTHER_HOSTS = "(other)";
+
+    /**
+     * Client type used for timeouts of sockets not created by one of the known clients
+     */
+    public static final String SOCKET_CLIENT = "Socket";
+
+    // innermost matching frame wins
+    private static final String[][] CLIENTS_BY_PACKAGE = {
+        {"sun.net.", "JavaNet"},
+        {"org.apache.commons.httpclient.", "HC3"},
+        {"org.apache.http.", "HC4"},
+        {"org.apache.hc.", "HC5"},
+        {"okhttp3.", "OkHttp"},
+        {"okio.", "OkHttp"},
+        {"com.sun.jndi.ldap.", "Ldap"}
+    };
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private static final Function<Stream<StackWalker.StackFrame>, Optional<String>> CLIENT_FINDER = frames ->
+            frames.map(f -> clientOf(f.getClassName())).filter(c -> c != null).findFirst();
+
+    private static final Map<Key, Count> COUNTS = new ConcurrentHashMap<>();
+
+    private TimeoutCounters() {}
+
+    // entry points for transformed sockets and socket channels
+
+    public static void connectTimeout(SocketAddress endpoint) {
+        try {
+            String host = endpoint instanceof InetSocketAddress ? ((InetSocketAddress) endpoint).getHostString() : null;
+            countFor(socketClient(), host).connectTimeouts.increment();
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void readTimeout(Socket socket) {
+        try {
+            readTimeout(socket.getRemoteSocketAddress());
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void readTimeout(SocketAddress remote) {
+        try {
+            String host = remote instanceof InetSocketAddress ? ((InetSocketAddress) remote).getHostString() : null;
+            countFor(socketClient(), host).readTimeouts.increment();
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    // entry points for transformed HTTP clients
+
+    public static void connectTimeout(String client, URI uri) {
+        try {
+            countFor(client, uri != null ? uri.getHost() : null).connectTimeouts.increment();
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    public static void readTimeout(String client, URI uri) {
+        try {
+            countFor(client, uri != null ? uri.getHost() : null).readTimeouts.increment();
+        } catch (RuntimeException e) {
+            // never fail the caller
+        }
+    }
+
+    /**
+     * Counts the timeouts of HTTP calls reported by a single exception type, e.g. <code>HttpTimeoutException</code>
+     *
+     * <p>The exception is counted as a connect timeout if it is an instance of a class named
+     * <code>connectTimeoutClassName</code>, and as a read timeout otherwise. Classes are matched by name so that
+     * this class does not link against the client classes.</p>
+     *
+     * @param e the timeout exception
+     * @param client the client type
+     * @param connectTimeoutClassName the name of the exception class signalling a connect timeout
+     * @param uri the request URI
+     */
+    public static void timeout(IOException e, String client, String connectTimeoutClassName, URI uri) {
+        try {
+            if (isInstanceOf(e, connectTimeoutClassName)) connectTimeout(client, uri);
+            else readTimeout(client, uri);
+        } catch (RuntimeException re) {
+            // never fail the caller
+        }
+    }
+
+    /**
+     * Counts the timeouts of OkHttp calls which are not visible on the socket
+     *
+     * <p>OkHttp enforces its read timeout by closing the socket, and reports it as a
+     * <code>SocketTimeoutException</code> with the <code>timeout</code> message. Timeouts of the socket itself are
+     * already counted.</p>
+     *
+     * @param e the exception thrown by the call
+     * @param host the host of the request
+     */
+    public static void okHttpTimeout(IOException e, String host) {
+        try {
+            if (e instanceof SocketTimeoutException && "timeout".equals(e.getMessage()))
+                countFor("OkHttp", host).readTimeouts.increment();
+        } catch (RuntimeException re) {
+            // never fail the caller
+        }
+    }
+
+    /**
+     * Returns the current counts
+     *
+     * @return the counts, one for each client type and host
+     */
+    public static List<Count> getCounts() {
+        return new ArrayList<>(COUNTS.values());
+    }
+
+    private static boolean isInstanceOf(Object o, String className) {
+        for (Class<?> c = o.getClass(); c != null; c = c.getSuperclass()) {
+            if (c.getName().equals(className)) return true;
+        }
+        return false;
+    }
+
+    static String clientOf(String className) {
+        for (String[] clientByPackage : CLIENTS_BY_PACKAGE) {
+            if (className.startsWith(clientByPackage[0])) return clientByPackage[1];
+        }
+        return null;
+    }
+
+    private static String socketClient() {
+        return STACK_WALKER.walk(CLIENT_FINDER).orElse(SOCKET_CLIENT);
+    }
+
+    private static Count countFor(String client, String host) {
+        Key key = new Key(client, host != null ? host : OTHER_HOSTS);
+        Count count = COUNTS.get(key);
+        if (count != null) return count;
+
+        if (COUNTS.size() >= MAX_ENTRIES) key = new Key(client, OTHER_HOSTS);
+        return COUNTS.computeIfAbsent(key, k -> new Count(k.client, k.host));
+    }
+
+    private static final class Key {
+        private final String client;
+        private final String host;
+
+        Key(String client, String host) {
+            this.client = client;
+            this.host = host;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * client.hashCode() + host.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return client.equals(other.client) && host.equals(other.host);
+        }
+    }
+
+    /**
+     * The number of timeouts fired for a client type and host
+     */
+    public static final class Count {
+        private final String client;
+        private final String host;
+        private final LongAdder connectTimeouts = new LongAdder();
+        private final LongAdder readTimeouts = new LongAdder();
+
+        Count(String client, String host) {
+            this.client = client;
+            this.host = host;
+        }
+
+        public String getClient() {
+            return client;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getConnectTimeouts() {
+            return connectTimeouts.sum();
+        }
+
+        public long getReadTimeouts() {
+            return readTimeouts.sum();
+        }
+    }
+}
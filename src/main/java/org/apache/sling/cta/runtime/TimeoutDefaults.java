@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+/**
+ * Holds the default timeouts read by the transformed classes
+ *
+ * <p>This class is referenced by classes defined in arbitrary class loaders, including the bootstrap class loader,
+ * which is why the agent makes it available to the bootstrap class loader. It must only depend on classes from
+ * <code>java.base</code>.</p>
+ *
+ * <p>The timeouts are kept in volatile fields so that changes are picked up by all threads without retransforming
+ * any class. Reading them does not allocate and is a plain memory load on common platforms.</p>
+ */
+public final class TimeoutDefaults {
+
+    private static volatile long connectTimeoutMillis = 60_000;
+    private static volatile long readTimeoutMillis = 60_000;
+
+    /**
+     * Returns the default connect timeout
+     *
+     * @return the connect timeout, in milliseconds
+     */
+    public static long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Returns the default read timeout
+     *
+     * @return the read timeout, in milliseconds
+     */
+    public static long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Sets the default connect timeout
+     *
+     * @param timeoutMillis the connect timeout, in milliseconds
+     * @throws IllegalArgumentException if the timeout is negative or does not fit in an <code>int</code>
+     */
+    public static void setConnectTimeoutMillis(long timeoutMillis) {
+        connectTimeoutMillis = checkTimeout("connect", timeoutMillis);
+    }
+
+    /**
+     * Sets the default read timeout
+     *
+     * @param timeoutMillis the read timeout, in milliseconds
+     * @throws IllegalArgumentException if the timeout is negative or does not fit in an <code>int</code>
+     */
+    public static void setReadTimeoutMillis(long timeoutMillis) {
+        readTimeoutMillis = checkTimeout("read", timeoutMillis);
+    }
+
+    static long checkTimeout(String name, long timeoutMillis) {
+        // some of the clients only accept int timeouts, e.g. java.net.URLConnection
+        if (timeoutMillis < 0 || timeoutMillis > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid " + name + " timeout " + timeoutMillis
+                    + ", expected a value between 0 and " + Integer.MAX_VALUE);
+        return timeoutMillis;
+    }
+
+    // prevent instantiation
+    private TimeoutDefaults() {}
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Timeouts applied to the hosts matching a pattern
+ *
+ * <p>The following patterns are supported:</p>
+ *
+ * <ul>
+ *   <li>exact host names, e.g. <code>api.example.com</code>, matched case-insensitively</li>
+ *   <li>wildcard suffixes, e.g. <code>*.example.com</code>, matching all sub-domains but not the domain itself</li>
+ *   <li>CIDR blocks, e.g. <code>10.0.0.0/8</code> or <code>fd00::/8</code>, matching IP addresses</li>
+ * </ul>
+ *
+ * <p>Instances are immutable.</p>
+ */
+public final class TimeoutPolicy {
+
+    private final String pattern;
+    private final long connectTimeoutMillis;
+    private final long readTimeoutMillis;
+
+    // exactly one of host, domainSuffix and network is set
+    private final String host;
+    private final String domainSuffix;
+    private final byte[] network;
+    private final int prefixLength;
+
+    /**
+     * Creates a new policy
+     *
+     * @param pattern the host pattern
+     * @param connectTimeoutMillis the connect timeout, in milliseconds
+     * @param readTimeoutMillis the read timeout, in milliseconds
+     * @throws IllegalArgumentException if the pattern or the timeouts are invalid
+     */
+    public TimeoutPolicy(String pattern, long connectTimeoutMillis, long readTimeoutMillis) {
+        this.pattern = pattern;
+        this.connectTimeoutMillis = TimeoutDefaults.checkTimeout("connect", connectTimeoutMillis);
+        this.readTimeoutMillis = TimeoutDefaults.checkTimeout("read", readTimeoutMillis);
+
+        int slash = pattern.indexOf('/');
+        if (slash != -1) {
+            byte[] address = parseAddressLiteral(pattern.substring(0, slash));
+            int length;
+            try {
+                length = Integer.parseInt(pattern.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+            if (address == null || length < 0 || length > address.length * 8)
+                throw new IllegalArgumentException("Invalid CIDR block " + pattern);
+            this.host = null;
+            this.domainSuffix = null;
+            this.network = address;
+            this.prefixLength = length;
+        } else if (pattern.startsWith("*.") && pattern.length() > 2 && pattern.indexOf('*', 1) == -1) {
+            this.host = null;
+            this.domainSuffix = pattern.substring(1);
+            this.network = null;
+            this.prefixLength = 0;
+        } else if (!pattern.isEmpty() && pattern.indexOf('*') == -1) {
+            this.host = pattern;
+            this.domainSuffix = null;
+            this.network = null;
+            this.prefixLength = 0;
+        } else {
+            throw new IllegalArgumentException("Invalid host pattern " + pattern);
+        }
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Checks whether this policy applies to a host name or to an IP address literal
+     *
+     * @param hostName the host name, not <code>null</code>
+     * @return <code>true</code> if the host matches
+     */
+    boolean matchesHost(String hostName) {
+        if (host != null) return host.equalsIgnoreCase(hostName);
+        if (domainSuffix != null)
+            return hostName.length() > domainSuffix.length()
+                    && hostName.regionMatches(
+                            true, hostName.length() - domainSuffix.length(), domainSuffix, 0, domainSuffix.length());
+
+        byte[] address = parseAddressLiteral(hostName);
+        return address != null && matchesAddress(address);
+    }
+
+    /**
+     * Checks whether this policy applies to an IP address, which is only the case for CIDR blocks
+     *
+     * @param address the address, not <code>null</code>
+     * @return <code>true</code> if the address matches
+     */
+    boolean matchesAddress(InetAddress address) {
+        return network != null && matchesAddress(address.getAddress());
+    }
+
+    boolean isAddressPolicy() {
+        return network != null;
+    }
+
+    private boolean matchesAddress(byte[] address) {
+        if (address.length != network.length) return false;
+        int fullBytes = prefixLength / 8;
+        for (int i = 0; i < fullBytes; i++) {
+            if (address[i] != network[i]) return false;
+        }
+        int remainingBits = prefixLength % 8;
+        if (remainingBits == 0) return true;
+        int mask = 0xFF << (8 - remainingBits);
+        return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+    }
+
+    /**
+     * Parses an IP address literal, without performing any name resolution
+     *
+     * @param literal the literal, IPv6 addresses may be enclosed in brackets
+     * @return the address, or <code>null</code> if the value is not an IP address literal
+     */
+    static byte[] parseAddressLiteral(String literal) {
+        if (literal.startsWith("[") && literal.endsWith("]")) literal = literal.substring(1, literal.length() - 1);
+        if (literal.isEmpty()) return null;
+
+        boolean ipv6 = literal.indexOf(':') != -1;
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            boolean valid = ipv6
+                    ? Character.digit(c, 16) != -1 || c == ':' || c == '.' || c == '%'
+                    : c == '.' || (c >= '0' && c <= '9');
+            if (!valid) return null;
+        }
+        // only literals get here, so no lookup is performed
+        try {
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern + " " + connectTimeoutMillis + " " + readTimeoutMillis;
+    }
+}
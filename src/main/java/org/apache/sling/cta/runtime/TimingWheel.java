@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.runtime;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel expiring entries on a single thread
+ *
+ * <p>The wheel has {@value #WHEEL_SIZE} buckets, each holding the entries expiring in one tick of
+ * {@value #TICK_MILLIS} milliseconds, modulo the wheel size. Entries further away than one revolution wait for the
+ * number of remaining revolutions. Entries are expired at most one tick after their deadline.</p>
+ *
+ * <p>Scheduling and cancelling are O(1) and never block: the calling threads only change the state of the entry and
+ * add it to a lock-free queue. The buckets are only accessed by the thread running the wheel, which links and
+ * unlinks the queued entries at the start of each tick, so the cost of a tick only depends on the entries changed
+ * or expired during it, not on the number of scheduled entries.</p>
+ *
+ * <p>All deadlines enforced by the agent share a single wheel, see {@link #shared()}.</p>
+ */
+final class TimingWheel implements Runnable {
+
+    static final long TICK_MILLIS = 100;
+    static final int WHEEL_SIZE = 512;
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final Queue<Entry> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+
+    // only accessed by the thread running the wheel
+    private final Entry[] buckets = new Entry[WHEEL_SIZE];
+    private long tick;
+
+    /**
+     * Returns the wheel shared by all deadlines, starting its daemon thread on first use
+     *
+     * @return the shared wheel
+     */
+    static TimingWheel shared() {
+        return Shared.WHEEL;
+    }
+
+    /**
+     * Schedules an entry for expiry at its deadline
+     *
+     * @param entry the entry, which must not have been scheduled before
+     */
+    void schedule(Entry entry) {
+        scheduled.add(entry);
+    }
+
+    /**
+     * Cancels the expiry of an entry
+     *
+     * @param entry the entry
+     * @return <code>true</code> if the entry was cancelled, <code>false</code> if it already expired
+     */
+    boolean cancel(Entry entry) {
+        if (!Entry.STATE.compareAndSet(entry, Entry.PENDING, Entry.CANCELLED)) return false;
+        cancelled.add(entry);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        for (; ; ) {
+            waitForNextTick();
+            for (Entry entry; (entry = cancelled.poll()) != null; ) unlink(entry);
+            for (Entry entry; (entry = scheduled.poll()) != null; ) link(entry);
+            expireBucket();
+            tick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        long tickEnd = startNanos + (tick + 1) * TICK_NANOS;
+        long remaining;
+        while ((remaining = tickEnd - System.nanoTime()) > 0) LockSupport.parkNanos(this, remaining);
+    }
+
+    private void link(Entry entry) {
+        if (entry.state != Entry.PENDING) return;
+
+        // entries whose deadline already passed expire in the current tick
+        long deadlineTick = Math.max((entry.deadlineNanos - startNanos) / TICK_NANOS, tick);
+        entry.remainingRounds = (deadlineTick - tick) / WHEEL_SIZE;
+        entry.bucket = (int) (deadlineTick & MASK);
+        entry.next = buckets[entry.bucket];
+        if (entry.next != null) entry.next.previous = entry;
+        buckets[entry.bucket] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.bucket == -1) return;
+
+        if (entry.previous != null) entry.previous.next = entry.next;
+        else buckets[entry.bucket] = entry.next;
+        if (entry.next != null) entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+        entry.bucket = -1;
+    }
+
+    private void expireBucket() {
+        Entry entry = buckets[(int) (tick & MASK)];
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+            } else {
+                unlink(entry);
+                if (Entry.STATE.compareAndSet(entry, Entry.PENDING, Entry.EXPIRED)) {
+                    try {
+                        entry.expire();
+                    } catch (RuntimeException e) {
+                        // keep expiring the other entries, the runtime classes cannot log
+                    }
+                }
+            }
+            entry = next;
+        }
+    }
+
+    // initialized on first use by the class loader, which guarantees a single thread
+    private static final class Shared {
+        private static final TimingWheel WHEEL = new TimingWheel();
+
+        static {
+            Thread thread = new Thread(WHEEL, "connection-timeout-agent-deadlines");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private Shared() {}
+    }
+
+    /**
+     * An entry expiring at a deadline
+     */
+    abstract static class Entry {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Entry> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+        private final long deadlineNanos;
+        private volatile int state = PENDING;
+
+        // only accessed by the thread running the wheel
+        private long remainingRounds;
+        private int bucket = -1;
+        private Entry previous;
+        private Entry next;
+
+        /**
+         * Creates a new entry
+         *
+         * @param deadlineNanos the deadline, as returned by {@link System#nanoTime()}
+         */
+        Entry(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Indicates whether the deadline passed, in which case {@link #expire()} was or is being invoked
+         *
+         * @return <code>true</code> if the entry expired
+         */
+        boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        /**
+         * Invoked once by the thread running the wheel when the deadline passed, unless the entry was cancelled
+         *
+         * <p>Implementations must not block, as they delay the expiry of the other entries.</p>
+         */
+        abstract void expire();
+    }
+}
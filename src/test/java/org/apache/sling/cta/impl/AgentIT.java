@@ -19,10 +19,12 @@
 package org.apache.sling.cta.impl;
 
 import java.io.IOException;
+import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpTimeoutException;
+import java.nio.channels.InterruptedByTimeoutException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -32,9 +34,15 @@ import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
 
 import org.apache.commons.httpclient.ConnectTimeoutException;
 import org.apache.sling.cta.impl.HttpClientLauncher.ClientType;
+import org.apache.sling.cta.runtime.SocketDefaults;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -47,11 +55,24 @@ import org.slf4j.LoggerFactory;
 
 import static java.time.Duration.ofSeconds;
 import static java.util.Objects.requireNonNull;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.AsyncSocketChannel;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.Ftp;
 import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.HC3;
 import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.HC4;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.HC4Async;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.HC5;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.HC5Async;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.Jar;
 import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.JavaNet;
 import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.JdkHttpClient;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.JdkHttpClientAsync;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.JdkWebSocket;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.Jetty;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.Ldap;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.Netty;
 import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.OkHttp;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.Socket;
+import static org.apache.sling.cta.impl.HttpClientLauncher.ClientType.SocketChannel;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTimeout;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -60,7 +81,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  * Validates that accessing URLs that exhibit connection problems results in a timeouts being fired when the agent is used
  *
  * <p>This test validates that the agent works when statically loaded, i.e. with a <code>-javaagent:</code> flag
- * passed to the JVM. As such it requires launching a new JVM instance each time, otherwise the results are
+ * passed to the JVM, and when dynamically attached to it. As such it requires launching a new JVM instance each time, otherwise the results are
  * not valid.</p>
  *
  * <p>It does so by reusing the same JVM as the one running the test. Validation is done by looking for a
@@ -83,11 +104,15 @@ public class AgentIT {
     static {
         errorDescriptors.put(
                 JavaNet, new ErrorDescriptor(SocketTimeoutException.class, "[C|c]onnect timed out", "Read timed out"));
+        // the jar files are downloaded from the FTP server
+        errorDescriptors.put(Ftp, errorDescriptors.get(JavaNet));
+        errorDescriptors.put(Jar, errorDescriptors.get(JavaNet));
         errorDescriptors.put(
                 HC3,
                 new ErrorDescriptor(
                         ConnectTimeoutException.class,
-                        "The host did not accept the connection within timeout of 3000 ms",
+                        // host policies are applied to the socket, the message has the agent default timeout
+                        "The host did not accept the connection within timeout of (3000|60000) ms",
                         "Read timed out"));
         errorDescriptors.put(
                 HC4,
@@ -95,9 +120,53 @@ public class AgentIT {
                         org.apache.http.conn.ConnectTimeoutException.class,
                         "Connect to 127\\.0\\.0\\.1:[0-9]+ \\[.*\\] failed: [C|c]onnect timed out",
                         "Read timed out"));
+        errorDescriptors.put(
+                HC4Async,
+                new ErrorDescriptor(
+                        java.net.ConnectException.class,
+                        "Timeout connecting to \\[.*\\]",
+                        SocketTimeoutException.class,
+                        "[0-9,]+ milliseconds timeout on connection http-outgoing-[0-9]+ \\[ACTIVE\\]"));
+        errorDescriptors.put(
+                HC5,
+                new ErrorDescriptor(
+                        org.apache.hc.client5.http.ConnectTimeoutException.class,
+                        "Connect to http://127\\.0\\.0\\.1:[0-9]+ \\[.*\\] failed: [C|c]onnect timed out",
+                        "Read timed out"));
+        errorDescriptors.put(
+                HC5Async,
+                new ErrorDescriptor(
+                        org.apache.hc.client5.http.ConnectTimeoutException.class,
+                        // the I/O reactor reports the timeout which fired
+                        "Connect to http://127\\.0\\.0\\.1:[0-9]+ \\[.*\\] failed: [0-9]+ MILLISECONDS",
+                        SocketTimeoutException.class,
+                        "[0-9]+ MILLISECONDS"));
         errorDescriptors.put(
                 OkHttp,
                 new ErrorDescriptor(SocketTimeoutException.class, "[C|c]onnect timed out", "(timeout|Read timed out)"));
+        errorDescriptors.put(
+                Jetty,
+                new ErrorDescriptor(
+                        SocketTimeoutException.class,
+                        "Connect Timeout",
+                        TimeoutException.class,
+                        "Idle timeout [0-9]+ ms"));
+        errorDescriptors.put(
+                Netty,
+                new ErrorDescriptor(
+                        io.netty.channel.ConnectTimeoutException.class,
+                        "connection timed out after [0-9]+ ms: /127\\.0\\.0\\.1:[0-9]+",
+                        // only set by the client, the agent does not add read timeouts to Netty channels
+                        io.netty.handler.timeout.ReadTimeoutException.class,
+                        ".*"));
+        errorDescriptors.put(
+                Socket, new ErrorDescriptor(SocketTimeoutException.class, "[C|c]onnect timed out", "Read timed out"));
+        errorDescriptors.put(
+                SocketChannel,
+                new ErrorDescriptor(SocketTimeoutException.class, "Connect timed out", "Read timed out"));
+        errorDescriptors.put(
+                AsyncSocketChannel,
+                new ErrorDescriptor(InterruptedByTimeoutException.class, "", InterruptedByTimeoutException.class, ""));
         errorDescriptors.put(
                 JdkHttpClient,
                 new ErrorDescriptor(
@@ -105,6 +174,16 @@ public class AgentIT {
                         "HTTP connect timed out",
                         HttpTimeoutException.class,
                         "request timed out"));
+        errorDescriptors.put(JdkHttpClientAsync, errorDescriptors.get(JdkHttpClient));
+        // the opening handshake is a request sent by the HttpClient
+        errorDescriptors.put(JdkWebSocket, errorDescriptors.get(JdkHttpClient));
+        errorDescriptors.put(
+                Ldap,
+                new ErrorDescriptor(
+                        CommunicationException.class,
+                        "127\\.0\\.0\\.1:[0-9]+",
+                        NamingException.class,
+                        "LDAP response read timed out, timeout used: ?[0-9]+ ?ms\\."));
     }
 
     /**
@@ -115,6 +194,12 @@ public class AgentIT {
      * <ol>
      *   <li>default timeouts, which mean the agent-set default timeout will kick in</li>
      *   <li>lower client API timeouts, which mean that the client-enforced timeouts will be applied</li>
+     *   <li>agent timeouts lowered through JMX, which mean that the updated agent-set timeouts will kick in</li>
+     *   <li>a lower agent timeout policy for the host, which mean that the policy timeouts will kick in</li>
+     *   <li>lower learned timeouts for the host restored from the adaptive timeouts state file, which mean that the
+     *   learned timeouts will kick in</li>
+     *   <li>the agent attached twice to the running JVM, which mean that the timeouts of the second attach will
+     *   kick in for classes that were already loaded</li>
      * </ol>
      *
      * </p>
@@ -130,13 +215,66 @@ public class AgentIT {
                 .clientTimeouts(Duration.ofSeconds(CONNECT_TIMEOUT_SECONDS), Duration.ofSeconds(READ_TIMEOUT_SECONDS))
                 .build();
 
-        for (ClientType client : ClientType.values())
-            for (TestTimeouts timeout : new TestTimeouts[] {TestTimeouts.DEFAULT, clientLower})
+        TestTimeouts agentUpdated = new TestTimeouts.Builder()
+                .agentTimeouts(Duration.ofMinutes(1), Duration.ofMinutes(1))
+                .updatedAgentTimeouts(
+                        Duration.ofSeconds(CONNECT_TIMEOUT_SECONDS), Duration.ofSeconds(READ_TIMEOUT_SECONDS))
+                .build();
+
+        TestTimeouts hostPolicy = new TestTimeouts.Builder()
+                .agentTimeouts(Duration.ofMinutes(1), Duration.ofMinutes(1))
+                .agentTimeoutPolicy(
+                        "127.0.0.0/8",
+                        Duration.ofSeconds(CONNECT_TIMEOUT_SECONDS),
+                        Duration.ofSeconds(READ_TIMEOUT_SECONDS))
+                .build();
+
+        TestTimeouts learned = new TestTimeouts.Builder()
+                .agentTimeouts(Duration.ofMinutes(1), Duration.ofMinutes(1))
+                .agentLearnedTimeouts(
+                        "127.0.0.1",
+                        Duration.ofSeconds(CONNECT_TIMEOUT_SECONDS),
+                        Duration.ofSeconds(READ_TIMEOUT_SECONDS))
+                .build();
+
+        // attaching twice and retransforming the loaded classes takes longer than the JVM startup
+        TestTimeouts dynamicAttach = new TestTimeouts.Builder()
+                .executionTimeout(Duration.ofSeconds(2 * EXECUTION_TIMEOUT_SECONDS))
+                .dynamicAttach()
+                .build();
+
+        for (ClientType client : ClientType.values()) {
+            // plain sockets and socket channels only get timeouts with the socket defaults, see the socketDefaults
+            // tests
+            if (client == Socket || client == SocketChannel || client == AsyncSocketChannel) continue;
+            for (TestTimeouts timeout : new TestTimeouts[] {
+                TestTimeouts.DEFAULT, clientLower, agentUpdated, hostPolicy, learned, dynamicAttach
+            }) {
+                // the async clients do not use sockets, the host policies and learned timeouts do not apply
+                if ((client == HC4Async || client == HC5Async || client == Jetty || client == Netty)
+                        && (timeout == hostPolicy || timeout == learned)) continue;
+                // the JDK does not pass the timeouts of jar connections on to the connection downloading the jar file
+                if (client == Jar && timeout == clientLower) continue;
                 args.add(Arguments.of(client, timeout));
+            }
+        }
 
         return args;
     }
 
+    /**
+     * Creates the matrix of arguments for the read timeout tests, see {@link #argumentsMatrix()}
+     *
+     * <p>Netty is left out, since the agent does not add read timeouts to Netty channels.</p>
+     *
+     * @return a list of arguments to use for the tests
+     */
+    static List<Arguments> readArgumentsMatrix() {
+        List<Arguments> args = argumentsMatrix();
+        args.removeIf(a -> a.get()[0] == Netty);
+        return args;
+    }
+
     /**
      * Validates that connecting to a unaccessible port on localhost fails with a connect
      * timeout exception
@@ -155,13 +293,16 @@ public class AgentIT {
 
         ErrorDescriptor ed = requireNonNull(errorDescriptors.get(clientType), "Unhandled clientType " + clientType);
         RecordedThrowable error = assertTimeout(
-                ofSeconds(EXECUTION_TIMEOUT_SECONDS),
-                () -> runTest("http://127.0.0.1:" + server.getConnectTimeoutLocalPort(), clientType, timeouts, false));
+                timeouts.executionTimeout,
+                () -> runTest(connectTimeoutUrl(clientType, server), clientType, timeouts, false));
 
         assertEquals(ed.connectTimeoutClass.getName(), error.className);
         assertTrue(
                 error.message.matches(ed.connectTimeoutMessageRegex),
                 "Actual message " + error.message + " did not match regex " + ed.connectTimeoutMessageRegex);
+        assertTimeoutCounted(clientType, "connect=[1-9][0-9]* read=0");
+        if (clientType == JdkHttpClientAsync) assertAllAsyncRequestsFailed();
+        if (clientType == Ldap) assertLdapContextsReported(timeouts);
     }
 
     /**
@@ -171,23 +312,37 @@ public class AgentIT {
      * @throws InterruptedException
      */
     @ParameterizedTest
-    @MethodSource("argumentsMatrix")
+    @MethodSource("readArgumentsMatrix")
     public void readTimeout(ClientType clientType, TestTimeouts timeouts, MisbehavingServerControl server)
             throws IOException, InterruptedException {
 
         ErrorDescriptor ed = requireNonNull(errorDescriptors.get(clientType), "Unhandled clientType " + clientType);
         RecordedThrowable error = assertTimeout(
-                ofSeconds(EXECUTION_TIMEOUT_SECONDS),
-                () -> runTest("http://127.0.0.1:" + server.getLocalPort(), clientType, timeouts, false));
+                timeouts.executionTimeout, () -> runTest(localUrl(clientType, server), clientType, timeouts, false));
 
         assertEquals(ed.readTimeoutClass.getName(), error.className);
         assertTrue(
                 error.message.matches(ed.readTimeoutRegex),
                 "Actual message " + error.message + " did not match regex " + ed.readTimeoutRegex);
+        // the LDAP responses are read by a separate thread, the caller waits for them without a socket read timeout
+        if (clientType != Ldap) assertTimeoutCounted(clientType, "connect=0 read=[1-9][0-9]*");
+        if (clientType == JdkHttpClientAsync) assertAllAsyncRequestsFailed();
+        if (clientType == Ldap) assertLdapContextsReported(timeouts);
     }
 
+    /**
+     * Validates that the calls to a host that answers in time succeed
+     *
+     * <p>LDAP is left out, since there is no local directory server.</p>
+     *
+     * @throws IOException various I/O problems
+     * @throws InterruptedException
+     */
     @ParameterizedTest
-    @EnumSource(HttpClientLauncher.ClientType.class)
+    @EnumSource(
+            value = HttpClientLauncher.ClientType.class,
+            names = {"Ldap"},
+            mode = EnumSource.Mode.EXCLUDE)
     public void connectAndReadSuccess(ClientType clientType, MisbehavingServerControl server)
             throws IOException, InterruptedException {
 
@@ -196,7 +351,298 @@ public class AgentIT {
 
         assertTimeout(
                 ofSeconds(EXECUTION_TIMEOUT_SECONDS),
-                () -> runTest("http://127.0.0.1:" + server.getLocalPort(), clientType, TestTimeouts.DEFAULT, true));
+                () -> runTest(localUrl(clientType, server), clientType, TestTimeouts.DEFAULT, true));
+
+        // the JDK HttpClient, the async HttpClients 4 and 5, Jetty and Netty use socket channels, which record no
+        // latency
+        if (clientType != JdkHttpClient
+                && clientType != JdkHttpClientAsync
+                && clientType != JdkWebSocket
+                && clientType != HC4Async
+                && clientType != HC5Async
+                && clientType != Jetty
+                && clientType != Netty
+                && clientType != SocketChannel
+                && clientType != AsyncSocketChannel) {
+            assertLatencyRecorded("connect");
+            assertLatencyRecorded("firstByte");
+        }
+        if (clientType == HC4Async) {
+            String regex = "\\[LAUNCHER\\] HttpAsyncClient 4 timeouts: reactor connect: "
+                    + TestTimeouts.DEFAULT.agentConnectTimeout.toMillis() + ", reactor so: "
+                    + TestTimeouts.DEFAULT.agentReadTimeout.toMillis();
+            assertTrue(
+                    Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                    "Did not find the I/O reactor timeouts matching " + regex + " in stdout");
+        }
+        if (clientType == Ftp) {
+            String regex = "\\[LAUNCHER\\] FTP timeouts: connect: "
+                    + TestTimeouts.DEFAULT.agentConnectTimeout.toMillis() + ", read: "
+                    + TestTimeouts.DEFAULT.agentReadTimeout.toMillis();
+            assertTrue(
+                    Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                    "Did not find the FTP timeouts matching " + regex + " in stdout");
+        }
+        if (clientType == Netty) {
+            String regex = "\\[LAUNCHER\\] Netty channels: host=127\\.0\\.0\\.1 connects=1 agentTimeout=1";
+            assertTrue(
+                    Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                    "Did not find the Netty channels matching " + regex + " in stdout");
+        }
+    }
+
+    /**
+     * Validates that a call to a host that delays the response is aborted when the deadline passes, before the read
+     * timeout fires
+     *
+     * <p>The JDK HttpClient, the async HttpClients 4 and 5, Jetty and Netty do not use sockets and are not covered by the
+     * deadlines. Plain sockets, socket channels, FTP and LDAP are not covered either, the deadlines only apply to HTTP
+     * calls. Jetty applies the deadline as request timeout instead, see {@link #jettyRequestTimeoutFromDeadline(MisbehavingServerControl)}.</p>
+     *
+     * @throws IOException various I/O problems
+     */
+    @ParameterizedTest
+    @EnumSource(
+            value = HttpClientLauncher.ClientType.class,
+            names = {
+                "Ftp",
+                "Jar",
+                "JdkHttpClient",
+                "JdkHttpClientAsync",
+                "JdkWebSocket",
+                "HC4Async",
+                "HC5Async",
+                "Jetty",
+                "Netty",
+                "Socket",
+                "SocketChannel",
+                "AsyncSocketChannel",
+                "Ldap"
+            },
+            mode = EnumSource.Mode.EXCLUDE)
+    public void deadlineExceeded(ClientType clientType, MisbehavingServerControl server) throws IOException {
+
+        TestTimeouts timeouts = new TestTimeouts.Builder()
+                .agentTimeouts(Duration.ofMinutes(1), Duration.ofMinutes(1))
+                .agentDeadline(Duration.ofSeconds(READ_TIMEOUT_SECONDS))
+                .build();
+
+        RecordedThrowable error = assertTimeout(
+                timeouts.executionTimeout,
+                () -> runTest("http://127.0.0.1:" + server.getLocalPort(), clientType, timeouts, false));
+
+        assertEquals(SocketException.class.getName(), error.className);
+        String regex = "\\[LAUNCHER\\] Deadlines exceeded: 1";
+        assertTrue(
+                Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                "Did not find the exceeded deadlines matching " + regex + " in stdout");
+    }
+
+    /**
+     * Validates that the Jetty requests get the deadline as total timeout, which fires before the idle timeout
+     *
+     * @throws IOException various I/O problems
+     */
+    @Test
+    public void jettyRequestTimeoutFromDeadline(MisbehavingServerControl server) throws IOException {
+
+        TestTimeouts timeouts = new TestTimeouts.Builder()
+                .agentTimeouts(Duration.ofMinutes(1), Duration.ofMinutes(1))
+                .agentDeadline(Duration.ofSeconds(READ_TIMEOUT_SECONDS))
+                .build();
+
+        RecordedThrowable error = assertTimeout(
+                timeouts.executionTimeout,
+                () -> runTest("http://127.0.0.1:" + server.getLocalPort(), Jetty, timeouts, false));
+
+        assertEquals(TimeoutException.class.getName(), error.className);
+        String regex =
+                "Total timeout " + Duration.ofSeconds(READ_TIMEOUT_SECONDS).toMillis() + " ms elapsed";
+        assertTrue(error.message.matches(regex), "Actual message " + error.message + " did not match regex " + regex);
+    }
+
+    /**
+     * Validates that plain sockets and socket channels connecting without a timeout get the agent connect timeout
+     * when the socket defaults are enabled
+     *
+     * <p>The connect timeouts of socket channels are enforced by the agent, so they are counted as socket timeouts.</p>
+     *
+     * @throws IOException various I/O problems
+     */
+    @ParameterizedTest
+    @EnumSource(
+            value = HttpClientLauncher.ClientType.class,
+            names = {"Socket", "SocketChannel", "AsyncSocketChannel"})
+    @DisabledOnOs(OS.WINDOWS)
+    public void socketDefaultsConnectTimeout(ClientType clientType, MisbehavingServerControl server)
+            throws IOException {
+
+        TestTimeouts timeouts =
+                new TestTimeouts.Builder().agentSocketDefaults("").build();
+
+        ErrorDescriptor ed = errorDescriptors.get(clientType);
+        RecordedThrowable error = assertTimeout(
+                timeouts.executionTimeout,
+                () -> runTest("http://127.0.0.1:" + server.getConnectTimeoutLocalPort(), clientType, timeouts, false));
+
+        assertEquals(ed.connectTimeoutClass.getName(), error.className);
+        assertTrue(
+                error.message.matches(ed.connectTimeoutMessageRegex),
+                "Actual message " + error.message + " did not match regex " + ed.connectTimeoutMessageRegex);
+        assertTimeoutCounted(Socket, "connect=[1-9][0-9]* read=0");
+    }
+
+    /**
+     * Validates that plain sockets and socket channels without a read timeout get the agent read timeout once
+     * connected when the socket defaults are enabled
+     *
+     * <p>The read timeouts of asynchronous socket channels are enforced by the channel itself and are not counted.</p>
+     *
+     * @throws IOException various I/O problems
+     */
+    @ParameterizedTest
+    @EnumSource(
+            value = HttpClientLauncher.ClientType.class,
+            names = {"Socket", "SocketChannel", "AsyncSocketChannel"})
+    public void socketDefaultsReadTimeout(ClientType clientType, MisbehavingServerControl server) throws IOException {
+
+        TestTimeouts timeouts =
+                new TestTimeouts.Builder().agentSocketDefaults("").build();
+
+        ErrorDescriptor ed = errorDescriptors.get(clientType);
+        RecordedThrowable error = assertTimeout(
+                timeouts.executionTimeout,
+                () -> runTest("http://127.0.0.1:" + server.getLocalPort(), clientType, timeouts, false));
+
+        assertEquals(ed.readTimeoutClass.getName(), error.className);
+        assertTrue(
+                error.message.matches(ed.readTimeoutRegex),
+                "Actual message " + error.message + " did not match regex " + ed.readTimeoutRegex);
+        if (clientType == Socket) assertSocketReadTimeout(timeouts.agentReadTimeout.toMillis());
+        if (clientType != AsyncSocketChannel) assertTimeoutCounted(Socket, "connect=0 read=[1-9][0-9]*");
+    }
+
+    /**
+     * Validates that plain sockets and socket channels to excluded hosts keep having no timeouts, the loopback
+     * addresses being excluded by default
+     *
+     * @throws IOException various I/O problems
+     */
+    @ParameterizedTest
+    @EnumSource(
+            value = HttpClientLauncher.ClientType.class,
+            names = {"Socket", "SocketChannel", "AsyncSocketChannel"})
+    public void socketDefaultsExcludedHosts(ClientType clientType, MisbehavingServerControl server) throws IOException {
+
+        server.setHandleDelay(Duration.ofMillis(100));
+        TestTimeouts timeouts = new TestTimeouts.Builder()
+                .agentSocketDefaults(SocketDefaults.LOOPBACK)
+                .build();
+
+        assertTimeout(
+                timeouts.executionTimeout,
+                () -> runTest("http://127.0.0.1:" + server.getLocalPort(), clientType, timeouts, true));
+
+        if (clientType == Socket) assertSocketReadTimeout(0);
+    }
+
+    /**
+     * Validates that a call blocked in a socket read for longer than the threshold is reported
+     *
+     * <p>The JDK HttpClient, the async HttpClients 4 and 5, Jetty and Netty do not block the calling thread in a socket
+     * read. Plain sockets and socket channels get no read timeout without the socket defaults.</p>
+     *
+     * @throws IOException various I/O problems
+     */
+    @ParameterizedTest
+    @EnumSource(
+            value = HttpClientLauncher.ClientType.class,
+            names = {
+                "JdkHttpClient",
+                "JdkHttpClientAsync",
+                "JdkWebSocket",
+                "HC4Async",
+                "HC5Async",
+                "Jetty",
+                "Netty",
+                "Socket",
+                "SocketChannel",
+                "AsyncSocketChannel"
+            },
+            mode = EnumSource.Mode.EXCLUDE)
+    public void stuckCallReported(ClientType clientType, MisbehavingServerControl server) throws IOException {
+
+        TestTimeouts timeouts = new TestTimeouts.Builder()
+                .agentStuckCallThreshold(Duration.ofSeconds(1))
+                .build();
+
+        RecordedThrowable error = assertTimeout(
+                timeouts.executionTimeout, () -> runTest(localUrl(clientType, server), clientType, timeouts, false));
+
+        ErrorDescriptor ed = requireNonNull(errorDescriptors.get(clientType), "Unhandled clientType " + clientType);
+        assertEquals(ed.readTimeoutClass.getName(), error.className);
+        String regex = "\\[AGENT\\] Thread '.*' blocked in socket read for [0-9]+ milliseconds at .+";
+        assertTrue(
+                Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                "Did not find the stuck call matching " + regex + " in stdout");
+    }
+
+    private void assertAllAsyncRequestsFailed() throws IOException {
+        String regex = "\\[LAUNCHER\\] HttpClient async requests: sent: " + HttpClientLauncher.CONCURRENT_REQUESTS
+                + ", failed: " + HttpClientLauncher.CONCURRENT_REQUESTS;
+        assertTrue(
+                Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                "Did not find the async requests matching " + regex + " in stdout");
+    }
+
+    private void assertSocketReadTimeout(long timeoutMillis) throws IOException {
+        String regex = "\\[LAUNCHER\\] Socket timeouts: read: " + timeoutMillis;
+        assertTrue(
+                Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                "Did not find the socket timeouts matching " + regex + " in stdout");
+    }
+
+    private void assertLdapContextsReported(TestTimeouts timeouts) throws IOException {
+        // the agent only adds its timeouts when the client does not set them
+        int agentTimeoutContexts = timeouts.clientReadTimeout.isZero() ? 1 : 0;
+        String regex = "\\[LAUNCHER\\] LDAP contexts: host=127\\.0\\.0\\.1 contexts=1 agentTimeout="
+                + agentTimeoutContexts;
+        assertTrue(
+                Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                "Did not find the LDAP contexts matching " + regex + " in stdout");
+    }
+
+    private void assertLatencyRecorded(String latency) throws IOException {
+        String regex = "\\[LAUNCHER\\] Latency: host=127\\.0\\.0\\.1 latency=" + latency + " count=[1-9][0-9]* .*";
+        assertTrue(
+                Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                "Did not find the latency matching " + regex + " in stdout");
+    }
+
+    private static String localUrl(ClientType clientType, MisbehavingServerControl server) {
+        if (clientType == Ftp || clientType == Jar) return "ftp://127.0.0.1:" + server.getFtpLocalPort();
+        // the LDAP client only takes the host and port of the URL
+        if (clientType == Ldap) return "http://127.0.0.1:" + server.getUnresponsiveLocalPort();
+        return "http://127.0.0.1:" + server.getLocalPort();
+    }
+
+    private static String connectTimeoutUrl(ClientType clientType, MisbehavingServerControl server) {
+        String scheme = clientType == Ftp || clientType == Jar ? "ftp" : "http";
+        return scheme + "://127.0.0.1:" + server.getConnectTimeoutLocalPort();
+    }
+
+    private void assertTimeoutCounted(ClientType clientType, String countsRegex) throws IOException {
+        // the timeouts of the async HttpClients 4 and 5, Jetty and Netty fire in their selectors, not in sockets
+        if (clientType == HC4Async || clientType == HC5Async || clientType == Jetty || clientType == Netty) return;
+        // only the synchronous calls of the JDK HttpClient are counted
+        if (clientType == JdkHttpClientAsync || clientType == JdkWebSocket) return;
+
+        // the JDK FTP client is attributed like the HTTP one, by its sun.net package
+        String client = clientType == Ftp || clientType == Jar ? JavaNet.toString() : clientType.toString();
+        String regex = "\\[LAUNCHER\\] Timeouts fired: client=" + client + " host=127\\.0\\.0\\.1 " + countsRegex;
+        assertTrue(
+                Files.lines(STDOUT).anyMatch(l -> l.matches(regex)),
+                "Did not find the timeout counts matching " + regex + " in stdout");
     }
 
     private RecordedThrowable runTest(
@@ -27,6 +27,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -36,6 +37,12 @@ import org.apache.sling.cta.impl.HttpClientLauncher.ClientType;
 /**
  * Launches the {@link HttpClientLauncher} as a separate process with the timeout agent enabled
  *
+ * <p>The agent is either passed on the command line or, for {@link TestTimeouts#dynamicAttach}, attached by the
+ * launcher itself once the client classes are loaded.</p>
+ *
+ * <p>The transformation engine used by the agent can be selected with the <code>agent.engine</code> system
+ * property, e.g. <code>mvn verify -Dagent.engine=asm</code>.</p>
+ *
  */
 class AgentLauncher {
     private final URL url;
@@ -64,20 +71,53 @@ class AgentLauncher {
 
         String javaHome = System.getProperty("java.home");
         Path javaExe = Paths.get(javaHome, "bin", "java");
-        ProcessBuilder pb = new ProcessBuilder(
-                javaExe.toString(),
-                "-showversion",
-                // order is importat - jacoco must come first for instrumentation to happen
-                "-javaagent:target/it-dependencies/org.jacoco.agent-runtime.jar=destfile=target/jacoco-it.exec",
-                "-javaagent:" + jar + "=" + timeouts.agentConnectTimeout.toMillis() + ","
-                        + timeouts.agentReadTimeout.toMillis() + ",v",
-                "-cp",
-                classPath,
-                HttpClientLauncher.class.getName(),
-                url.toString(),
-                clientType.toString(),
-                String.valueOf(timeouts.clientConnectTimeout.toMillis()),
-                String.valueOf(timeouts.clientReadTimeout.toMillis()));
+        List<String> command = new ArrayList<>();
+        command.add(javaExe.toString());
+        command.add("-showversion");
+        // order is importat - jacoco must come first for instrumentation to happen
+        command.add("-javaagent:target/it-dependencies/org.jacoco.agent-runtime.jar=destfile=target/jacoco-it.exec");
+        String agentArgs = timeouts.agentConnectTimeout.toMillis() + "," + timeouts.agentReadTimeout.toMillis()
+                + ",v,engine=" + System.getProperty("agent.engine", "javassist");
+        if (timeouts.agentTimeoutPolicy != null) {
+            Path policies = Paths.get("target", "timeout-policies.txt");
+            Files.write(policies, Collections.singletonList(timeouts.agentTimeoutPolicy));
+            agentArgs += ",policies=" + policies;
+        }
+        if (timeouts.agentLearnedTimeouts != null) {
+            Path stateFile = Paths.get("target", "adaptive-timeouts.txt");
+            Files.write(stateFile, Collections.singletonList(timeouts.agentLearnedTimeouts));
+            agentArgs += ",adaptive=true,adaptiveStateFile=" + stateFile;
+        }
+        if (timeouts.agentDeadline != null) agentArgs += ",deadlineMillis=" + timeouts.agentDeadline.toMillis();
+        if (timeouts.agentStuckCallThreshold != null)
+            agentArgs += ",stuckCallThresholdMillis=" + timeouts.agentStuckCallThreshold.toMillis()
+                    + ",stuckCallSamplingMillis=100";
+        if (timeouts.agentSocketDefaultsExcludedHosts != null)
+            agentArgs +=
+                    ",socketDefaults=true,socketDefaultsExcludedHosts=" + timeouts.agentSocketDefaultsExcludedHosts;
+        if (timeouts.dynamicAttach) {
+            // attach once with the agent defaults, then again with the tested arguments to validate re-attaching
+            command.add("-Djdk.attach.allowAttachSelf=true");
+            command.add("-D" + HttpClientLauncher.PROP_ATTACH_AGENT_JAR + "=" + jar);
+            command.add("-D" + HttpClientLauncher.PROP_ATTACH_AGENT_ARGS + "=60000,60000,v;" + agentArgs);
+        } else {
+            command.add("-javaagent:" + jar + "=" + agentArgs);
+        }
+        if (timeouts.updatedAgentConnectTimeout != null) {
+            command.add("-D" + HttpClientLauncher.PROP_UPDATED_CONNECT_TIMEOUT + "="
+                    + timeouts.updatedAgentConnectTimeout.toMillis());
+            command.add("-D" + HttpClientLauncher.PROP_UPDATED_READ_TIMEOUT + "="
+                    + timeouts.updatedAgentReadTimeout.toMillis());
+        }
+        command.add("-cp");
+        command.add(classPath);
+        command.add(HttpClientLauncher.class.getName());
+        command.add(url.toString());
+        command.add(clientType.toString());
+        command.add(String.valueOf(timeouts.clientConnectTimeout.toMillis()));
+        command.add(String.valueOf(timeouts.clientReadTimeout.toMillis()));
+
+        ProcessBuilder pb = new ProcessBuilder(command);
 
         pb.redirectInput(Redirect.INHERIT);
         pb.redirectOutput(stdout.toFile());
@@ -99,7 +139,24 @@ class AgentLauncher {
             "jcl-over-slf4j.jar",
             "httpclient.jar",
             "httpcore.jar",
+            "httpasyncclient.jar",
+            "httpcore-nio.jar",
+            "httpclient5.jar",
+            "httpcore5.jar",
+            "httpcore5-h2.jar",
             "okhttp.jar",
+            "jetty-client.jar",
+            "jetty-http.jar",
+            "jetty-io.jar",
+            "jetty-util.jar",
+            "netty-buffer.jar",
+            "netty-codec.jar",
+            "netty-codec-http.jar",
+            "netty-common.jar",
+            "netty-handler.jar",
+            "netty-resolver.jar",
+            "netty-transport.jar",
+            "netty-transport-native-unix-common.jar",
             "okio.jar"
         }));
 
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.cta.impl;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal FTP server that serves passive mode downloads, waiting before greeting each client
+ *
+ * <p>Files ending in <code>.jar</code> are served as a jar holding a single {@link #JAR_ENTRY_NAME} entry, any other
+ * file holds {@link #CONTENT}.</p>
+ */
+public class DelayingFtpServer {
+
+    static final String CONTENT = "Hello from FTP";
+    static final String JAR_ENTRY_NAME = "entry.txt";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private volatile Duration handleDelay;
+
+    private ServerSocket serverSocket;
+
+    public DelayingFtpServer(Duration handleDelay) {
+        this.handleDelay = handleDelay;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(
+                () -> {
+                    while (!serverSocket.isClosed()) {
+                        try {
+                            Socket control = serverSocket.accept();
+                            Thread handler = new Thread(() -> handle(control), "ftp-control-" + control.getPort());
+                            handler.setDaemon(true);
+                            handler.start();
+                        } catch (IOException e) {
+                            if (!serverSocket.isClosed()) logger.info("Failed accepting connection", e);
+                        }
+                    }
+                },
+                "ftp-acceptor-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void setHandleDelay(Duration handleDelay) {
+        this.handleDelay = handleDelay;
+    }
+
+    private void handle(Socket control) {
+        ServerSocket passive = null;
+        try (Socket socket = control;
+                BufferedReader in =
+                        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+            logger.info("Waiting for {} before greeting", handleDelay);
+            Thread.sleep(handleDelay.toMillis());
+            reply(out, "220 Ready");
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                logger.info("Received {}", line);
+                String command = line.split(" ", 2)[0].toUpperCase();
+                String argument = line.length() > command.length() ? line.substring(command.length() + 1) : "";
+                switch (command) {
+                    case "USER":
+                        reply(out, "331 Password required");
+                        break;
+                    case "PASS":
+                        reply(out, "230 Logged in");
+                        break;
+                    case "TYPE":
+                        reply(out, "200 Type set");
+                        break;
+                    case "CWD":
+                        reply(out, "250 Directory changed");
+                        break;
+                    case "PASV":
+                        if (passive != null) passive.close();
+                        passive = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                        int port = passive.getLocalPort();
+                        reply(out, "227 Entering Passive Mode (127,0,0,1," + (port >> 8) + "," + (port & 0xFF) + ")");
+                        break;
+                    case "RETR":
+                        if (passive == null) {
+                            reply(out, "425 Use PASV first");
+                            break;
+                        }
+                        byte[] content = content(argument);
+                        reply(
+                                out,
+                                "150 Opening BINARY mode data connection for " + argument + " (" + content.length
+                                        + " bytes)");
+                        try (Socket data = passive.accept();
+                                OutputStream dataOut = data.getOutputStream()) {
+                            dataOut.write(content);
+                        }
+                        passive.close();
+                        passive = null;
+                        reply(out, "226 Transfer complete");
+                        break;
+                    case "QUIT":
+                        reply(out, "221 Bye");
+                        return;
+                    default:
+                        reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.info("Failed handling connection", e);
+        } finally {
+            if (passive != null) {
+                try {
+                    passive.close();
+                } catch (IOException e) {
+                    logger.info("Failed closing passive socket", e);
+                }
+            }
+        }
+    }
+
+    private void reply(PrintWriter out, String reply) {
+        // FTP replies end with CRLF, whatever the platform
+        out.print(reply + "\r\n");
+        out.flush();
+    }
+
+    private static byte[] content(String fileName) throws IOException {
+        if (!fileName.endsWith(".jar")) return CONTENT.getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes)) {
+            jar.putNextEntry(new JarEntry(JAR_ENTRY_NAME));
+            jar.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+            jar.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -18,7 +18,6 @@
  */
 package org.apache.sling.cta.impl;
 
-import java.io.IOException;
 import java.net.SocketTimeoutException;
 
 import org.apache.sling.cta.impl.HttpClientLauncher.ClientType;
@@ -27,22 +26,22 @@ import org.apache.sling.cta.impl.HttpClientLauncher.ClientType;
  * Data class for defining specific error messages related to individual {@link ClientType client types}.
  */
 class ErrorDescriptor {
-    Class<? extends IOException> connectTimeoutClass;
+    Class<? extends Exception> connectTimeoutClass;
     String connectTimeoutMessageRegex;
-    Class<? extends IOException> readTimeoutClass;
+    Class<? extends Exception> readTimeoutClass;
     String readTimeoutRegex;
 
     public ErrorDescriptor(
-            Class<? extends IOException> connectTimeoutClass,
+            Class<? extends Exception> connectTimeoutClass,
             String connectTimeoutMessageRegex,
             String readTimeoutRegex) {
         this(connectTimeoutClass, connectTimeoutMessageRegex, SocketTimeoutException.class, readTimeoutRegex);
     }
 
     public ErrorDescriptor(
-            Class<? extends IOException> connectTimeoutClass,
+            Class<? extends Exception> connectTimeoutClass,
             String connectTimeoutMessageRegex,
-            Class<? extends IOException> readTimeoutClass,
+            Class<? extends Exception> readTimeoutClass,
             String readTimeoutRegex) {
         this.connectTimeoutClass = connectTimeoutClass;
         this.connectTimeoutMessageRegex = connectTimeoutMessageRegex;
@@ -18,20 +18,71 @@
  */
 package org.apache.sling.cta.impl;
 
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import com.sun.tools.attach.VirtualMachine;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.timeout.ReadTimeoutHandler;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -43,12 +94,21 @@ import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.httpclient.params.HttpConnectionParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.config.RequestConfig.Builder;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.util.EntityUtils;
 
 /**
@@ -56,12 +116,83 @@ import org.apache.http.util.EntityUtils;
  */
 public class HttpClientLauncher {
 
+    /**
+     * System property holding the agent connect timeout to set through JMX before running the client
+     */
+    static final String PROP_UPDATED_CONNECT_TIMEOUT = "launcher.agent.connectTimeoutMillis";
+
+    /**
+     * System property holding the agent read timeout to set through JMX before running the client
+     */
+    static final String PROP_UPDATED_READ_TIMEOUT = "launcher.agent.readTimeoutMillis";
+
+    /**
+     * System property holding the path of the agent jar to attach before running the client
+     */
+    static final String PROP_ATTACH_AGENT_JAR = "launcher.agent.jar";
+
+    /**
+     * System property holding the agent arguments for each attach, separated by <code>;</code>
+     */
+    static final String PROP_ATTACH_AGENT_ARGS = "launcher.agent.attachArgs";
+
+    /**
+     * Environment property holding the connect timeout of the JNDI LDAP provider
+     */
+    private static final String LDAP_CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
+
+    /**
+     * Environment property holding the read timeout of the JNDI LDAP provider
+     */
+    private static final String LDAP_READ_TIMEOUT = "com.sun.jndi.ldap.read.timeout";
+
+    /**
+     * Number of requests sent concurrently by the asynchronous JDK HttpClient
+     */
+    static final int CONCURRENT_REQUESTS = 20;
+
+    /**
+     * Classes handled by the agent, loaded before attaching so that they must be retransformed
+     */
+    private static final String[] PRELOADED_CLASSES = {
+        "sun.net.www.protocol.http.HttpURLConnection",
+        "sun.net.www.protocol.ftp.FtpURLConnection",
+        "org.apache.commons.httpclient.params.DefaultHttpParamsFactory",
+        "org.apache.http.client.config.RequestConfig$Builder",
+        "org.apache.http.impl.nio.reactor.IOReactorConfig$Builder",
+        "org.apache.hc.client5.http.config.ConnectionConfig$Builder",
+        "org.apache.hc.core5.http.io.SocketConfig$Builder",
+        "org.apache.hc.core5.reactor.IOReactorConfig$Builder",
+        "okhttp3.OkHttpClient$Builder",
+        "org.eclipse.jetty.client.HttpClient",
+        "org.eclipse.jetty.client.HttpRequest",
+        "io.netty.bootstrap.Bootstrap",
+        "jdk.internal.net.http.HttpClientBuilderImpl",
+        "jdk.internal.net.http.HttpRequestBuilderImpl",
+        "jdk.internal.net.http.HttpRequestImpl",
+        "jdk.internal.net.http.websocket.BuilderImpl",
+        "com.sun.jndi.ldap.LdapCtx"
+    };
+
     public enum ClientType {
         JavaNet(HttpClientLauncher::runUsingJavaNet),
+        Ftp(HttpClientLauncher::runUsingFtp),
+        Jar(HttpClientLauncher::runUsingJar),
         HC3(HttpClientLauncher::runUsingHttpClient3),
         HC4(HttpClientLauncher::runUsingHttpClient4),
+        HC4Async(HttpClientLauncher::runUsingHttpAsyncClient4),
+        HC5(HttpClientLauncher::runUsingHttpClient5),
+        HC5Async(HttpClientLauncher::runUsingHttpClient5Async),
         OkHttp(HttpClientLauncher::runUsingOkHttp),
-        JdkHttpClient(HttpClientLauncher::runUsingJdkHttpClient);
+        Jetty(HttpClientLauncher::runUsingJetty),
+        Netty(HttpClientLauncher::runUsingNetty),
+        Socket(HttpClientLauncher::runUsingSocket),
+        SocketChannel(HttpClientLauncher::runUsingSocketChannel),
+        AsyncSocketChannel(HttpClientLauncher::runUsingAsyncSocketChannel),
+        JdkHttpClient(HttpClientLauncher::runUsingJdkHttpClient),
+        JdkHttpClientAsync(HttpClientLauncher::runUsingJdkHttpClientAsync),
+        JdkWebSocket(HttpClientLauncher::runUsingJdkWebSocket),
+        Ldap(HttpClientLauncher::runUsingLdap);
 
         private final HttpConsumer consumer;
 
@@ -110,7 +241,124 @@ public class HttpClientLauncher {
 
         log("Client API configured timeouts: " + connectTimeout + "/" + readTimeout);
 
-        type.consumer.accept(args[0], connectTimeout, readTimeout);
+        attachAgent();
+        updateAgentTimeouts();
+
+        try {
+            type.consumer.accept(args[0], connectTimeout, readTimeout);
+        } finally {
+            logTimeoutCounts();
+            logLatencies();
+            logExceededDeadlines();
+            logNettyChannels();
+            logLdapContexts();
+        }
+    }
+
+    private static void attachAgent() throws Exception {
+        String jar = System.getProperty(PROP_ATTACH_AGENT_JAR);
+        if (jar == null) return;
+
+        for (String className : PRELOADED_CLASSES)
+            Class.forName(className, false, HttpClientLauncher.class.getClassLoader());
+
+        for (String agentArgs : System.getProperty(PROP_ATTACH_AGENT_ARGS).split(";")) {
+            VirtualMachine vm =
+                    VirtualMachine.attach(String.valueOf(ProcessHandle.current().pid()));
+            try {
+                vm.loadAgent(jar, agentArgs);
+            } finally {
+                vm.detach();
+            }
+            log("Attached agent with arguments %s", agentArgs);
+        }
+    }
+
+    private static void logTimeoutCounts() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName agent = new ObjectName("org.apache.sling.cta:type=Agent");
+        if (!server.isRegistered(agent)) return;
+
+        TabularData counts = (TabularData) server.getAttribute(agent, "TimeoutCounts");
+        for (Object row : counts.values()) {
+            CompositeData count = (CompositeData) row;
+            log(
+                    "Timeouts fired: client=%s host=%s connect=%s read=%s",
+                    count.get("client"), count.get("host"), count.get("connectTimeouts"), count.get("readTimeouts"));
+        }
+    }
+
+    private static void logLatencies() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName agent = new ObjectName("org.apache.sling.cta:type=Agent");
+        if (!server.isRegistered(agent)) return;
+
+        TabularData latencies = (TabularData) server.getAttribute(agent, "Latencies");
+        for (Object row : latencies.values()) {
+            CompositeData latency = (CompositeData) row;
+            log(
+                    "Latency: host=%s latency=%s count=%s p50=%s p99=%s max=%s",
+                    latency.get("host"),
+                    latency.get("latency"),
+                    latency.get("count"),
+                    latency.get("p50Micros"),
+                    latency.get("p99Micros"),
+                    latency.get("maxMicros"));
+        }
+    }
+
+    private static void logExceededDeadlines() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName agent = new ObjectName("org.apache.sling.cta:type=Agent");
+        if (!server.isRegistered(agent)) return;
+
+        log("Deadlines exceeded: %s", server.getAttribute(agent, "ExceededDeadlineCount"));
+    }
+
+    private static void logNettyChannels() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName agent = new ObjectName("org.apache.sling.cta:type=Agent");
+        if (!server.isRegistered(agent)) return;
+
+        TabularData channels = (TabularData) server.getAttribute(agent, "NettyChannels");
+        for (Object row : channels.values()) {
+            CompositeData count = (CompositeData) row;
+            log(
+                    "Netty channels: host=%s connects=%s agentTimeout=%s",
+                    count.get("host"), count.get("connects"), count.get("agentTimeoutConnects"));
+        }
+    }
+
+    private static void logLdapContexts() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName agent = new ObjectName("org.apache.sling.cta:type=Agent");
+        if (!server.isRegistered(agent)) return;
+
+        TabularData contexts = (TabularData) server.getAttribute(agent, "LdapContexts");
+        for (Object row : contexts.values()) {
+            CompositeData count = (CompositeData) row;
+            log(
+                    "LDAP contexts: host=%s contexts=%s agentTimeout=%s",
+                    count.get("host"), count.get("contexts"), count.get("agentTimeoutContexts"));
+        }
+    }
+
+    private static void updateAgentTimeouts() throws JMException {
+        String connectTimeout = System.getProperty(PROP_UPDATED_CONNECT_TIMEOUT);
+        String readTimeout = System.getProperty(PROP_UPDATED_READ_TIMEOUT);
+        if (connectTimeout == null && readTimeout == null) return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName agent = new ObjectName("org.apache.sling.cta:type=Agent");
+        if (connectTimeout != null)
+            server.setAttribute(agent, new Attribute("ConnectTimeoutMillis", Long.valueOf(connectTimeout)));
+        if (readTimeout != null)
+            server.setAttribute(agent, new Attribute("ReadTimeoutMillis", Long.valueOf(readTimeout)));
+
+        log(
+                "Agent timeouts updated to %s/%s",
+                server.getAttribute(agent, "ConnectTimeoutMillis"), server.getAttribute(agent, "ReadTimeoutMillis"));
+        log("Agent snapshot: %s", server.invoke(agent, "snapshot", null, null));
     }
 
     private static String usage() {
@@ -142,6 +390,114 @@ public class HttpClientLauncher {
         }
     }
 
+    private static void runUsingFtp(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException {
+        URLConnection con = new URL(targetUrl + "/test.txt").openConnection();
+        log("Connection type is %s", con);
+
+        con.setConnectTimeout(connectTimeoutMillis);
+        con.setReadTimeout(readTimeoutMillis);
+
+        try (InputStream in = con.getInputStream()) {
+            log("FTP timeouts: connect: %d, read: %d", con.getConnectTimeout(), con.getReadTimeout());
+            log("FTP content: %s", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void runUsingJar(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException {
+        URLConnection con =
+                new URL("jar:" + targetUrl + "/test.jar!/" + DelayingFtpServer.JAR_ENTRY_NAME).openConnection();
+        log("Connection type is %s", con);
+
+        // not passed on by the JDK to the connection that downloads the jar file
+        con.setConnectTimeout(connectTimeoutMillis);
+        con.setReadTimeout(readTimeoutMillis);
+
+        try (InputStream in = con.getInputStream()) {
+            log("Jar entry content: %s", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void runUsingSocket(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException {
+        URL url = new URL(targetUrl);
+
+        // like most clients of non-HTTP protocols, only set the timeouts when configured
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(url.getHost(), url.getPort()), connectTimeoutMillis);
+            if (readTimeoutMillis > 0) socket.setSoTimeout(readTimeoutMillis);
+            log("Socket timeouts: read: %s", socket.getSoTimeout());
+
+            OutputStream out = socket.getOutputStream();
+            out.write(httpRequest(url));
+            out.flush();
+
+            BufferedReader in =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            log(in.readLine());
+        }
+    }
+
+    private static void runUsingSocketChannel(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+        URL url = new URL(targetUrl);
+
+        // socket channels have no timeouts, the client ones are ignored
+        try (java.nio.channels.SocketChannel channel = java.nio.channels.SocketChannel.open()) {
+            channel.connect(new InetSocketAddress(url.getHost(), url.getPort()));
+
+            ByteBuffer request = ByteBuffer.wrap(httpRequest(url));
+            while (request.hasRemaining()) channel.write(request);
+
+            log(readStatusLine(channel::read));
+        }
+    }
+
+    private static void runUsingAsyncSocketChannel(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+        URL url = new URL(targetUrl);
+
+        // the operations returning futures have no timeouts, the client ones are ignored
+        try (AsynchronousSocketChannel channel = AsynchronousSocketChannel.open()) {
+            await(channel.connect(new InetSocketAddress(url.getHost(), url.getPort())));
+
+            ByteBuffer request = ByteBuffer.wrap(httpRequest(url));
+            while (request.hasRemaining()) await(channel.write(request));
+
+            log(readStatusLine(buffer -> await(channel.read(buffer))));
+        }
+    }
+
+    private static byte[] httpRequest(URL url) {
+        return ("GET / HTTP/1.0\r\nHost: " + url.getHost() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String readStatusLine(ChannelReader reader) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (buffer.hasRemaining() && reader.read(buffer) >= 0) {
+            String received = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+            int end = received.indexOf("\r\n");
+            if (end >= 0) return received.substring(0, end);
+        }
+        throw new EOFException("No status line received");
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // report the failure of the operation, not of the future
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    interface ChannelReader {
+        int read(ByteBuffer buffer) throws Exception;
+    }
+
     private static void runUsingJdkHttpClient(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
             throws IOException, URISyntaxException, InterruptedException {
 
@@ -170,6 +526,137 @@ public class HttpClientLauncher {
         log("HttpClient response status: %s", response.statusCode());
     }
 
+    private static void runUsingJdkHttpClientAsync(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+
+        java.net.http.HttpClient.Builder clientBuilder = java.net.http.HttpClient.newBuilder();
+        if (connectTimeoutMillis > 0) {
+            clientBuilder.connectTimeout(Duration.ofMillis(connectTimeoutMillis));
+        }
+        java.net.http.HttpClient client = clientBuilder.build();
+
+        // the requests are not created by HttpRequest.Builder, so only the client can set their timeouts
+        HttpRequest request = new UnbuiltHttpRequest(
+                new URI(targetUrl), readTimeoutMillis > 0 ? Duration.ofMillis(readTimeoutMillis) : null);
+
+        log(
+                "HttpClient timeouts: connection: %d, request: %d",
+                client.connectTimeout().orElse(Duration.ZERO).toMillis(),
+                request.timeout().orElse(Duration.ZERO).toMillis());
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++)
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+
+        Exception firstFailure = null;
+        int failures = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            try {
+                log("HttpClient response status: %s", await(response).statusCode());
+            } catch (Exception e) {
+                if (firstFailure == null) firstFailure = e;
+                failures++;
+            }
+        }
+
+        log("HttpClient async requests: sent: %d, failed: %d", responses.size(), failures);
+        if (firstFailure != null) throw firstFailure;
+    }
+
+    private static void runUsingJdkWebSocket(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+
+        java.net.http.HttpClient.Builder clientBuilder = java.net.http.HttpClient.newBuilder();
+        if (connectTimeoutMillis > 0) {
+            clientBuilder.connectTimeout(Duration.ofMillis(connectTimeoutMillis));
+        }
+        java.net.http.HttpClient client = clientBuilder.build();
+
+        // the opening handshake timeout is the closest to a read timeout
+        WebSocket.Builder webSocketBuilder = client.newWebSocketBuilder();
+        if (readTimeoutMillis > 0) {
+            webSocketBuilder.connectTimeout(Duration.ofMillis(readTimeoutMillis));
+        }
+
+        URI uri = new URI(targetUrl.replaceFirst("^http", "ws"));
+        try {
+            WebSocket webSocket = await(webSocketBuilder.buildAsync(uri, new WebSocket.Listener() {}));
+            log("WebSocket opened, subprotocol: '%s'", webSocket.getSubprotocol());
+            webSocket.abort();
+        } catch (WebSocketHandshakeException e) {
+            // the test server answers, but does not speak WebSocket
+            log("WebSocket handshake rejected with status %s", e.getResponse().statusCode());
+        }
+    }
+
+    private static void runUsingLdap(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException, NamingException {
+        URL url = new URL(targetUrl);
+
+        Hashtable<String, String> environment = new Hashtable<>();
+        environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        environment.put(Context.PROVIDER_URL, "ldap://" + url.getHost() + ":" + url.getPort());
+        // the JNDI provider only applies the timeouts present in the environment
+        if (connectTimeoutMillis > 0) environment.put(LDAP_CONNECT_TIMEOUT, String.valueOf(connectTimeoutMillis));
+        if (readTimeoutMillis > 0) environment.put(LDAP_READ_TIMEOUT, String.valueOf(readTimeoutMillis));
+
+        DirContext context = new InitialDirContext(environment);
+        try {
+            log("LDAP timeouts: connect: %s, read: %s", context.getEnvironment().get(LDAP_CONNECT_TIMEOUT), context.getEnvironment().get(LDAP_READ_TIMEOUT));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Minimal {@link HttpRequest} for a <code>GET</code> call, bypassing {@link HttpRequest.Builder}
+     */
+    private static class UnbuiltHttpRequest extends HttpRequest {
+
+        private final URI uri;
+        private final Duration timeout;
+
+        UnbuiltHttpRequest(URI uri, Duration timeout) {
+            this.uri = uri;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public Optional<BodyPublisher> bodyPublisher() {
+            return Optional.empty();
+        }
+
+        @Override
+        public String method() {
+            return "GET";
+        }
+
+        @Override
+        public Optional<Duration> timeout() {
+            return Optional.ofNullable(timeout);
+        }
+
+        @Override
+        public boolean expectContinue() {
+            return false;
+        }
+
+        @Override
+        public URI uri() {
+            return uri;
+        }
+
+        @Override
+        public Optional<java.net.http.HttpClient.Version> version() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(Collections.emptyMap(), (name, value) -> true);
+        }
+    }
+
     private static void runUsingHttpClient3(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
             throws IOException {
         HttpClient client = new HttpClient();
@@ -220,6 +707,89 @@ public class HttpClientLauncher {
         }
     }
 
+    private static void runUsingHttpAsyncClient4(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+        Builder config = RequestConfig.custom();
+        if (connectTimeoutMillis != 0) config.setConnectTimeout(connectTimeoutMillis);
+        if (readTimeoutMillis != 0) config.setSocketTimeout(readTimeoutMillis);
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom().build();
+        log(
+                "HttpAsyncClient 4 timeouts: reactor connect: %s, reactor so: %s",
+                ioReactorConfig.getConnectTimeout(), ioReactorConfig.getSoTimeout());
+
+        try (org.apache.http.impl.nio.client.CloseableHttpAsyncClient client =
+                org.apache.http.impl.nio.client.HttpAsyncClients.custom()
+                        .setDefaultRequestConfig(config.build())
+                        .setDefaultIOReactorConfig(ioReactorConfig)
+                        .build()) {
+
+            client.start();
+            org.apache.http.HttpResponse response = await(client.execute(new HttpGet(targetUrl), null));
+            log(response.getStatusLine().toString());
+            for (org.apache.http.Header header : response.getAllHeaders()) log(header.toString());
+        }
+    }
+
+    private static ConnectionConfig httpClient5ConnectionConfig(int connectTimeoutMillis, int readTimeoutMillis) {
+        ConnectionConfig.Builder config = ConnectionConfig.custom();
+        if (connectTimeoutMillis != 0) config.setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis));
+        if (readTimeoutMillis != 0) config.setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMillis));
+
+        ConnectionConfig connectionConfig = config.build();
+        log(
+                "HttpClient 5 timeouts: connect: %s, socket: %s",
+                connectionConfig.getConnectTimeout(), connectionConfig.getSocketTimeout());
+        return connectionConfig;
+    }
+
+    private static void runUsingHttpClient5(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException {
+        // disable retries, to make sure that we get equivalent behaviour with other implementations
+        try (org.apache.hc.client5.http.impl.classic.CloseableHttpClient client =
+                org.apache.hc.client5.http.impl.classic.HttpClients.custom()
+                        .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                                .setDefaultConnectionConfig(
+                                        httpClient5ConnectionConfig(connectTimeoutMillis, readTimeoutMillis))
+                                .build())
+                        .disableAutomaticRetries()
+                        .build()) {
+
+            client.execute(new org.apache.hc.client5.http.classic.methods.HttpGet(targetUrl), response -> {
+                log("%s %s", response.getCode(), response.getReasonPhrase());
+                for (org.apache.hc.core5.http.Header header : response.getHeaders()) log(header.toString());
+
+                org.apache.hc.core5.http.io.entity.EntityUtils.consume(response.getEntity());
+                return null;
+            });
+        }
+    }
+
+    private static void runUsingHttpClient5Async(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+        try (CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setDefaultConnectionConfig(
+                                httpClient5ConnectionConfig(connectTimeoutMillis, readTimeoutMillis))
+                        .build())
+                .disableAutomaticRetries()
+                .build()) {
+
+            client.start();
+            Future<SimpleHttpResponse> future =
+                    client.execute(SimpleRequestBuilder.get(targetUrl).build(), null);
+            try {
+                SimpleHttpResponse response = future.get();
+                log("%s %s", response.getCode(), response.getReasonPhrase());
+                for (org.apache.hc.core5.http.Header header : response.getHeaders()) log(header.toString());
+            } catch (ExecutionException e) {
+                // report the failure of the request, not of the future
+                if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                throw e;
+            }
+        }
+    }
+
     private static void runUsingOkHttp(String targetUrl, int connectTimeoutSeconds, int readTimeoutSeconds)
             throws IOException {
         OkHttpClient.Builder clientBuilder = new OkHttpClient().newBuilder();
@@ -237,4 +807,97 @@ public class HttpClientLauncher {
             });
         }
     }
+
+    private static void runUsingJetty(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+        org.eclipse.jetty.client.HttpClient client = new org.eclipse.jetty.client.HttpClient();
+        if (connectTimeoutMillis != 0) client.setConnectTimeout(connectTimeoutMillis);
+        if (readTimeoutMillis != 0) client.setIdleTimeout(readTimeoutMillis);
+        log(
+                "Jetty timeouts: connect: %s, idle: %s, request: %s",
+                client.getConnectTimeout(),
+                client.getIdleTimeout(),
+                client.newRequest(targetUrl).getTimeout());
+
+        client.start();
+        try {
+            org.eclipse.jetty.client.api.ContentResponse response =
+                    client.newRequest(targetUrl).send();
+            log("%s %s", response.getStatus(), response.getReason());
+            for (org.eclipse.jetty.http.HttpField header : response.getHeaders()) log(header.toString());
+        } catch (ExecutionException e) {
+            // report the failure of the request, not of the future
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        } finally {
+            client.stop();
+        }
+    }
+
+    private static void runUsingNetty(String targetUrl, int connectTimeoutMillis, int readTimeoutMillis)
+            throws Exception {
+        URI uri = URI.create(targetUrl);
+        CompletableFuture<FullHttpResponse> result = new CompletableFuture<>();
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            Bootstrap bootstrap = new Bootstrap()
+                    .group(group)
+                    .channel(NioSocketChannel.class)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel channel) {
+                            if (readTimeoutMillis != 0)
+                                channel.pipeline()
+                                        .addLast(new ReadTimeoutHandler(readTimeoutMillis, TimeUnit.MILLISECONDS));
+                            channel.pipeline()
+                                    .addLast(
+                                            new HttpClientCodec(),
+                                            new HttpObjectAggregator(1024 * 1024),
+                                            new SimpleChannelInboundHandler<FullHttpResponse>() {
+                                                @Override
+                                                protected void channelRead0(
+                                                        ChannelHandlerContext ctx, FullHttpResponse response) {
+                                                    result.complete(response.retain());
+                                                }
+
+                                                @Override
+                                                public void exceptionCaught(ChannelHandlerContext ctx, Throwable e) {
+                                                    result.completeExceptionally(e);
+                                                    ctx.close();
+                                                }
+                                            });
+                        }
+                    });
+            if (connectTimeoutMillis != 0) bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis);
+            log("Netty timeouts: connect: %s", bootstrap.config().options().get(ChannelOption.CONNECT_TIMEOUT_MILLIS));
+
+            // sync() throws the cause of a failed connect
+            Channel channel =
+                    bootstrap.connect(uri.getHost(), uri.getPort()).sync().channel();
+            FullHttpRequest request = new DefaultFullHttpRequest(
+                    HttpVersion.HTTP_1_1,
+                    io.netty.handler.codec.http.HttpMethod.GET,
+                    uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+            request.headers().set(HttpHeaderNames.HOST, uri.getHost());
+            channel.writeAndFlush(request);
+
+            FullHttpResponse response;
+            try {
+                response = result.get();
+            } catch (ExecutionException e) {
+                // report the failure of the request, not of the future
+                if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                throw e;
+            }
+            try {
+                log("%s", response.status());
+                response.headers().forEach(h -> log("%s : %s", h.getKey(), h.getValue()));
+            } finally {
+                response.release();
+                channel.close();
+            }
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
 }
@@ -36,7 +36,8 @@ public interface MisbehavingServerControl {
     /**
      * Sets a new value for the handleDelay parameter
      *
-     * <p>This value reflects how long the HTTP handler will wait before handling the client request.</p>
+     * <p>This value reflects how long the HTTP handler will wait before handling the client request, and how long
+     * the FTP server will wait before greeting a client.</p>
      *
      * <p>The value only takes effect for the current test method invocation and will be reset
      * for the next one.</p>
@@ -51,4 +52,18 @@ public interface MisbehavingServerControl {
      * @return the port
      */
     int getConnectTimeoutLocalPort();
+
+    /**
+     * Returns the port on which the local FTP server is bound
+     *
+     * @return the port
+     */
+    int getFtpLocalPort();
+
+    /**
+     * Returns the port on which a local server that accepts connections but never responds is bound
+     *
+     * @return the port
+     */
+    int getUnresponsiveLocalPort();
 }
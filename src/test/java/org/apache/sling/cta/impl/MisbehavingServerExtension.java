@@ -25,6 +25,7 @@ import java.net.Socket;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 
 import org.junit.jupiter.api.extension.AfterEachCallback;
@@ -37,7 +38,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Provides an Jetty-based local server that can be configured to timeout
+ * Provides an Jetty-based local server and a local FTP server that can be configured to timeout, and a local server
+ * that accepts connections but never responds
  *
  * <p>After extending a JUnit Jupiter test with this extension, any parameter of type {@link MisbehavingServerControl}
  * will be resolved.</p>
@@ -52,9 +54,14 @@ class MisbehavingServerExtension
 
     private DelayingHttpServer server;
 
+    private DelayingFtpServer ftpServer;
+
     private ServerSocket ss;
     private List<Socket> sockets = new ArrayList<>();
 
+    private ServerSocket unresponsiveSs;
+    private List<Socket> unresponsiveSockets = new CopyOnWriteArrayList<>();
+
     @Override
     public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext)
             throws ParameterResolutionException {
@@ -76,6 +83,9 @@ class MisbehavingServerExtension
         server = new DelayingHttpServer(DEFAULT_HANDLE_DELAY);
         server.start();
 
+        ftpServer = new DelayingFtpServer(DEFAULT_HANDLE_DELAY);
+        ftpServer.start();
+
         // an undocumented feature of ServerSocket is that the backlog size is quietly adjusted
         // to be at least 50
         int backlog = 50;
@@ -108,6 +118,18 @@ class MisbehavingServerExtension
                 .start();
 
         waitForConnection.await();
+
+        // create a server socket that accepts connections, but never reads from or writes to them
+        unresponsiveSs = new ServerSocket(0, backlog, InetAddress.getLoopbackAddress());
+
+        new Thread(() -> {
+                    try {
+                        while (true) unresponsiveSockets.add(unresponsiveSs.accept());
+                    } catch (IOException e) {
+                        // closed after the test
+                    }
+                })
+                .start();
     }
 
     @Override
@@ -120,6 +142,14 @@ class MisbehavingServerExtension
             }
         }
 
+        if (ftpServer != null) {
+            try {
+                ftpServer.stop();
+            } catch (IOException e) {
+                logger.info("Failed shutting down FTP server", e);
+            }
+        }
+
         if (ss != null) {
             try {
                 ss.close();
@@ -128,6 +158,17 @@ class MisbehavingServerExtension
             }
         }
 
+        if (unresponsiveSs != null) {
+            try {
+                unresponsiveSs.close();
+            } catch (IOException e) {
+                logger.info("Failed closing unresponsive server socket", e);
+            }
+        }
+
+        sockets.addAll(unresponsiveSockets);
+        unresponsiveSockets.clear();
+
         for (Socket s : sockets) {
             try {
                 s.close();
@@ -141,6 +182,7 @@ class MisbehavingServerExtension
     @Override
     public void setHandleDelay(Duration handleDelay) {
         server.setHandleDelay(handleDelay);
+        ftpServer.setHandleDelay(handleDelay);
     }
 
     @Override
@@ -148,8 +190,18 @@ class MisbehavingServerExtension
         return server.getLocalPort();
     }
 
+    @Override
+    public int getFtpLocalPort() {
+        return ftpServer.getLocalPort();
+    }
+
     @Override
     public int getConnectTimeoutLocalPort() {
         return ss.getLocalPort();
     }
+
+    @Override
+    public int getUnresponsiveLocalPort() {
+        return unresponsiveSs.getLocalPort();
+    }
 }
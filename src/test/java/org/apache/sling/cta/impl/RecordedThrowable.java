@@ -26,8 +26,12 @@ class RecordedThrowable {
     static RecordedThrowable fromLine(String line) {
         line = line.replace(AgentIT.EXCEPTION_MARKER, "");
 
-        String className = line.substring(0, line.indexOf(':'));
-        String message = line.substring(line.indexOf(':') + 2); // ignore ':' and leading ' '
+        // exceptions without a message, e.g. InterruptedByTimeoutException, are printed without ':'
+        int separator = line.indexOf(':');
+        if (separator == -1) return new RecordedThrowable(line.trim(), "");
+
+        String className = line.substring(0, separator);
+        String message = line.substring(separator + 2); // ignore ':' and leading ' '
 
         return new RecordedThrowable(className, message);
     }
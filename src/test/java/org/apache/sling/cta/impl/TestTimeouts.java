@@ -31,6 +31,14 @@ class TestTimeouts {
     Duration agentReadTimeout = Duration.ofSeconds(AgentIT.READ_TIMEOUT_SECONDS);
     Duration clientConnectTimeout = Duration.ZERO;
     Duration clientReadTimeout = Duration.ZERO;
+    Duration updatedAgentConnectTimeout;
+    Duration updatedAgentReadTimeout;
+    String agentTimeoutPolicy;
+    String agentLearnedTimeouts;
+    Duration agentDeadline;
+    Duration agentStuckCallThreshold;
+    String agentSocketDefaultsExcludedHosts;
+    boolean dynamicAttach;
 
     public static TestTimeouts DEFAULT = new TestTimeouts();
 
@@ -48,6 +56,64 @@ class TestTimeouts {
             return this;
         }
 
+        /**
+         * Sets the agent timeouts to apply through JMX after the agent has started
+         */
+        public TestTimeouts.Builder updatedAgentTimeouts(Duration connectTimeout, Duration readTimeout) {
+            timeouts.updatedAgentConnectTimeout = Objects.requireNonNull(connectTimeout);
+            timeouts.updatedAgentReadTimeout = Objects.requireNonNull(readTimeout);
+            return this;
+        }
+
+        /**
+         * Sets a host timeout policy for the agent, in the format of the policies file
+         */
+        public TestTimeouts.Builder agentTimeoutPolicy(
+                String hostPattern, Duration connectTimeout, Duration readTimeout) {
+            timeouts.agentTimeoutPolicy = hostPattern + " " + connectTimeout.toMillis() + " " + readTimeout.toMillis();
+            return this;
+        }
+
+        /**
+         * Enables adaptive timeouts, starting with learned timeouts for the host, in the format of the state file
+         */
+        public TestTimeouts.Builder agentLearnedTimeouts(String host, Duration connectTimeout, Duration readTimeout) {
+            timeouts.agentLearnedTimeouts = host + " " + connectTimeout.toMillis() + " " + readTimeout.toMillis();
+            return this;
+        }
+
+        /**
+         * Sets the deadline of HTTP calls for the agent
+         */
+        public TestTimeouts.Builder agentDeadline(Duration deadline) {
+            timeouts.agentDeadline = Objects.requireNonNull(deadline);
+            return this;
+        }
+
+        /**
+         * Enables the stuck call detection of the agent
+         */
+        public TestTimeouts.Builder agentStuckCallThreshold(Duration threshold) {
+            timeouts.agentStuckCallThreshold = Objects.requireNonNull(threshold);
+            return this;
+        }
+
+        /**
+         * Enables the socket defaults of the agent, excluding the hosts in the format of the option
+         */
+        public TestTimeouts.Builder agentSocketDefaults(String excludedHosts) {
+            timeouts.agentSocketDefaultsExcludedHosts = Objects.requireNonNull(excludedHosts);
+            return this;
+        }
+
+        /**
+         * Attaches the agent to the running client JVM instead of passing it on the command line
+         */
+        public TestTimeouts.Builder dynamicAttach() {
+            timeouts.dynamicAttach = true;
+            return this;
+        }
+
         public TestTimeouts.Builder clientTimeouts(Duration connectTimeout, Duration readTimeout) {
             timeouts.clientConnectTimeout = Objects.requireNonNull(connectTimeout);
             timeouts.clientReadTimeout = Objects.requireNonNull(readTimeout);
@@ -61,7 +127,21 @@ class TestTimeouts {
 
     @Override
     public String toString() {
+        String updated = updatedAgentConnectTimeout != null
+                ? " ( updated: " + updatedAgentConnectTimeout + "/" + updatedAgentReadTimeout + " )"
+                : "";
+        String policy = agentTimeoutPolicy != null ? " ( policy: " + agentTimeoutPolicy + " )" : "";
+        String learned = agentLearnedTimeouts != null ? " ( learned: " + agentLearnedTimeouts + " )" : "";
+        String deadline = agentDeadline != null ? " ( deadline: " + agentDeadline + " )" : "";
+        String stuckCalls =
+                agentStuckCallThreshold != null ? " ( stuck call threshold: " + agentStuckCallThreshold + " )" : "";
+        String socketDefaults = agentSocketDefaultsExcludedHosts != null
+                ? " ( socket defaults excluding: " + agentSocketDefaultsExcludedHosts + " )"
+                : "";
+        String attach = dynamicAttach ? " ( attached )" : "";
         return getClass().getSimpleName() + ": execution " + executionTimeout + ", agent: " + agentConnectTimeout + "/"
-                + agentReadTimeout + ", client : " + clientConnectTimeout + "/" + clientReadTimeout;
+                + agentReadTimeout + updated + policy + learned + deadline
+                + stuckCalls + socketDefaults + attach + ", client : " + clientConnectTimeout + "/"
+                + clientReadTimeout;
     }
 }